@@ -7,14 +7,25 @@ package com.opty.socket.config;
 /**
  * IMPORTS
  */
+import com.opty.socket.model.MessageType;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.validation.annotation.Validated;
 
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.DecimalMax;
 import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Positive;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 
 /**
  * CODE
@@ -32,13 +43,31 @@ import jakarta.validation.constraints.Positive;
 public class AppConfig {
 
     // --- ATRIBUTES ---
-    // Maximum allowed concurrent WebSocket connections
+    // Maximum allowed concurrent WebSocket connections (see the c100k profile for large values)
     @Positive(message = "Max connections must be positive")
-    @Max(value = 10000, message = "Max connections cannot exceed 10000")
+    @Max(value = 250000, message = "Max connections cannot exceed 250000")
     private int maxConnections = 100;
     private final MessageConfig message = new MessageConfig();
     private final CorsConfig cors = new CorsConfig();
     private final SessionConfig session = new SessionConfig();
+    private final SupervisorConfig supervisor = new SupervisorConfig();
+    private final QueueConfig queue = new QueueConfig();
+    private final RateLimitConfig rateLimit = new RateLimitConfig();
+    private final AdmissionConfig admission = new AdmissionConfig();
+    private final AuthConfig auth = new AuthConfig();
+    private final HeartbeatConfig heartbeat = new HeartbeatConfig();
+    private final ContainerConfig container = new ContainerConfig();
+    private final StorageConfig storage = new StorageConfig();
+    private final PendingConfig pending = new PendingConfig();
+    private final BatchConfig batch = new BatchConfig();
+    private final TenantConfig tenant = new TenantConfig();
+    private final OverloadConfig overload = new OverloadConfig();
+    private final SnapshotConfig snapshot = new SnapshotConfig();
+    private final DrainConfig drain = new DrainConfig();
+    private final WarmupConfig warmup = new WarmupConfig();
+    private final JournalConfig journal = new JournalConfig();
+    private final AttachmentConfig attachment = new AttachmentConfig();
+    private final EphemeralConfig ephemeral = new EphemeralConfig();
 
     /**
      * Message-related configuration.
@@ -46,13 +75,32 @@ public class AppConfig {
     @Data
     public static class MessageConfig {
         // --- ATRIBUTES ---
+        // Largest inbound text message in characters; a larger one closes the connection (1009)
         @Positive(message = "Max message size must be positive")
         @Max(value = 1048576, message = "Max message size cannot exceed 1MB")
         private int maxSize = 65536;
 
+        // A message arriving in several chunks must complete within this time; a slower one closes the connection (1008)
+        @Positive(message = "Partial timeout must be positive")
+        private int partialTimeoutMillis = 10000;
+
+        // Messages pending delivery per session lane; further messages are rejected with an error
         @Positive(message = "Queue capacity must be positive")
         @Max(value = 1000, message = "Queue capacity cannot exceed 1000")
         private int queueCapacity = 100;
+
+        // Threads draining session delivery lanes (0 = one per available processor)
+        @Min(value = 0, message = "Delivery threads cannot be negative")
+        @Max(value = 256, message = "Delivery threads cannot exceed 256")
+        private int deliveryThreads = 0;
+
+        // Outbound sends per connection are serialized; a send blocked longer than this closes the connection
+        @Positive(message = "Send time limit must be positive")
+        private int sendTimeLimitMillis = 5000;
+
+        // Outbound bytes buffered per connection while a send is in progress
+        @Positive(message = "Send buffer size limit must be positive")
+        private int sendBufferSizeLimit = 524288;
     }
 
     /**
@@ -64,6 +112,533 @@ public class AppConfig {
         @Positive(message = "Session timeout must be positive")
         @Max(value = 1440, message = "Session timeout cannot exceed 24 hours")
         private int timeoutMinutes = 30;
+
+        // Single-writer shards applying session state changes (0 = one per available processor)
+        @Min(value = 0, message = "Session shards cannot be negative")
+        @Max(value = 256, message = "Session shards cannot exceed 256")
+        private int shards = 0;
+
+        // Observers (leads, other agents, bots) that can watch one session besides its supervisor
+        @Min(value = 0, message = "Max observers cannot be negative")
+        @Max(value = 64, message = "Max observers cannot exceed 64")
+        private int maxObservers = 8;
+    }
+
+    /**
+     * Supervisor-related configuration.
+     */
+    @Data
+    public static class SupervisorConfig {
+        // --- ATRIBUTES ---
+        // Maximum concurrent sessions a single supervisor connection may hold
+        @Positive(message = "Supervisor max sessions must be positive")
+        @Max(value = 100, message = "Supervisor max sessions cannot exceed 100")
+        private int maxSessions = 5;
+    }
+
+    /**
+     * Waiting queue ordering configuration.
+     */
+    @Data
+    public static class QueueConfig {
+        // --- ATRIBUTES ---
+        // SLA for sessions without a tier (time until a supervisor should pick them up)
+        @Positive(message = "Default SLA must be positive")
+        private int defaultSlaSeconds = 300;
+
+        // How far ahead in the queue one priority point moves a session
+        @Min(value = 0, message = "Priority weight cannot be negative")
+        private int priorityWeightSeconds = 60;
+
+        // Highest priority a client may request on the handshake
+        @Min(value = 0, message = "Max client priority cannot be negative")
+        @Max(value = 100, message = "Max client priority cannot exceed 100")
+        private int maxClientPriority = 10;
+
+        // Named tiers (e.g. vip, standard), taken from the token's tier claim when auth is enabled
+        private Map<String, TierConfig> tiers = new HashMap<>();
+
+        // Without auth, honour the ?tier= handshake parameter (only on networks where clients are trusted)
+        private boolean queryTierEnabled = false;
+
+        // Routing tags accepted per handshake (?tags=lang:pt,product:billing); extra tags are ignored
+        @Min(value = 0, message = "Max tags cannot be negative")
+        @Max(value = 64, message = "Max tags cannot exceed 64")
+        private int maxTags = 8;
+    }
+
+    /**
+     * Queue tier: base priority and SLA.
+     */
+    @Data
+    public static class TierConfig {
+        // --- ATRIBUTES ---
+        @Min(value = 0, message = "Tier priority cannot be negative")
+        private int priority = 0;
+
+        @Positive(message = "Tier SLA must be positive")
+        private int slaSeconds = 300;
+    }
+
+    /**
+     * Handshake admission control configuration.
+     */
+    @Data
+    public static class AdmissionConfig {
+        // --- ATRIBUTES ---
+        // Global WebSocket upgrade rate (connection storm protection)
+        @Positive(message = "Handshakes per second must be positive")
+        private double handshakesPerSecond = 200;
+
+        @Positive(message = "Handshake burst must be positive")
+        private int handshakeBurst = 400;
+
+        // Retry-After sent when at max connections
+        @Positive(message = "Retry-After must be positive")
+        private long retryAfterSeconds = 5;
+    }
+
+    /**
+     * Per-connection buffers allocated by the servlet container (Tomcat).
+     */
+    @Data
+    public static class ContainerConfig {
+        // --- ATRIBUTES ---
+        // WebSocket message buffers (text is in chars, binary in bytes)
+        @Positive(message = "Text buffer size must be positive")
+        private int textBufferSize = 8192;
+
+        @Positive(message = "Binary buffer size must be positive")
+        private int binaryBufferSize = 8192;
+
+        // NIO socket application buffers (bytes)
+        @Positive(message = "Socket read buffer size must be positive")
+        private int socketReadBufferSize = 8192;
+
+        @Positive(message = "Socket write buffer size must be positive")
+        private int socketWriteBufferSize = 8192;
+    }
+
+    /**
+     * Server-driven heartbeat configuration.
+     */
+    @Data
+    public static class HeartbeatConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = true;
+
+        // Every connection is pinged once per interval
+        @Positive(message = "Heartbeat interval must be positive")
+        private int intervalSeconds = 20;
+
+        // Pings are spread over this many ticks per interval
+        @Positive(message = "Heartbeat wheel slots must be positive")
+        @Max(value = 1000, message = "Heartbeat wheel slots cannot exceed 1000")
+        private int wheelSlots = 20;
+
+        // Consecutive unanswered pings before the connection is closed
+        @Positive(message = "Max missed pongs must be positive")
+        private int maxMissedPongs = 3;
+    }
+
+    /**
+     * Message persistence (MongoDB writes run off the delivery lanes).
+     */
+    @Data
+    public static class StorageConfig {
+        // --- ATRIBUTES ---
+        // Threads writing queued messages to MongoDB in bulk
+        @Positive(message = "Storage writer threads must be positive")
+        @Max(value = 64, message = "Storage writer threads cannot exceed 64")
+        private int writerThreads = 2;
+
+        // Messages waiting to be written; beyond this, messages are delivered but not persisted
+        @Positive(message = "Storage queue capacity must be positive")
+        private int queueCapacity = 10000;
+
+        // Messages written per bulk insert
+        @Positive(message = "Storage batch size must be positive")
+        @Max(value = 1000, message = "Storage batch size cannot exceed 1000")
+        private int batchSize = 100;
+    }
+
+    /**
+     * Store-and-forward buffer for messages not yet acknowledged by their recipient.
+     */
+    @Data
+    public static class PendingConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = true;
+
+        // Oldest messages are dropped beyond this per session
+        @Positive(message = "Max pending messages per session must be positive")
+        @Max(value = 10000, message = "Max pending messages per session cannot exceed 10000")
+        private int maxMessagesPerSession = 100;
+
+        // Messages older than this are dropped even if never delivered
+        @Positive(message = "Pending TTL must be positive")
+        private int ttlSeconds = 300;
+
+        // Global budget (encoded bytes) across all sessions; oldest messages are evicted first
+        @Positive(message = "Pending max bytes must be positive")
+        private long maxBytes = 67108864;
+    }
+
+    /**
+     * Outbound frame batching (clients opt in with the ?batch=true handshake parameter).
+     */
+    @Data
+    public static class BatchConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = true;
+
+        // Messages queued for a connection within this window go out as one BATCH frame
+        @Positive(message = "Batch flush window must be positive")
+        @Max(value = 50, message = "Batch flush window cannot exceed 50ms")
+        private int flushWindowMillis = 2;
+
+        // A batch is flushed early once it reaches either size (bytes counted as UTF-8)
+        @Positive(message = "Batch max messages must be positive")
+        private int maxMessages = 32;
+
+        @Positive(message = "Batch max bytes must be positive")
+        private int maxBytes = 16384;
+
+        // Threads running deferred flushes (0 = one per CPU)
+        @Min(value = 0, message = "Batch flush threads cannot be negative")
+        private int flushThreads = 0;
+    }
+
+    /**
+     * JWT handshake authentication configuration.
+     */
+    @Data
+    public static class AuthConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = false;
+
+        // Query parameter carrying the token (Authorization: Bearer is also accepted)
+        private String tokenParameter = "token";
+
+        // Signing keys: HMAC shared secret, RSA public key (X.509 PEM) and/or a local JWKS file
+        private String hmacSecret;
+        private String rsaPublicKey;
+        private String jwksFile;
+
+        @Min(value = 0, message = "Clock skew cannot be negative")
+        private int clockSkewSeconds = 30;
+
+        // Verified token cache (entries live until token exp, capped by max TTL)
+        @Positive(message = "Token cache size must be positive")
+        private int cacheMaxEntries = 10000;
+
+        @Positive(message = "Token cache TTL must be positive")
+        private long cacheMaxTtlSeconds = 3600;
+
+        // Token claims giving a client's queue tier and priority (handshake parameters are ignored)
+        private String tierClaim = "tier";
+        private String priorityClaim = "priority";
+    }
+
+    /**
+     * Graceful shutdown drain configuration.
+     */
+    @Data
+    public static class DrainConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = true;
+
+        // Threads closing connections in parallel; closing is I/O bound (0 = one per available processor)
+        @Min(value = 0, message = "Drain threads cannot be negative")
+        @Max(value = 256, message = "Drain threads cannot exceed 256")
+        private int threads = 8;
+
+        // Connections notified and closed per drain task
+        @Positive(message = "Drain batch size must be positive")
+        private int batchSize = 256;
+
+        // Budget for closing connections and flushing persistence (keep below timeout-per-shutdown-phase)
+        @Positive(message = "Drain timeout must be positive")
+        private long timeoutMillis = 8000;
+
+        // Reconnect delay suggested to clients in the SERVER_RESTARTING frame
+        @Min(value = 0, message = "Reconnect delay cannot be negative")
+        private int reconnectAfterSeconds = 5;
+    }
+
+    /**
+     * JIT warm-up configuration.
+     */
+    @Data
+    public static class WarmupConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = false;
+
+        // Synthetic paired sessions (client and supervisor stub connections) exercised during warm-up
+        @Positive(message = "Warm-up sessions must be positive")
+        @Max(value = 256, message = "Warm-up sessions cannot exceed 256")
+        private int sessions = 16;
+
+        // Minimum messages routed before warm-up may end (C2 compiles after ~10k invocations by default)
+        @Positive(message = "Warm-up messages must be positive")
+        private int minMessages = 20000;
+
+        // Messages routed per round; warm-up ends after a round without JIT compilation activity
+        @Positive(message = "Warm-up round size must be positive")
+        private int roundMessages = 1000;
+
+        // Readiness is held at most this long, compiled or not
+        @Positive(message = "Warm-up budget must be positive")
+        private long budgetMillis = 15000;
+    }
+
+    /**
+     * Lifecycle event journal configuration.
+     */
+    @Data
+    public static class JournalConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = true;
+
+        // Events kept in memory (rounded up to a power of two); older events are overwritten
+        @Positive(message = "Journal capacity must be positive")
+        @Max(value = 1048576, message = "Journal capacity cannot exceed 1048576")
+        private int capacity = 8192;
+
+        // Record 1 in N events per category (connection, session, pairing, queue); 0 disables, missing = 1
+        private Map<String, Integer> sampleRates = new HashMap<>();
+
+        // Drain new events to the "opty.events" logger as key=value lines, on a dedicated thread
+        private boolean logEnabled = false;
+
+        // How often events are drained to the log
+        @Positive(message = "Journal log interval must be positive")
+        private long logIntervalMillis = 1000;
+
+        // Most events written to the log per drain; the rest wait for the next drains
+        @Positive(message = "Journal log max events must be positive")
+        private int logMaxEvents = 1000;
+    }
+
+    /**
+     * Binary attachment transfer configuration.
+     */
+    @Data
+    public static class AttachmentConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = true;
+
+        // Local directory uploads are spooled to (emptied on startup)
+        @NotBlank(message = "Attachment directory is required")
+        private String directory = "data/attachments";
+
+        // Largest attachment in bytes
+        @Positive(message = "Max attachment size must be positive")
+        @Max(value = 1073741824, message = "Max attachment size cannot exceed 1GB")
+        private long maxSize = 10485760;
+
+        // Attachment bytes a session may hold at once, uploads in progress included
+        @Positive(message = "Session attachment quota must be positive")
+        private long sessionQuotaBytes = 52428800;
+
+        // Uploads in progress per connection
+        @Positive(message = "Max uploads per connection must be positive")
+        @Max(value = 64, message = "Max uploads per connection cannot exceed 64")
+        private int maxUploadsPerConnection = 4;
+
+        // Uploads in progress that receive no bytes for this long are aborted
+        @Positive(message = "Upload idle timeout must be positive")
+        private int uploadIdleTimeoutSeconds = 60;
+
+        // Attachments are deleted after this, or earlier once their session ends
+        @Positive(message = "Attachment retention must be positive")
+        private int retentionMinutes = 60;
+    }
+
+    /**
+     * Ephemeral signals (typing, presence, read receipts).
+     */
+    @Data
+    public static class EphemeralConfig {
+        // --- ATRIBUTES ---
+        // Signals of one sender and type within this window are coalesced to the latest (0 = relay each one)
+        @Min(value = 0, message = "Coalesce window cannot be negative")
+        @Max(value = 5000, message = "Coalesce window cannot exceed 5000 ms")
+        private long coalesceWindowMillis = 200;
+    }
+
+    /**
+     * Warm-restart snapshot configuration.
+     */
+    @Data
+    public static class SnapshotConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = false;
+
+        // Local file the session snapshot is written to on shutdown and read from on startup
+        @NotBlank(message = "Snapshot path is required")
+        private String path = "data/session-snapshot.bin";
+
+        // Snapshots older than this at startup are ignored (e.g. left over from a crash long ago)
+        @Positive(message = "Snapshot max age must be positive")
+        private int maxAgeSeconds = 300;
+
+        // How long returning clients can reclaim their sessions after startup
+        @Positive(message = "Resume grace period must be positive")
+        private int resumeGraceSeconds = 120;
+    }
+
+    /**
+     * Adaptive overload control configuration.
+     */
+    @Data
+    public static class OverloadConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = true;
+
+        // How often saturation signals are sampled
+        @Positive(message = "Overload sample interval must be positive")
+        private long sampleIntervalMillis = 500;
+
+        // Mean time from routing a message to its delivery above which the node counts as congested
+        @Positive(message = "Target routing latency must be positive")
+        private long targetLatencyMillis = 50;
+
+        // Delay of the sampler itself (CPU starvation, GC pauses) above which the node counts as congested
+        @Positive(message = "Max scheduler lag must be positive")
+        private long maxSchedulerLagMillis = 200;
+
+        // Share of the storage write queue (storage.queue-capacity) filled above which persistence counts as backlogged
+        @Positive(message = "Max storage backlog ratio must be positive")
+        @DecimalMax(value = "1.0", message = "Max storage backlog ratio cannot exceed 1")
+        private double maxStorageBacklogRatio = 0.5;
+
+        // Adaptive limit of messages queued for delivery (AIMD between min and max)
+        @Positive(message = "Min limit must be positive")
+        private int minLimit = 100;
+
+        @Positive(message = "Initial limit must be positive")
+        private int initialLimit = 2000;
+
+        @Positive(message = "Max limit must be positive")
+        private int maxLimit = 100000;
+
+        @Positive(message = "Limit increase must be positive")
+        private int limitIncrease = 50;
+
+        // While shedding, queue updates are coalesced into one broadcast per interval
+        @Positive(message = "Queue update interval must be positive")
+        private long queueUpdateIntervalMillis = 1000;
+    }
+
+    /**
+     * Tenant isolation configuration.
+     */
+    @Data
+    public static class TenantConfig {
+        // Tenant of the synthetic warm-up sessions; never a real tenant
+        public static final String RESERVED_TENANT = "__warmup__";
+
+        // --- ATRIBUTES ---
+        private boolean enabled = false;
+
+        // Token claim naming the tenant (used when auth is enabled)
+        private String claim = "tenant";
+
+        // Handshake query parameter naming the tenant (used only when auth is disabled)
+        private String parameter = "tenant";
+
+        // Tenant of connections that name none (the only tenant when disabled)
+        @NotBlank(message = "Default tenant is required")
+        private String defaultTenant = "default";
+
+        // Connections per tenant without an explicit limit (0 = only max-connections applies)
+        @Min(value = 0, message = "Default tenant max connections cannot be negative")
+        private int defaultMaxConnections = 0;
+
+        // Known tenants and their limits; handshakes naming any other tenant are refused
+        private Map<String, TenantLimits> tenants = new HashMap<>();
+
+        /**
+         * Checks that neither the default tenant nor a configured one is the reserved warm-up tenant.
+         */
+        @AssertTrue(message = "Tenant name " + RESERVED_TENANT + " is reserved")
+        public boolean isReservedTenantUnused() {
+            return !RESERVED_TENANT.equals(defaultTenant) && !tenants.containsKey(RESERVED_TENANT);
+        }
+    }
+
+    /**
+     * Limits of one tenant.
+     */
+    @Data
+    public static class TenantLimits {
+        // --- ATRIBUTES ---
+        // Concurrent connections of the tenant (0 = the default tenant limit)
+        @Min(value = 0, message = "Tenant max connections cannot be negative")
+        private int maxConnections = 0;
+    }
+
+    /**
+     * Inbound frame rate limiting configuration.
+     */
+    @Data
+    public static class RateLimitConfig {
+        // --- ATRIBUTES ---
+        private boolean enabled = true;
+
+        // Rejected frames tolerated (refilled at violationDecayPerSecond) before closing with 1008
+        @Positive(message = "Close-after-violations must be positive")
+        private int closeAfterViolations = 20;
+
+        @Positive(message = "Violation decay must be positive")
+        private double violationDecayPerSecond = 1.0;
+
+        // Shared by all connections from one remote address
+        private BucketLimit perIp = new BucketLimit(100, 200);
+
+        // Literal IPs of reverse proxies / load balancers whose X-Forwarded-For names the real client
+        private List<String> trustedProxies = new ArrayList<>();
+
+        // Per-connection limits by endpoint ("client", "supervisor")
+        private Map<String, EndpointLimit> endpoints = new HashMap<>();
+    }
+
+    /**
+     * Per-connection limits of one WebSocket endpoint.
+     */
+    @Data
+    public static class EndpointLimit {
+        // --- ATRIBUTES ---
+        private BucketLimit frames = new BucketLimit(20, 40);
+
+        // Typing, presence and read receipts, charged on top of the frame limit; excess signals count as violations
+        private BucketLimit signals = new BucketLimit(10, 20);
+
+        // Optional stricter limits per message type
+        private Map<MessageType, BucketLimit> types = new EnumMap<>(MessageType.class);
+    }
+
+    /**
+     * Token bucket rate and capacity.
+     */
+    @Data
+    public static class BucketLimit {
+        // --- ATRIBUTES ---
+        @Positive(message = "Permits per second must be positive")
+        private double permitsPerSecond;
+
+        @Positive(message = "Burst must be positive")
+        private int burst;
+
+        public BucketLimit() {
+            this(1, 1);
+        }
+
+        public BucketLimit(double permitsPerSecond, int burst) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
     }
 
     /**
@@ -0,0 +1,95 @@
+/**
+ * Deferred MongoDB initialization.
+ */
+
+package com.opty.socket.config;
+
+/**
+ * IMPORTS
+ */
+import com.mongodb.client.MongoClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.actuate.data.mongo.MongoHealthIndicator;
+import org.springframework.boot.actuate.health.HealthContributor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Keeps MongoDB off the startup path, so WebSocket endpoints accept traffic before the database connects.
+ *
+ * Mongo driver and Spring Data MongoDB beans are created lazily; the storage service and the
+ * health indicator hold lazy proxies. Once the application is ready, the client is created on a background
+ * thread and the driver connects on its own. If a message is saved before that, the save creates it.
+ */
+@Slf4j
+@Configuration
+public class MongoConfig {
+
+    /**
+     * Marks the Mongo infrastructure beans (client, factory, converter, templates, repositories) as lazy.
+     * Static: runs before any bean is created.
+     */
+    @Bean
+    public static BeanFactoryPostProcessor lazyMongoInitialization() {
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                // Repositories are factory beans: their type is only known from the definition class
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                Class<?> type = beanFactory.getType(name, false);
+                if (isMongoType(definition.getBeanClassName()) || (type != null && isMongoType(type.getName()))) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Checks if a bean type belongs to the Mongo driver or Spring Data MongoDB.
+     */
+    private static boolean isMongoType(String className) {
+        return className != null
+                && (className.startsWith("com.mongodb.") || className.startsWith("org.springframework.data.mongodb."));
+    }
+
+
+    /**
+     * Mongo health check that does not create the client at startup (replaces the auto-configured one).
+     */
+    @Bean
+    public HealthContributor mongoHealthContributor(@Lazy MongoTemplate mongoTemplate) {
+        return new MongoHealthIndicator(mongoTemplate);
+    }
+
+
+    /**
+     * Creates the Mongo client in the background once the application accepts traffic.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeInBackground(ApplicationReadyEvent event) {
+        ObjectProvider<MongoClient> client = event.getApplicationContext().getBeanProvider(MongoClient.class);
+        Thread thread = new Thread(() -> {
+            long startNanos = System.nanoTime();
+            try {
+                client.getObject();
+                log.info("Mongo client initialized in background: millis={}", (System.nanoTime() - startNanos) / 1_000_000);
+            } catch (RuntimeException e) {
+                log.warn("Mongo client initialization failed, retried on first use: error={}", e.getMessage());
+            }
+        }, "opty-mongo-init");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -13,8 +13,11 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import com.opty.socket.websocket.AdmissionHandshakeInterceptor;
 import com.opty.socket.websocket.ClientWebSocketHandler;
+import com.opty.socket.websocket.JwtHandshakeInterceptor;
 import com.opty.socket.websocket.SupervisorWebSocketHandler;
+import com.opty.socket.websocket.TenantHandshakeInterceptor;
 
 
 /**
@@ -27,6 +30,9 @@ import com.opty.socket.websocket.SupervisorWebSocketHandler;
  * Registers WebSocket endpoints:
  * - /ws/client: Client connections
  * - /ws/supervisor: Supervisor connections
+ *
+ * Both endpoints pass through handshake admission control, then JWT authentication
+ * (when {@code opty.socket.auth.enabled}), then tenant resolution and tenant quotas.
  */
 @Slf4j
 @Configuration
@@ -37,6 +43,9 @@ public class WebSocketConfig implements WebSocketConfigurer {
     // --- ATRIBUTES ---
     private final ClientWebSocketHandler clientHandler;
     private final SupervisorWebSocketHandler supervisorHandler;
+    private final AdmissionHandshakeInterceptor admissionInterceptor;
+    private final JwtHandshakeInterceptor jwtInterceptor;
+    private final TenantHandshakeInterceptor tenantInterceptor;
     private final AppConfig appConfig;
 
     @Override
@@ -47,10 +56,14 @@ public class WebSocketConfig implements WebSocketConfigurer {
         String[] allowedOrigins = parseAllowedOrigins();
 
         // Register client endpoint
-        registry.addHandler(clientHandler, "/ws/client").setAllowedOrigins(allowedOrigins);
+        registry.addHandler(clientHandler, "/ws/client")
+                .addInterceptors(admissionInterceptor, jwtInterceptor, tenantInterceptor)
+                .setAllowedOrigins(allowedOrigins);
 
         // Register supervisor endpoint
-        registry.addHandler(supervisorHandler, "/ws/supervisor").setAllowedOrigins(allowedOrigins);
+        registry.addHandler(supervisorHandler, "/ws/supervisor")
+                .addInterceptors(admissionInterceptor, jwtInterceptor, tenantInterceptor)
+                .setAllowedOrigins(allowedOrigins);
 
         log.info("WebSocket handlers registered: /ws/client, /ws/supervisor");
     }
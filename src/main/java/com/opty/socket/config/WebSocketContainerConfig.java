@@ -0,0 +1,62 @@
+/**
+ * Servlet container tuning for WebSocket connections.
+ */
+
+package com.opty.socket.config;
+
+/**
+ * IMPORTS
+ */
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Applies per-connection buffer sizes to the embedded Tomcat.
+ *
+ * Tomcat allocates the WebSocket message buffers and NIO socket buffers for every open connection,
+ * so with many idle connections these sizes dominate the heap (see the c100k profile).
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class WebSocketContainerConfig {
+
+    // --- ATTRIBUTES ---
+    private static final String TEXT_BUFFER_SIZE_PARAM = "org.apache.tomcat.websocket.textBufferSize";
+    private static final String BINARY_BUFFER_SIZE_PARAM = "org.apache.tomcat.websocket.binaryBufferSize";
+    private final AppConfig appConfig;
+
+
+    /**
+     * Sets WebSocket buffer sizes (servlet context init params read by Tomcat's WebSocket container)
+     * and NIO socket application buffer sizes.
+     */
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> webSocketBufferCustomizer() {
+        AppConfig.ContainerConfig config = appConfig.getContainer();
+
+        return factory -> {
+            factory.addContextCustomizers(context -> {
+                context.addParameter(TEXT_BUFFER_SIZE_PARAM, String.valueOf(config.getTextBufferSize()));
+                context.addParameter(BINARY_BUFFER_SIZE_PARAM, String.valueOf(config.getBinaryBufferSize()));
+            });
+            factory.addConnectorCustomizers(connector -> {
+                connector.setProperty("socket.appReadBufSize", String.valueOf(config.getSocketReadBufferSize()));
+                connector.setProperty("socket.appWriteBufSize", String.valueOf(config.getSocketWriteBufferSize()));
+            });
+
+            log.info("WebSocket container buffers: text={} chars, binary={} bytes, socketRead={} bytes, socketWrite={} bytes",
+                    config.getTextBufferSize(), config.getBinaryBufferSize(),
+                    config.getSocketReadBufferSize(), config.getSocketWriteBufferSize());
+        };
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Attachment download controller.
+ */
+
+package com.opty.socket.controller;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.service.AttachmentService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Serves attachments received over WebSocket, with single-range requests (resumable downloads).
+ *
+ * The body is not copied through the JVM heap: on Tomcat it is handed to the connector's sendfile support,
+ * which writes the file region to the socket with {@link FileChannel#transferTo}. Other containers get a
+ * {@code transferTo} into the response stream.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/attachments")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class AttachmentController {
+
+    // --- ATTRIBUTES ---
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private final AttachmentService attachmentService;
+
+
+    /**
+     * Downloads an attachment, or the byte range given by the {@code Range} header.
+     *
+     * @param attachmentId the attachment ID (from the ATTACHMENT message)
+     * @param range        the requested range (a multi-range request gets the whole file)
+     */
+    @GetMapping("/{attachmentId}")
+    public void download(@PathVariable String attachmentId,
+                         @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        AttachmentService.Attachment attachment = attachmentService.getAttachment(attachmentId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Attachment not found"));
+
+        // Resolve the requested range
+        long length = attachment.size();
+        long start = 0;
+        long end = length - 1;
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                if (start > end) {
+                    throw new IllegalArgumentException("Range starts beyond the end");
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        } catch (IllegalArgumentException e) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            throw new ResponseStatusException(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        }
+
+        long count = end - start + 1;
+        response.setContentType(attachment.contentType());
+        response.setContentLengthLong(count);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(attachment.name(), StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        // Zero-copy: Tomcat writes the region after this method returns
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, attachment.path().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            log.debug("Attachment handed to sendfile: attachmentId={}, start={}, end={}", attachmentId, start, end);
+            return;
+        }
+
+        try (FileChannel file = FileChannel.open(attachment.path(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long transferred = file.transferTo(position, end + 1 - position, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        }
+        log.debug("Attachment served: attachmentId={}, start={}, end={}", attachmentId, start, end);
+    }
+}
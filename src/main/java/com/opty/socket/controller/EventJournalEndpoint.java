@@ -0,0 +1,81 @@
+/**
+ * Event journal actuator endpoint.
+ */
+
+package com.opty.socket.controller;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.service.EventJournal;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Serves the recent lifecycle events of the journal at {@code /actuator/events}, or only those of one type
+ * at {@code /actuator/events/{event}} (e.g. {@code /actuator/events/SESSION_CREATED}).
+ */
+@Component
+@Endpoint(id = "events")
+@RequiredArgsConstructor
+public class EventJournalEndpoint {
+
+    // --- ATTRIBUTES ---
+    private static final int DEFAULT_LIMIT = 100;
+    private final EventJournal eventJournal;
+
+
+    /**
+     * Gets the journal state and its most recent events, oldest first.
+     *
+     * @return capacity, events recorded, sample rates, totals per event and the events
+     */
+    @ReadOperation
+    public Map<String, Object> events() {
+        return body(null);
+    }
+
+
+    /**
+     * Gets the journal state and its most recent events of one type, oldest first.
+     *
+     * @param event the event type
+     * @return capacity, events recorded, sample rates, totals per event and the events
+     */
+    @ReadOperation
+    public Map<String, Object> eventsOfType(@Selector String event) {
+        try {
+            return body(EventJournal.Event.valueOf(event.trim().toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException("Unknown event: " + event, "Unknown event");
+        }
+    }
+
+
+    /**
+     * Builds the response with up to {@value #DEFAULT_LIMIT} events, optionally of one type.
+     */
+    private Map<String, Object> body(EventJournal.Event filter) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("capacity", eventJournal.getCapacity());
+        body.put("recorded", eventJournal.getRecorded());
+        body.put("sampleRates", eventJournal.getSampleRates());
+        body.put("totals", eventJournal.getTotals());
+        body.put("events", eventJournal.recent(DEFAULT_LIMIT, filter));
+        return body;
+    }
+}
@@ -8,17 +8,27 @@ package com.opty.socket.controller;
 /**
  * IMPORTS
  */
+import com.opty.socket.config.AppConfig;
 import com.opty.socket.dto.SessionDTO;
+import com.opty.socket.security.JwtVerifier;
+import com.opty.socket.security.RequestIdentityResolver;
+import com.opty.socket.service.AdmissionControlService;
 import com.opty.socket.service.SessionManager;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 
@@ -38,24 +48,70 @@ public class SessionController {
 
     // --- ATTRIBUTES ---
     private final SessionManager sessionManager;
+    private final AppConfig appConfig;
+    private final JwtVerifier jwtVerifier;
+    private final RequestIdentityResolver requestIdentityResolver;
+    private final AdmissionControlService admissionControlService;
 
 
     /**
-     * Gets all sessions that are waiting for a supervisor (unpaired).
+     * Gets the sessions of one tenant that are waiting for a supervisor (unpaired).
      *
-     * @return list of unpaired sessions
+     * With tenants enabled the tenant is resolved like a handshake: from the token claim when auth is
+     * enabled (a {@code tenant} parameter naming another tenant is refused), otherwise from the required
+     * {@code tenant} parameter. Sessions of other tenants are never listed.
+     *
+     * @param tenant the tenant (required with tenants enabled and auth disabled)
+     * @return list of unpaired sessions, most urgent first
      */
     @GetMapping("/available")
-    public ResponseEntity<List<SessionDTO>> getAvailableSessions() {
+    public ResponseEntity<List<SessionDTO>> getAvailableSessions(@RequestParam(required = false) String tenant,
+                                                                 HttpServletRequest request) {
+        String resolvedTenant = resolveTenant(tenant, request);
 
-        // Fetch unpaired sessions and convert to DTO
-        List<SessionDTO> sessions = sessionManager.getUnpairedSessions()
+        // Fetch the tenant's unpaired sessions and convert to DTO
+        List<SessionDTO> sessions = sessionManager.getUnpairedSessions(resolvedTenant)
             .stream()
             .map(SessionDTO::fromSession)
             .collect(Collectors.toList());
 
         // Log and return the list
-        log.info("Fetched {} available sessions", sessions.size());
+        log.info("Fetched {} available sessions: tenant={}", sessions.size(), resolvedTenant);
         return ResponseEntity.ok(sessions);
     }
+
+
+    /**
+     * Resolves the tenant whose sessions the caller may list, with the same rules as a handshake.
+     */
+    private String resolveTenant(String requested, HttpServletRequest request) {
+        AppConfig.TenantConfig config = appConfig.getTenant();
+        if (!config.isEnabled()) {
+            return config.getDefaultTenant();
+        }
+        ServletServerHttpRequest httpRequest = new ServletServerHttpRequest(request);
+
+        // Auth enabled: the token decides, as on the WebSocket handshake
+        if (appConfig.getAuth().isEnabled()) {
+            Map<String, Object> claims = requestIdentityResolver.extractToken(httpRequest)
+                    .flatMap(jwtVerifier::verify)
+                    .orElse(null);
+            if (claims == null) {
+                throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Valid token required");
+            }
+            String tenant = requestIdentityResolver.resolveTenant(httpRequest, claims);
+            if (requested != null && !requested.isBlank() && !requested.trim().equals(tenant)) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Tenant not allowed");
+            }
+            return tenant;
+        }
+
+        String tenant = requestIdentityResolver.requestedTenant(httpRequest, null)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Parameter '" + config.getParameter() + "' is required"));
+        if (!admissionControlService.isKnownTenant(tenant)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Unknown tenant");
+        }
+        return tenant;
+    }
 }
@@ -15,6 +15,7 @@ import lombok.NoArgsConstructor;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 
 
 /**
@@ -35,6 +36,11 @@ public class SessionDTO {
     private String createdAt;
     private long waitingTimeMinutes;
     private long waitingTimeSeconds;
+    private String tier;
+    private int priority;
+    private String slaDeadline;
+    private List<String> tags;
+    private String tenant;
 
     /**
      * Creates a DTO from a Session entity.
@@ -50,7 +56,12 @@ public class SessionDTO {
                 session.isPaired(),
                 session.createdAt().toString(),
                 waitingTime.toMinutes(),
-                waitingTime.getSeconds() % 60
+                waitingTime.getSeconds() % 60,
+                session.tier(),
+                session.priority(),
+                session.slaDeadline() != null ? session.slaDeadline().toString() : null,
+                List.of(session.tags()),
+                session.tenant()
         );
     }
 }
@@ -24,6 +24,7 @@ public class ChatMessageDocument {
     private MessageType type;
     private Map<String, Object> payload;
     private Instant timestamp;
+    private Long seq; // Número de sequência da mensagem na sessão
 
     /**
      * Construtor auxiliar para converter do nosso 'record' Message
@@ -35,5 +36,6 @@ public class ChatMessageDocument {
         this.type = message.type();
         this.payload = message.payload();
         this.timestamp = message.timestamp();
+        this.seq = message.seq();
     }
 }
\ No newline at end of file
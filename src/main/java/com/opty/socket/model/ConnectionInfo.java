@@ -10,6 +10,8 @@ package com.opty.socket.model;
  */
 import org.springframework.web.socket.WebSocketSession;
 
+import java.util.Arrays;
+
 
 /**
  * CODE
@@ -17,25 +19,78 @@ import org.springframework.web.socket.WebSocketSession;
 
 /**
  * Tracks active WebSocket connections (client or supervisor).
+ *
+ * Identified by an internal long ID; {@code sessionIds} holds the internal IDs of the sessions the
+ * connection takes part in (at most one for clients). Instances are immutable, so the array is never
+ * modified in place.
  */
 public record ConnectionInfo(
 
-        String connectionId,
+        long connectionId,
         WebSocketSession webSocketSession,
         String connectionType,
-        String sessionId
+        long[] sessionIds
 ) {
 
+    // --- ATTRIBUTES ---
+    private static final long[] NO_SESSIONS = new long[0];
+
+    /**
+     * Creates a connection that takes part in no session yet.
+     */
+    public ConnectionInfo(long connectionId, WebSocketSession webSocketSession, String connectionType) {
+        this(connectionId, webSocketSession, connectionType, NO_SESSIONS);
+    }
+
+    /**
+     * Creates a copy that also takes part in a session.
+     */
+    public ConnectionInfo withSession(long sessionId) {
+        if (hasSession(sessionId)) {
+            return this;
+        }
+        long[] updated = Arrays.copyOf(sessionIds, sessionIds.length + 1);
+        updated[sessionIds.length] = sessionId;
+        return new ConnectionInfo(connectionId, webSocketSession, connectionType, updated);
+    }
+
+    /**
+     * Creates a copy that no longer takes part in a session.
+     */
+    public ConnectionInfo withoutSession(long sessionId) {
+        if (!hasSession(sessionId)) {
+            return this;
+        }
+        long[] updated = sessionIds.length == 1
+                ? NO_SESSIONS
+                : Arrays.stream(sessionIds).filter(id -> id != sessionId).toArray();
+        return new ConnectionInfo(connectionId, webSocketSession, connectionType, updated);
+    }
+
+    /**
+     * Checks if this connection takes part in a session.
+     */
+    public boolean hasSession(long sessionId) {
+        for (long id : sessionIds) {
+            if (id == sessionId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of sessions this connection takes part in.
+     */
+    public int sessionCount() {
+        return sessionIds.length;
+    }
+
     /**
-     * Creates a copy with updated session ID.
+     * Gets the external ID of the underlying WebSocket session (for logs).
      */
-    public ConnectionInfo withSessionId(String newSessionId) {
-        return new ConnectionInfo(
-                connectionId,
-                webSocketSession,
-                connectionType,
-                newSessionId
-        );
+    public String externalId() {
+        return webSocketSession.getId();
     }
 
     /**
@@ -53,9 +108,9 @@ public record ConnectionInfo(
     }
 
     /**
-     * Checks if this connection is paired (has a session ID).
+     * Checks if this connection is paired (takes part in a session).
      */
     public boolean isPaired() {
-        return sessionId != null && !sessionId.isBlank();
+        return sessionIds.length > 0;
     }
 }
@@ -22,6 +22,9 @@ import java.util.Map;
 
 /**
  * Messages exchanged via WebSocket between clients, supervisors, and server.
+ *
+ * {@code seq} is assigned by the server to messages delivered within a session, increasing by one
+ * per session event in delivery order; it is absent on other messages.
  */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public record Message(
@@ -35,20 +38,21 @@ public record Message(
         MessageType type,
 
         Map<String, Object> payload,
-        Instant timestamp
+        Instant timestamp,
+        Long seq
 ) {
     /**
      * Creates a new message with current timestamp.
      */
     public Message(String sessionId, String from, MessageType type, Map<String, Object> payload) {
-        this(sessionId, from, type, payload, Instant.now());
+        this(sessionId, from, type, payload, Instant.now(), null);
     }
 
     /**
      * Creates a message without payload (for DISCONNECT).
      */
     public Message(String sessionId, String from, MessageType type) {
-        this(sessionId, from, type, null, Instant.now());
+        this(sessionId, from, type, null, Instant.now(), null);
     }
 
     /**
@@ -65,6 +69,20 @@ public record Message(
         return from != null && (from.equals("CLIENT") || from.equals("SUPERVISOR"));
     }
 
+    /**
+     * Creates a copy addressed to another session ID.
+     */
+    public Message withSessionId(String newSessionId) {
+        return new Message(newSessionId, from, type, payload, timestamp, seq);
+    }
+
+    /**
+     * Creates a copy stamped with a session sequence number.
+     */
+    public Message withSeq(long newSeq) {
+        return new Message(sessionId, from, type, payload, timestamp, newSeq);
+    }
+
     /**
      * Creates an error message.
      */
@@ -74,7 +92,8 @@ public record Message(
                 "SERVER",
                 MessageType.ERROR,
                 Map.of("error", errorMessage),
-                Instant.now()
+                Instant.now(),
+                null
         );
     }
 
@@ -82,12 +101,36 @@ public record Message(
      * Creates a CONNECT response message for clients.
      */
     public static Message connectResponse(String sessionId) {
+        return connectResponse(sessionId, Map.of("message", "Connected successfully", "sessionId", sessionId));
+    }
+
+    /**
+     * Creates a CONNECT response message for clients, with the token to reclaim the session after a restart.
+     *
+     * @param sessionId   the external session ID
+     * @param resumeToken the session resume token (hex)
+     * @param resumed     true if the client reclaimed a session of a previous server process
+     */
+    public static Message connectResponse(String sessionId, String resumeToken, boolean resumed) {
+        return connectResponse(sessionId, Map.of(
+                "message", resumed ? "Session resumed" : "Connected successfully",
+                "sessionId", sessionId,
+                "resumeToken", resumeToken,
+                "resumed", resumed
+        ));
+    }
+
+    /**
+     * Creates a CONNECT response message with the given payload.
+     */
+    private static Message connectResponse(String sessionId, Map<String, Object> payload) {
         return new Message(
                 sessionId,
                 "SERVER",
                 MessageType.CONNECT,
-                Map.of("message", "Connected successfully", "sessionId", sessionId),
-                Instant.now()
+                payload,
+                Instant.now(),
+                null
         );
     }
 }
@@ -17,5 +17,20 @@ public enum MessageType {
     MESSAGE,
     DISCONNECT,
     ERROR,
-    SESSION_QUEUE_UPDATE
+    SESSION_QUEUE_UPDATE,
+    ACK,
+    BATCH,
+    SERVER_RESTARTING,
+    ATTACHMENT,
+    TYPING,
+    PRESENCE,
+    READ;
+
+
+    /**
+     * Checks if this type is an ephemeral UI signal (typing, presence, read receipt).
+     */
+    public boolean isEphemeral() {
+        return this == TYPING || this == PRESENCE || this == READ;
+    }
 }
@@ -9,6 +9,7 @@ package com.opty.socket.model;
  * IMPORTS
  */
 import java.time.Instant;
+import java.util.Arrays;
 
 
 /**
@@ -16,33 +17,113 @@ import java.time.Instant;
  */
 
 /**
- * Represents a client-supervisor chat session.
+ * Represents a client-supervisor chat session, optionally watched by observers (other agents, leads, bots).
+ *
+ * Timestamps are kept as epoch milliseconds (no {@link Instant} per field) to keep idle sessions compact.
+ * Sessions and connections are referenced by internal long IDs ({@code 0} means none); {@code sessionId}
+ * is the external ID exchanged with clients, and {@code resumeToken} a secret only the client learns, used to
+ * reclaim the session after a server restart. Sessions belong to one {@code tenant}; routing {@code tags}
+ * (e.g. {@code lang:pt}, {@code tier:vip}) select the supervisors of that tenant who see it in their queue.
+ *
+ * Synthetic sessions (JIT warm-up traffic) are routed like any other but never persisted or snapshotted.
+ *
+ * Observers are kept in a copy-on-write array: membership changes create a new session, so readers
+ * fanning out a message work on a stable snapshot.
  */
 public record Session(
+        long id,
         String sessionId,
-        String clientConnectionId,
-        String supervisorConnectionId,
-        Instant createdAt,
-        Instant lastActivityAt
+        long resumeToken,
+        long clientConnectionId,
+        long supervisorConnectionId,
+        long createdAtMillis,
+        long lastActivityAtMillis,
+        String tier,
+        int priority,
+        long slaDeadlineMillis,
+        String tenant,
+        String[] tags,
+        long[] observerConnectionIds,
+        boolean synthetic
 ) {
 
+    // --- ATTRIBUTES ---
+    public static final long NO_CONNECTION = 0L;
+    private static final long NO_DEADLINE = 0L;
+    private static final long[] NO_OBSERVERS = new long[0];
+
+    /**
+     * Creates a new unpaired session (client only) of a tenant with queue priority, SLA deadline and routing tags.
+     */
+    public Session(long id, String sessionId, long resumeToken, long clientConnectionId, String tenant, String tier,
+                   int priority, Instant slaDeadline, String[] tags, boolean synthetic) {
+        this(id, sessionId, resumeToken, clientConnectionId, NO_CONNECTION, System.currentTimeMillis(), System.currentTimeMillis(),
+                tier, priority, slaDeadline != null ? slaDeadline.toEpochMilli() : NO_DEADLINE, tenant, tags,
+                NO_OBSERVERS, synthetic);
+    }
+
     /**
-     * Creates a new unpaired session (client only).
+     * Gets the creation time.
      */
-    public Session(String sessionId, String clientConnectionId) {
-        this(sessionId, clientConnectionId, null, Instant.now(), Instant.now());
+    public Instant createdAt() {
+        return Instant.ofEpochMilli(createdAtMillis);
+    }
+
+    /**
+     * Gets the last activity time.
+     */
+    public Instant lastActivityAt() {
+        return Instant.ofEpochMilli(lastActivityAtMillis);
+    }
+
+    /**
+     * Gets the SLA deadline, or null if none.
+     */
+    public Instant slaDeadline() {
+        return slaDeadlineMillis != NO_DEADLINE ? Instant.ofEpochMilli(slaDeadlineMillis) : null;
     }
 
     /**
      * Creates a copy with paired supervisor.
      */
-    public Session withSupervisor(String supervisorConnectionId) {
+    public Session withSupervisor(long supervisorConnectionId) {
         return new Session(
+                id,
                 sessionId,
+                resumeToken,
                 clientConnectionId,
                 supervisorConnectionId,
-                createdAt,
-                Instant.now()
+                createdAtMillis,
+                System.currentTimeMillis(),
+                tier,
+                priority,
+                slaDeadlineMillis,
+                tenant,
+                tags,
+                observerConnectionIds,
+                synthetic
+        );
+    }
+
+    /**
+     * Creates a copy without supervisor, keeping creation time and priority (queue position).
+     */
+    public Session withoutSupervisor() {
+        return new Session(
+                id,
+                sessionId,
+                resumeToken,
+                clientConnectionId,
+                NO_CONNECTION,
+                createdAtMillis,
+                System.currentTimeMillis(),
+                tier,
+                priority,
+                slaDeadlineMillis,
+                tenant,
+                tags,
+                observerConnectionIds,
+                synthetic
         );
     }
 
@@ -51,11 +132,90 @@ public record Session(
      */
     public Session withLastActivity() {
         return new Session(
+                id,
                 sessionId,
+                resumeToken,
                 clientConnectionId,
                 supervisorConnectionId,
-                createdAt,
-                Instant.now()
+                createdAtMillis,
+                System.currentTimeMillis(),
+                tier,
+                priority,
+                slaDeadlineMillis,
+                tenant,
+                tags,
+                observerConnectionIds,
+                synthetic
+        );
+    }
+
+    /**
+     * Creates an unpaired copy owned by another client connection (a session reclaimed after a restart),
+     * keeping creation time, priority and SLA deadline (queue position).
+     */
+    public Session reclaimedBy(long newId, String newSessionId, long newClientConnectionId) {
+        return new Session(
+                newId,
+                newSessionId,
+                resumeToken,
+                newClientConnectionId,
+                NO_CONNECTION,
+                createdAtMillis,
+                System.currentTimeMillis(),
+                tier,
+                priority,
+                slaDeadlineMillis,
+                tenant,
+                tags,
+                NO_OBSERVERS,
+                synthetic
+        );
+    }
+
+    /**
+     * Creates a copy with an added observer.
+     */
+    public Session withObserver(long connectionId) {
+        if (isObserver(connectionId)) {
+            return this;
+        }
+        long[] observers = Arrays.copyOf(observerConnectionIds, observerConnectionIds.length + 1);
+        observers[observerConnectionIds.length] = connectionId;
+        return withObservers(observers);
+    }
+
+    /**
+     * Creates a copy without an observer.
+     */
+    public Session withoutObserver(long connectionId) {
+        if (!isObserver(connectionId)) {
+            return this;
+        }
+        long[] observers = Arrays.stream(observerConnectionIds)
+                .filter(id -> id != connectionId)
+                .toArray();
+        return withObservers(observers.length == 0 ? NO_OBSERVERS : observers);
+    }
+
+    /**
+     * Creates a copy with the given observers.
+     */
+    private Session withObservers(long[] observers) {
+        return new Session(
+                id,
+                sessionId,
+                resumeToken,
+                clientConnectionId,
+                supervisorConnectionId,
+                createdAtMillis,
+                lastActivityAtMillis,
+                tier,
+                priority,
+                slaDeadlineMillis,
+                tenant,
+                tags,
+                observers,
+                synthetic
         );
     }
 
@@ -63,7 +223,73 @@ public record Session(
      * Checks if this session is paired (has both client and supervisor).
      */
     public boolean isPaired() {
-        return supervisorConnectionId != null && !supervisorConnectionId.isBlank();
+        return supervisorConnectionId != NO_CONNECTION;
+    }
+
+    /**
+     * Computes the waiting queue rank (lower is served first).
+     *
+     * The SLA deadline (or creation time without SLA) brought forward by the priority boost.
+     *
+     * @param priorityWeightMillis how much earlier one priority point moves the session
+     * @return the rank in epoch milliseconds
+     */
+    public long queueRank(long priorityWeightMillis) {
+        long base = slaDeadlineMillis != NO_DEADLINE ? slaDeadlineMillis : createdAtMillis;
+        return base - priority * priorityWeightMillis;
+    }
+
+    /**
+     * Checks if a connection is the client or the supervisor of this session.
+     */
+    public boolean isParty(long connectionId) {
+        return connectionId != NO_CONNECTION
+                && (connectionId == clientConnectionId || connectionId == supervisorConnectionId);
+    }
+
+    /**
+     * Checks if a connection observes this session.
+     */
+    public boolean isObserver(long connectionId) {
+        for (long observer : observerConnectionIds) {
+            if (observer == connectionId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a connection is the client, the supervisor or an observer of this session.
+     */
+    public boolean isMember(long connectionId) {
+        return isParty(connectionId) || (connectionId != NO_CONNECTION && isObserver(connectionId));
+    }
+
+    /**
+     * Gets the connection IDs of all members (client, supervisor if paired, observers).
+     */
+    public long[] memberConnectionIds() {
+        int supervisor = isPaired() ? 1 : 0;
+        long[] members = new long[1 + supervisor + observerConnectionIds.length];
+        members[0] = clientConnectionId;
+        if (supervisor == 1) {
+            members[1] = supervisorConnectionId;
+        }
+        System.arraycopy(observerConnectionIds, 0, members, 1 + supervisor, observerConnectionIds.length);
+        return members;
+    }
+
+    /**
+     * Checks if this session carries a routing tag.
+     */
+    public boolean hasTag(String tag) {
+        for (String own : tags) {
+            if (own.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -73,33 +299,33 @@ public record Session(
      * @return true if session has expired
      */
     public boolean isExpired(int timeoutMinutes) {
-        Instant expirationTime = lastActivityAt.plusSeconds(timeoutMinutes * 60L);
-        return Instant.now().isAfter(expirationTime);
+        long expirationTime = lastActivityAtMillis + timeoutMinutes * 60_000L;
+        return System.currentTimeMillis() > expirationTime;
     }
 
     /**
      * Gets the connection ID of the other party in this session.
      *
      * @param connectionId the connection ID of one party
-     * @return the connection ID of the other party, or null if not paired or invalid
+     * @return the connection ID of the other party, or {@link #NO_CONNECTION} if not paired or invalid
      */
-    public String getOtherPartyConnectionId(String connectionId) {
+    public long getOtherPartyConnectionId(long connectionId) {
 
-        // Not paired: return null
-        if (connectionId == null) {
-            return null;
+        // Not paired: return none
+        if (connectionId == NO_CONNECTION) {
+            return NO_CONNECTION;
         }
 
         // Passed connectionId is from client: return supervisor id
-        if (connectionId.equals(clientConnectionId)) {
+        if (connectionId == clientConnectionId) {
             return supervisorConnectionId;
 
         // Passed connectionId is from supervisor: return client id
-        } else if (connectionId.equals(supervisorConnectionId)) {
+        } else if (connectionId == supervisorConnectionId) {
             return clientConnectionId;
         }
 
-        // Invalid connectionId: return null
-        return null;
+        // Invalid connectionId: return none
+        return NO_CONNECTION;
     }
 }
@@ -0,0 +1,73 @@
+/**
+ * Coarse monotonic clock.
+ */
+
+package com.opty.socket.ratelimit;
+
+
+/**
+ * IMPORTS
+ */
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Monotonic clock updated by a background ticker every {@value #TICK_MILLIS} ms.
+ *
+ * Hot paths (per-frame rate limiting) read a volatile field instead of calling
+ * {@link System#nanoTime()} on every frame.
+ */
+@Slf4j
+@Component
+public class CoarseClock {
+
+    // --- ATTRIBUTES ---
+    static final long TICK_MILLIS = 2;
+    private volatile long nowNanos = System.nanoTime();
+    private ScheduledExecutorService ticker;
+
+
+    /**
+     * Starts the background ticker.
+     */
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "opty-coarse-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> nowNanos = System.nanoTime(), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        log.debug("Coarse clock started: tick={}ms", TICK_MILLIS);
+    }
+
+
+    /**
+     * Stops the background ticker.
+     */
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Gets the current coarse time in nanoseconds (monotonic, arbitrary origin).
+     */
+    public long nanoTime() {
+        return nowNanos;
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Inbound frame rate limiter.
+ */
+
+package com.opty.socket.ratelimit;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.MessageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Per-connection, per-IP and per-message-type rate limiting of inbound frames (thread-safe, lock-free).
+ *
+ * The per-IP limit keys on the socket peer, or on the client named by {@code X-Forwarded-For} when the
+ * peer is one of {@code rate-limit.trusted-proxies}; behind a proxy that is not listed, every connection
+ * would share the proxy's bucket.
+ *
+ * Frame limits are checked before JSON parsing; type limits right after. Every rejected frame
+ * consumes a violation permit, and a connection that runs out of violation permits should be closed
+ * with 1008 (policy violation). Ephemeral signals (typing, presence, read receipts) are also checked
+ * against a signal bucket of their own, so a flood of signals cannot use up the frame budget of messages.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RateLimiterService {
+
+    // --- ATTRIBUTES ---
+    private static final String LIMITER_ATTRIBUTE = "opty.rateLimiter";
+    private static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+    private final AppConfig appConfig;
+    private final CoarseClock clock;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, TokenBucket> ipBuckets = new ConcurrentHashMap<>();
+
+
+    /**
+     * Outcome of a rate limit check.
+     */
+    public enum Decision {
+        ALLOWED,
+        REJECTED,
+        CLOSE
+    }
+
+
+    /**
+     * Attaches limiters to a newly established connection.
+     *
+     * @param session  the WebSocket session
+     * @param endpoint the endpoint name ("client" or "supervisor")
+     */
+    public void attach(WebSocketSession session, String endpoint) {
+        AppConfig.RateLimitConfig config = appConfig.getRateLimit();
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        AppConfig.EndpointLimit limit = config.getEndpoints()
+                .getOrDefault(endpoint, new AppConfig.EndpointLimit());
+
+        // Per-type buckets only for configured types
+        Map<MessageType, TokenBucket> typeBuckets = new EnumMap<>(MessageType.class);
+        limit.getTypes().forEach((type, bucketLimit) -> typeBuckets.put(type, newBucket(bucketLimit)));
+
+        ConnectionLimiter limiter = new ConnectionLimiter(
+                endpoint,
+                newBucket(limit.getFrames()),
+                typeBuckets,
+                newBucket(limit.getSignals()),
+                remoteIp(session),
+                new TokenBucket(config.getViolationDecayPerSecond(), config.getCloseAfterViolations())
+        );
+        session.getAttributes().put(LIMITER_ATTRIBUTE, limiter);
+    }
+
+
+    /**
+     * Checks the connection and IP frame limits; call before parsing the frame.
+     *
+     * @param session the WebSocket session
+     * @return the decision
+     */
+    public Decision checkFrame(WebSocketSession session) {
+        ConnectionLimiter limiter = (ConnectionLimiter) session.getAttributes().get(LIMITER_ATTRIBUTE);
+        if (limiter == null) {
+            return Decision.ALLOWED;
+        }
+
+        long now = clock.nanoTime();
+        if (!limiter.frames().tryAcquire(now)) {
+            return reject(limiter, "connection", now);
+        }
+        if (!ipBucket(limiter.ip()).tryAcquire(now)) {
+            return reject(limiter, "ip", now);
+        }
+        return Decision.ALLOWED;
+    }
+
+
+    /**
+     * Checks the limit for a parsed message type.
+     *
+     * @param session the WebSocket session
+     * @param type    the message type
+     * @return the decision
+     */
+    public Decision checkType(WebSocketSession session, MessageType type) {
+        ConnectionLimiter limiter = (ConnectionLimiter) session.getAttributes().get(LIMITER_ATTRIBUTE);
+        if (limiter == null || type == null) {
+            return Decision.ALLOWED;
+        }
+
+        TokenBucket bucket = limiter.types().get(type);
+        long now = clock.nanoTime();
+        if (bucket != null && !bucket.tryAcquire(now)) {
+            return reject(limiter, "type", now);
+        }
+        return Decision.ALLOWED;
+    }
+
+
+    /**
+     * Checks the signal limit for a parsed ephemeral message (typing, presence, read receipts).
+     *
+     * Signals are charged on top of the frame limits, and excess signals count as violations.
+     *
+     * @param session the WebSocket session
+     * @return the decision
+     */
+    public Decision checkSignal(WebSocketSession session) {
+        ConnectionLimiter limiter = (ConnectionLimiter) session.getAttributes().get(LIMITER_ATTRIBUTE);
+        if (limiter == null) {
+            return Decision.ALLOWED;
+        }
+
+        long now = clock.nanoTime();
+        if (!limiter.signals().tryAcquire(now)) {
+            return reject(limiter, "signal", now);
+        }
+        return Decision.ALLOWED;
+    }
+
+
+    /**
+     * Discards per-IP buckets that are full again (no recent traffic).
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdleIpBuckets() {
+        long now = clock.nanoTime();
+        int before = ipBuckets.size();
+        ipBuckets.values().removeIf(bucket -> bucket.isIdle(now));
+        int evicted = before - ipBuckets.size();
+        if (evicted > 0) {
+            log.debug("Evicted {} idle per-IP rate limit buckets", evicted);
+        }
+    }
+
+
+    /**
+     * Records a rejected frame and decides whether the connection should be closed.
+     */
+    private Decision reject(ConnectionLimiter limiter, String reason, long now) {
+        rejectedCounter(limiter.endpoint(), reason).increment();
+        if (!limiter.violations().tryAcquire(now)) {
+            return Decision.CLOSE;
+        }
+        return Decision.REJECTED;
+    }
+
+
+    /**
+     * Gets the rejected frames counter for an endpoint and reason.
+     */
+    private Counter rejectedCounter(String endpoint, String reason) {
+        return Counter.builder("opty.ratelimit.rejected")
+                .description("Inbound frames rejected by rate limiting")
+                .tag("endpoint", endpoint)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+
+    /**
+     * Gets the shared bucket of a remote IP (re-created after idle eviction).
+     */
+    private TokenBucket ipBucket(String ip) {
+        TokenBucket bucket = ipBuckets.get(ip);
+        if (bucket != null) {
+            return bucket;
+        }
+        return ipBuckets.computeIfAbsent(ip, key -> newBucket(appConfig.getRateLimit().getPerIp()));
+    }
+
+
+    /**
+     * Creates a bucket from configured limits.
+     */
+    private TokenBucket newBucket(AppConfig.BucketLimit limit) {
+        return new TokenBucket(limit.getPermitsPerSecond(), limit.getBurst());
+    }
+
+
+    /**
+     * Gets the client IP address of a session.
+     *
+     * When the peer is a trusted proxy, {@code X-Forwarded-For} is walked from the right, skipping trusted
+     * proxies, to the first address the proxies did not add themselves. Otherwise the header is ignored,
+     * as any client can send it.
+     */
+    private String remoteIp(WebSocketSession session) {
+        InetSocketAddress address = session.getRemoteAddress();
+        if (address == null || address.getAddress() == null) {
+            return "unknown";
+        }
+        String ip = address.getAddress().getHostAddress();
+
+        List<String> trustedProxies = appConfig.getRateLimit().getTrustedProxies();
+        if (trustedProxies.isEmpty() || !trustedProxies.contains(ip)) {
+            return ip;
+        }
+        List<String> forwardedFor = session.getHandshakeHeaders().get(FORWARDED_FOR_HEADER);
+        if (forwardedFor == null) {
+            return ip;
+        }
+        for (int i = forwardedFor.size() - 1; i >= 0; i--) {
+            String[] hops = forwardedFor.get(i).split(",");
+            for (int j = hops.length - 1; j >= 0; j--) {
+                String hop = hops[j].trim();
+                if (hop.isEmpty()) {
+                    continue;
+                }
+                ip = hop;
+                if (!trustedProxies.contains(hop)) {
+                    return hop;
+                }
+            }
+        }
+        return ip;
+    }
+
+
+    /**
+     * Limiters held by one connection.
+     */
+    private record ConnectionLimiter(
+            String endpoint,
+            TokenBucket frames,
+            Map<MessageType, TokenBucket> types,
+            TokenBucket signals,
+            String ip,
+            TokenBucket violations
+    ) {
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Lock-free token bucket.
+ */
+
+package com.opty.socket.ratelimit;
+
+
+/**
+ * IMPORTS
+ */
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Token bucket implemented as a GCRA (generic cell rate algorithm) over a single {@link AtomicLong}.
+ *
+ * The bucket state is the theoretical arrival time (TAT) of the next permit; acquiring a permit is
+ * one CAS that moves the TAT forward by the emission interval. A request is rejected when the TAT
+ * runs more than the burst tolerance ahead of the clock, which is equivalent to an empty bucket.
+ */
+public final class TokenBucket {
+
+    // --- ATTRIBUTES ---
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final AtomicLong theoreticalArrivalNanos = new AtomicLong(Long.MIN_VALUE);
+
+
+    /**
+     * Creates a bucket refilling {@code permitsPerSecond} permits per second, holding at most {@code burst}.
+     *
+     * @param permitsPerSecond refill rate (must be positive)
+     * @param burst            bucket capacity (must be positive)
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.emissionIntervalNanos = Math.max(1L, (long) (1_000_000_000L / permitsPerSecond));
+        this.burstToleranceNanos = emissionIntervalNanos * (burst - 1L);
+    }
+
+
+    /**
+     * Tries to take one permit.
+     *
+     * @param nowNanos the current time from {@link CoarseClock}
+     * @return true if a permit was available
+     */
+    public boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long current = theoreticalArrivalNanos.get();
+            long tat = Math.max(current, nowNanos);
+
+            // Bucket empty: next permit lies beyond the burst tolerance
+            if (tat - nowNanos > burstToleranceNanos) {
+                return false;
+            }
+
+            if (theoreticalArrivalNanos.compareAndSet(current, tat + emissionIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Gets the time until the next permit becomes available (0 if available now).
+     *
+     * @param nowNanos the current time from {@link CoarseClock}
+     */
+    public long nanosUntilAvailable(long nowNanos) {
+        long tat = Math.max(theoreticalArrivalNanos.get(), nowNanos);
+        return Math.max(0L, tat - nowNanos - burstToleranceNanos);
+    }
+
+
+    /**
+     * Checks if the bucket is full again (no recent usage), so it can be discarded.
+     *
+     * @param nowNanos the current time from {@link CoarseClock}
+     */
+    public boolean isIdle(long nowNanos) {
+        return theoreticalArrivalNanos.get() <= nowNanos;
+    }
+}
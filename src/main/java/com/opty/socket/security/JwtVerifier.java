@@ -0,0 +1,295 @@
+/**
+ * JWT verification service.
+ */
+
+package com.opty.socket.security;
+
+
+/**
+ * IMPORTS
+ */
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opty.socket.config.AppConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Verifies HMAC (HS256/384/512) and RSA (RS256/384/512) signed JWTs.
+ *
+ * Keys come from {@code opty.socket.auth} (HMAC secret, RSA public key PEM) and/or a local JWKS file.
+ * Verified tokens are cached by SHA-256 hash until their {@code exp}, so reconnecting clients skip
+ * signature verification.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JwtVerifier {
+
+    // --- ATTRIBUTES ---
+    private static final String DEFAULT_KEY_ID = "";
+    private static final TypeReference<Map<String, Object>> CLAIMS_TYPE = new TypeReference<>() {};
+    private final AppConfig appConfig;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Key> hmacKeys = new HashMap<>();
+    private final Map<String, PublicKey> rsaKeys = new HashMap<>();
+    private VerifiedTokenCache cache;
+    private Timer verifyTimer;
+
+
+    /**
+     * Loads signing keys and initializes cache and metrics.
+     */
+    @PostConstruct
+    public void init() throws IOException, GeneralSecurityException {
+        AppConfig.AuthConfig config = appConfig.getAuth();
+        cache = new VerifiedTokenCache(config.getCacheMaxEntries());
+        verifyTimer = Timer.builder("opty.auth.jwt.verify")
+                .description("JWT signature verification latency (cache misses only)")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        if (config.getHmacSecret() != null && !config.getHmacSecret().isBlank()) {
+            hmacKeys.put(DEFAULT_KEY_ID, new SecretKeySpec(config.getHmacSecret().getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        }
+        if (config.getRsaPublicKey() != null && !config.getRsaPublicKey().isBlank()) {
+            rsaKeys.put(DEFAULT_KEY_ID, parsePemPublicKey(config.getRsaPublicKey()));
+        }
+        if (config.getJwksFile() != null && !config.getJwksFile().isBlank()) {
+            loadJwks(Path.of(config.getJwksFile()));
+        }
+
+        if (hmacKeys.isEmpty() && rsaKeys.isEmpty()) {
+            throw new IllegalStateException("JWT auth enabled but no keys configured (hmac-secret, rsa-public-key or jwks-file)");
+        }
+        log.info("JWT verification enabled: hmacKeys={}, rsaKeys={}", hmacKeys.size(), rsaKeys.size());
+    }
+
+
+    /**
+     * Verifies a token and returns its claims.
+     *
+     * @param token the compact JWT
+     * @return the claims (read-only, the same on cache hits and misses), or empty if the token is invalid,
+     *         expired or has no {@code exp}
+     */
+    public Optional<Map<String, Object>> verify(String token) {
+        long nowMillis = System.currentTimeMillis();
+        String tokenHash = sha256(token);
+
+        // Cache hit: signature already verified and token not yet expired
+        Map<String, Object> cached = cache.get(tokenHash, nowMillis);
+        if (cached != null) {
+            meterRegistry.counter("opty.auth.jwt.cache", "result", "hit").increment();
+            return Optional.of(cached);
+        }
+        meterRegistry.counter("opty.auth.jwt.cache", "result", "miss").increment();
+
+        Map<String, Object> claims = verifyTimer.record(() -> verifySignatureAndClaims(token, nowMillis));
+        if (claims == null) {
+            return Optional.empty();
+        }
+
+        long expiresAtMillis = expiresAtMillis(claims, nowMillis);
+        cache.put(tokenHash, claims, expiresAtMillis, nowMillis);
+        return Optional.of(claims);
+    }
+
+
+    /**
+     * Gets the number of cached verified tokens.
+     */
+    public int getCachedTokenCount() {
+        return cache.size();
+    }
+
+
+    /**
+     * Verifies signature, expiry and not-before.
+     *
+     * @return the claims as a read-only map, or null if invalid
+     */
+    private Map<String, Object> verifySignatureAndClaims(String token, long nowMillis) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return rejected("malformed");
+        }
+
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            JsonNode header = objectMapper.readTree(decoder.decode(parts[0]));
+            String algorithm = header.path("alg").asText("");
+            String keyId = header.path("kid").asText(DEFAULT_KEY_ID);
+
+            byte[] signingInput = (parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII);
+            byte[] signature = decoder.decode(parts[2]);
+
+            if (!verifySignature(algorithm, keyId, signingInput, signature)) {
+                return rejected("signature");
+            }
+
+            // Claim values may be JSON null, so the read-only copy must tolerate nulls (Map.copyOf does not)
+            Map<String, Object> claims = Collections.unmodifiableMap(
+                    new HashMap<>(objectMapper.readValue(decoder.decode(parts[1]), CLAIMS_TYPE)));
+            long skewMillis = appConfig.getAuth().getClockSkewSeconds() * 1000L;
+
+            // Expiration (required: a token without exp would stay valid forever) and not-before
+            if (!(claims.get("exp") instanceof Number exp)) {
+                return rejected("missing-exp");
+            }
+            if (exp.longValue() * 1000L + skewMillis < nowMillis) {
+                return rejected("expired");
+            }
+            if (claims.get("nbf") instanceof Number nbf && nbf.longValue() * 1000L - skewMillis > nowMillis) {
+                return rejected("not-before");
+            }
+
+            return claims;
+
+        } catch (IllegalArgumentException | IOException | GeneralSecurityException e) {
+            log.debug("JWT verification failed: {}", e.getMessage());
+            return rejected("malformed");
+        }
+    }
+
+
+    /**
+     * Verifies the signature with the key selected by algorithm family and key ID.
+     */
+    private boolean verifySignature(String algorithm, String keyId, byte[] signingInput, byte[] signature)
+            throws GeneralSecurityException {
+        switch (algorithm) {
+            case "HS256", "HS384", "HS512" -> {
+                Key key = hmacKeys.getOrDefault(keyId, hmacKeys.get(DEFAULT_KEY_ID));
+                if (key == null) {
+                    return false;
+                }
+                Mac mac = Mac.getInstance("HmacSHA" + algorithm.substring(2));
+                mac.init(new SecretKeySpec(key.getEncoded(), mac.getAlgorithm()));
+                return MessageDigest.isEqual(mac.doFinal(signingInput), signature);
+            }
+            case "RS256", "RS384", "RS512" -> {
+                PublicKey key = rsaKeys.getOrDefault(keyId, rsaKeys.get(DEFAULT_KEY_ID));
+                if (key == null) {
+                    return false;
+                }
+                Signature verifier = Signature.getInstance("SHA" + algorithm.substring(2) + "withRSA");
+                verifier.initVerify(key);
+                verifier.update(signingInput);
+                return verifier.verify(signature);
+            }
+            default -> {
+                // Includes "none": unsigned tokens are never accepted
+                return false;
+            }
+        }
+    }
+
+
+    /**
+     * Gets the cache expiry for verified claims: token exp (present on every verified token), capped by the
+     * configured max TTL.
+     */
+    private long expiresAtMillis(Map<String, Object> claims, long nowMillis) {
+        long maxTtlMillis = appConfig.getAuth().getCacheMaxTtlSeconds() * 1000L;
+        long expMillis = ((Number) claims.get("exp")).longValue() * 1000L;
+        return Math.min(expMillis, nowMillis + maxTtlMillis);
+    }
+
+
+    /**
+     * Records a rejected token.
+     */
+    private Map<String, Object> rejected(String reason) {
+        meterRegistry.counter("opty.auth.jwt.rejected", "reason", reason).increment();
+        return null;
+    }
+
+
+    /**
+     * Loads RSA and HMAC keys from a JWKS file.
+     */
+    private void loadJwks(Path path) throws IOException, GeneralSecurityException {
+        JsonNode jwks = objectMapper.readTree(Files.readAllBytes(path));
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+
+        for (JsonNode jwk : jwks.path("keys")) {
+            String keyId = jwk.path("kid").asText(DEFAULT_KEY_ID);
+            switch (jwk.path("kty").asText()) {
+                case "RSA" -> {
+                    RSAPublicKeySpec spec = new RSAPublicKeySpec(
+                            new BigInteger(1, decoder.decode(jwk.path("n").asText())),
+                            new BigInteger(1, decoder.decode(jwk.path("e").asText()))
+                    );
+                    rsaKeys.put(keyId, KeyFactory.getInstance("RSA").generatePublic(spec));
+                }
+                case "oct" -> hmacKeys.put(keyId, new SecretKeySpec(decoder.decode(jwk.path("k").asText()), "HmacSHA256"));
+                default -> log.warn("Ignoring unsupported JWK: kid={}, kty={}", keyId, jwk.path("kty").asText());
+            }
+        }
+        log.info("Loaded JWKS file: path={}", path);
+    }
+
+
+    /**
+     * Parses an X.509 PEM encoded RSA public key.
+     */
+    private PublicKey parsePemPublicKey(String pem) throws GeneralSecurityException {
+        String base64 = pem
+                .replace("-----BEGIN PUBLIC KEY-----", "")
+                .replace("-----END PUBLIC KEY-----", "")
+                .replaceAll("\\s", "");
+        X509EncodedKeySpec spec = new X509EncodedKeySpec(Base64.getDecoder().decode(base64));
+        return KeyFactory.getInstance("RSA").generatePublic(spec);
+    }
+
+
+    /**
+     * Hashes a token for use as cache key (raw tokens are never kept).
+     */
+    private String sha256(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Request identity resolver.
+ */
+
+package com.opty.socket.security;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+import java.util.Optional;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Reads the token and the tenant of an HTTP request, for WebSocket handshakes and REST calls alike.
+ *
+ * The token comes from the {@code token} query parameter or the {@code Authorization: Bearer} header.
+ * With auth enabled the tenant comes from the token claim only (clients cannot pick another tenant);
+ * otherwise from the {@code tenant} query parameter. Requests naming no tenant belong to the default tenant,
+ * which is also the only tenant while tenants are disabled.
+ */
+@Component
+@RequiredArgsConstructor
+public class RequestIdentityResolver {
+
+    // --- ATTRIBUTES ---
+    private static final String BEARER_PREFIX = "Bearer ";
+    private final AppConfig appConfig;
+
+
+    /**
+     * Extracts the token from the query parameter or the Authorization header.
+     *
+     * @param request the HTTP request
+     * @return the token, or empty if the request carries none
+     */
+    public Optional<String> extractToken(HttpRequest request) {
+        String fromQuery = queryParameter(request, appConfig.getAuth().getTokenParameter());
+        if (fromQuery != null && !fromQuery.isBlank()) {
+            return Optional.of(fromQuery);
+        }
+
+        String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.startsWith(BEARER_PREFIX)) {
+            return Optional.of(authorization.substring(BEARER_PREFIX.length()).trim());
+        }
+        return Optional.empty();
+    }
+
+
+    /**
+     * Gets the tenant a request names: the token claim with auth enabled, otherwise the query parameter.
+     *
+     * @param request the HTTP request
+     * @param claims  the verified token claims (null without auth)
+     * @return the named tenant, or empty if none (the request then belongs to the default tenant)
+     */
+    public Optional<String> requestedTenant(HttpRequest request, Map<?, ?> claims) {
+        AppConfig.TenantConfig config = appConfig.getTenant();
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+
+        Object tenant;
+        if (appConfig.getAuth().isEnabled()) {
+            tenant = claims != null ? claims.get(config.getClaim()) : null;
+        } else {
+            tenant = queryParameter(request, config.getParameter());
+        }
+
+        if (tenant == null || tenant.toString().isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.of(tenant.toString().trim());
+    }
+
+
+    /**
+     * Resolves the tenant of a request, falling back to the default tenant.
+     *
+     * @param request the HTTP request
+     * @param claims  the verified token claims (null without auth)
+     * @return the tenant
+     */
+    public String resolveTenant(HttpRequest request, Map<?, ?> claims) {
+        return requestedTenant(request, claims).orElse(appConfig.getTenant().getDefaultTenant());
+    }
+
+
+    /**
+     * Reads a query parameter of a request.
+     */
+    private static String queryParameter(HttpRequest request, String name) {
+        return UriComponentsBuilder.fromUri(request.getURI())
+                .build()
+                .getQueryParams()
+                .getFirst(name);
+    }
+}
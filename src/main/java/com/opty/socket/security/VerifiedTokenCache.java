@@ -0,0 +1,97 @@
+/**
+ * Verified token cache.
+ */
+
+package com.opty.socket.security;
+
+
+/**
+ * IMPORTS
+ */
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Bounded cache of verified JWT claims keyed by token hash (thread-safe).
+ *
+ * Entries expire at the token's {@code exp}. When full, expired entries are purged first,
+ * then arbitrary entries are evicted (a cache miss only costs one signature verification).
+ */
+class VerifiedTokenCache {
+
+    // --- ATTRIBUTES ---
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+
+    VerifiedTokenCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+
+    /**
+     * Gets cached claims if present and not expired.
+     */
+    Map<String, Object> get(String tokenHash, long nowMillis) {
+        Entry entry = entries.get(tokenHash);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis() <= nowMillis) {
+            entries.remove(tokenHash, entry);
+            return null;
+        }
+        return entry.claims();
+    }
+
+
+    /**
+     * Caches verified claims until the given expiry.
+     *
+     * @param claims read-only claims, kept and returned as is (values may be null)
+     */
+    void put(String tokenHash, Map<String, Object> claims, long expiresAtMillis, long nowMillis) {
+        if (expiresAtMillis <= nowMillis) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            evict(nowMillis);
+        }
+        entries.put(tokenHash, new Entry(claims, expiresAtMillis));
+    }
+
+
+    /**
+     * Gets the number of cached entries.
+     */
+    int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * Purges expired entries, then evicts until below capacity.
+     */
+    private void evict(long nowMillis) {
+        entries.values().removeIf(entry -> entry.expiresAtMillis() <= nowMillis);
+
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entries.size() >= maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+
+    /**
+     * Cached claims with expiry.
+     */
+    private record Entry(Map<String, Object> claims, long expiresAtMillis) {
+    }
+}
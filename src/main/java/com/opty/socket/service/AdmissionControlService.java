@@ -0,0 +1,240 @@
+/**
+ * Connection admission control.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.ratelimit.CoarseClock;
+import com.opty.socket.ratelimit.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Admits new WebSocket connections at handshake time (thread-safe, lock-free).
+ *
+ * Holds one permit per connection up to {@code opty.socket.max-connections} and limits the
+ * global handshake rate, so doomed upgrades are refused before any WebSocket resources exist.
+ * With tenants enabled, a second permit is held against the connection's tenant quota, so one
+ * tenant's spike cannot take every connection.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AdmissionControlService {
+
+    // --- ATTRIBUTES ---
+    public static final String PERMIT_ATTRIBUTE = "opty.admissionPermit";
+    public static final String TENANT_PERMIT_ATTRIBUTE = "opty.tenantPermit";
+    private final AppConfig appConfig;
+    private final CoarseClock clock;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger permitsInUse = new AtomicInteger();
+    private final Map<String, TenantPermits> tenantPermits = new HashMap<>();
+    private TokenBucket handshakeBucket;
+
+
+    /**
+     * Outcome of an admission attempt.
+     *
+     * @param admitted          true if the connection may proceed
+     * @param reason            rejection reason, null if admitted
+     * @param retryAfterSeconds suggested Retry-After for rejected handshakes
+     */
+    public record Admission(boolean admitted, String reason, long retryAfterSeconds) {
+
+        static Admission granted() {
+            return new Admission(true, null, 0);
+        }
+    }
+
+
+    /**
+     * Initializes the handshake rate bucket and gauges.
+     */
+    @PostConstruct
+    public void init() {
+        AppConfig.AdmissionConfig config = appConfig.getAdmission();
+        handshakeBucket = new TokenBucket(config.getHandshakesPerSecond(), config.getHandshakeBurst());
+        Gauge.builder("opty.admission.permits.used", permitsInUse, AtomicInteger::get)
+                .description("Connection permits currently held")
+                .register(meterRegistry);
+
+        // Known tenants are fixed at startup (bounded metric tags)
+        AppConfig.TenantConfig tenantConfig = appConfig.getTenant();
+        registerTenant(tenantConfig.getDefaultTenant(), tenantConfig.getDefaultMaxConnections());
+        tenantConfig.getTenants().forEach((tenant, limits) -> registerTenant(tenant,
+                limits.getMaxConnections() > 0 ? limits.getMaxConnections() : tenantConfig.getDefaultMaxConnections()));
+    }
+
+
+    /**
+     * Tries to admit a handshake, acquiring a connection permit stored in the handshake attributes.
+     *
+     * @param attributes the handshake attributes (become the WebSocket session attributes)
+     * @return the admission outcome
+     */
+    public Admission tryAdmit(Map<String, Object> attributes) {
+
+        // Global handshake rate
+        long now = clock.nanoTime();
+        if (!handshakeBucket.tryAcquire(now)) {
+            long waitSeconds = Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(handshakeBucket.nanosUntilAvailable(now)) + 1);
+            return reject("handshake-rate", waitSeconds);
+        }
+
+        // Connection permit
+        if (!tryAcquirePermit()) {
+            return reject("max-connections", appConfig.getAdmission().getRetryAfterSeconds());
+        }
+
+        attributes.put(PERMIT_ATTRIBUTE, Boolean.TRUE);
+        return Admission.granted();
+    }
+
+
+    /**
+     * Checks if a tenant is known (configured, or the default tenant).
+     *
+     * @param tenant the tenant name
+     */
+    public boolean isKnownTenant(String tenant) {
+        return tenantPermits.containsKey(tenant);
+    }
+
+
+    /**
+     * Tries to admit a handshake against its tenant's connection quota, storing the tenant permit
+     * in the handshake attributes.
+     *
+     * @param tenant     the resolved tenant
+     * @param attributes the handshake attributes
+     * @return the admission outcome
+     */
+    public Admission tryAdmitTenant(String tenant, Map<String, Object> attributes) {
+        TenantPermits permits = tenantPermits.get(tenant);
+        if (permits == null) {
+            return reject("unknown-tenant", 0);
+        }
+        if (!permits.tryAcquire()) {
+            permits.rejected.increment();
+            return reject("tenant-connections", appConfig.getAdmission().getRetryAfterSeconds());
+        }
+
+        attributes.put(TENANT_PERMIT_ATTRIBUTE, tenant);
+        return Admission.granted();
+    }
+
+
+    /**
+     * Releases the connection and tenant permits held in the given attributes, if any (idempotent).
+     *
+     * @param attributes the handshake or WebSocket session attributes
+     */
+    public void release(Map<String, Object> attributes) {
+        if (attributes.remove(PERMIT_ATTRIBUTE) != null) {
+            permitsInUse.decrementAndGet();
+        }
+        if (attributes.remove(TENANT_PERMIT_ATTRIBUTE) instanceof String tenant) {
+            TenantPermits permits = tenantPermits.get(tenant);
+            if (permits != null) {
+                permits.inUse.decrementAndGet();
+            }
+        }
+    }
+
+
+    /**
+     * Gets the number of permits currently held.
+     */
+    public int getPermitsInUse() {
+        return permitsInUse.get();
+    }
+
+
+    /**
+     * Acquires a permit if below the configured maximum.
+     */
+    private boolean tryAcquirePermit() {
+        int max = appConfig.getMaxConnections();
+        while (true) {
+            int current = permitsInUse.get();
+            if (current >= max) {
+                return false;
+            }
+            if (permitsInUse.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Creates the permit counter and metrics of a tenant.
+     */
+    private void registerTenant(String tenant, int maxConnections) {
+        TenantPermits permits = new TenantPermits(maxConnections,
+                meterRegistry.counter("opty.tenant.rejected", "tenant", tenant));
+        tenantPermits.put(tenant, permits);
+        Gauge.builder("opty.tenant.connections", permits.inUse, AtomicInteger::get)
+                .description("Connections currently held by a tenant")
+                .tag("tenant", tenant)
+                .register(meterRegistry);
+    }
+
+
+    /**
+     * Records a rejection.
+     */
+    private Admission reject(String reason, long retryAfterSeconds) {
+        meterRegistry.counter("opty.admission.rejected", "reason", reason).increment();
+        log.debug("Handshake rejected: reason={}, permitsInUse={}", reason, permitsInUse.get());
+        return new Admission(false, reason, retryAfterSeconds);
+    }
+
+
+    /**
+     * Connection quota of one tenant (0 = unlimited).
+     */
+    private static final class TenantPermits {
+        private final int max;
+        private final Counter rejected;
+        private final AtomicInteger inUse = new AtomicInteger();
+
+        private TenantPermits(int max, Counter rejected) {
+            this.max = max;
+            this.rejected = rejected;
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                int current = inUse.get();
+                if (max > 0 && current >= max) {
+                    return false;
+                }
+                if (inUse.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
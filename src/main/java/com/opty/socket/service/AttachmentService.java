@@ -0,0 +1,519 @@
+/**
+ * Binary attachment transfer service.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.ConnectionInfo;
+import com.opty.socket.model.Message;
+import com.opty.socket.model.MessageType;
+import com.opty.socket.model.Session;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Receives attachments as chunked binary frames, spools them to disk and routes a reference to the session.
+ *
+ * A sender announces an upload with an {@code ATTACHMENT} message (payload {@code name}, {@code contentType},
+ * {@code size}) and gets back an {@code uploadId}. It then sends binary messages that each start with the
+ * upload ID (8 bytes, big-endian) followed by file bytes, in order. The bytes are written straight to a
+ * {@link FileChannel}; nothing is base64-encoded, parsed or stored in MongoDB. Once the declared size is
+ * written, the other members of the session receive an {@code ATTACHMENT} message with the attachment ID and
+ * its download URL (served by {@code AttachmentController}, with range requests).
+ *
+ * Each session may hold at most {@code session-quota-bytes} of attachments; the declared size is reserved when
+ * an upload starts. Uploads are aborted when their connection closes, or when no bytes arrive for
+ * {@code upload-idle-timeout-seconds}. Attachments are deleted after
+ * {@code retention-minutes}, or once their session has ended. The index is kept in memory, so the spool
+ * directory is emptied on startup.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AttachmentService {
+
+    // --- ATTRIBUTES ---
+    private static final String FRAME_ATTRIBUTE = "opty.attachmentFrame";
+    private static final Frame DISCARDING = new Frame();
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private final AppConfig appConfig;
+    private final SessionManager sessionManager;
+    private final MessageRouter messageRouter;
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong nextUploadId = new AtomicLong();
+    private final Map<Long, Upload> uploads = new ConcurrentHashMap<>();
+    private final Map<String, Attachment> attachments = new ConcurrentHashMap<>();
+    private final Map<Long, Long> sessionUsage = new HashMap<>();
+    private volatile Path directory;
+
+
+    /**
+     * A completely received attachment.
+     *
+     * @param attachmentId    the attachment ID (random, also the download capability)
+     * @param sessionId       the internal ID of the session it was sent in
+     * @param name            the file name given by the sender
+     * @param contentType     the media type given by the sender
+     * @param size            the size in bytes
+     * @param path            the spooled file (real path)
+     * @param createdAtMillis when the upload completed
+     */
+    public record Attachment(String attachmentId, long sessionId, String name, String contentType, long size,
+                             Path path, long createdAtMillis) {
+    }
+
+
+    /**
+     * Creates the spool directory and deletes the files left over by a previous process.
+     *
+     * Attachments are disabled (uploads answered with an error) if the directory is not usable.
+     */
+    @PostConstruct
+    public void init() {
+        AppConfig.AttachmentConfig config = appConfig.getAttachment();
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        try {
+            Path path = Files.createDirectories(Path.of(config.getDirectory())).toRealPath();
+            int deleted = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path, Files::isRegularFile)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                    deleted++;
+                }
+            }
+            directory = path;
+            log.info("Attachment spool directory ready: path={}, leftoverFilesDeleted={}", path, deleted);
+        } catch (IOException e) {
+            log.warn("Attachment spool directory unusable, attachments disabled: path={}, error={}",
+                    config.getDirectory(), e.getMessage());
+        }
+    }
+
+
+    /**
+     * Starts an upload announced by an {@code ATTACHMENT} message and answers the sender with its upload ID.
+     *
+     * @param connectionId the sender's connection ID
+     * @param message      the announcement (payload {@code name}, {@code contentType}, {@code size})
+     */
+    public void begin(long connectionId, Message message) {
+        AppConfig.AttachmentConfig config = appConfig.getAttachment();
+        if (!config.isEnabled() || directory == null) {
+            messageRouter.sendErrorToConnection(connectionId, message.sessionId(), "Attachments are disabled");
+            return;
+        }
+
+        Session session = sessionManager.getSessionForConnection(connectionId, message.sessionId()).orElse(null);
+        if (session == null) {
+            messageRouter.sendErrorToConnection(connectionId, message.sessionId(), "Not in an active session");
+            return;
+        }
+
+        // Validate the announced file
+        Map<String, Object> payload = message.payload() != null ? message.payload() : Map.of();
+        String name = payload.get("name") instanceof String value ? value.strip() : "";
+        long size = payload.get("size") instanceof Number value ? value.longValue() : -1;
+        String contentType = payload.get("contentType") instanceof String value
+                ? value
+                : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        if (name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+            messageRouter.sendErrorToConnection(connectionId, session.sessionId(),
+                    "Attachment name is required (at most " + MAX_NAME_LENGTH + " characters)");
+            return;
+        }
+        if (size <= 0 || size > config.getMaxSize()) {
+            messageRouter.sendErrorToConnection(connectionId, session.sessionId(),
+                    "Attachment size must be between 1 and " + config.getMaxSize() + " bytes");
+            return;
+        }
+        try {
+            contentType = MediaType.parseMediaType(contentType).toString();
+        } catch (InvalidMediaTypeException e) {
+            messageRouter.sendErrorToConnection(connectionId, session.sessionId(), "Invalid attachment content type");
+            return;
+        }
+
+        long inProgress = uploads.values().stream().filter(upload -> upload.connectionId == connectionId).count();
+        if (inProgress >= config.getMaxUploadsPerConnection()) {
+            messageRouter.sendErrorToConnection(connectionId, session.sessionId(), "Too many uploads in progress");
+            return;
+        }
+        if (!reserve(session.id(), size)) {
+            messageRouter.sendErrorToConnection(connectionId, session.sessionId(),
+                    "Attachment quota exceeded for session");
+            return;
+        }
+
+        // Spool to a new file named after the attachment ID
+        String attachmentId = Long.toHexString(RANDOM.nextLong() | Long.MIN_VALUE)
+                + Long.toHexString(RANDOM.nextLong() | Long.MIN_VALUE);
+        Path path = directory.resolve(attachmentId);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            release(session.id(), size);
+            log.error("Failed to create attachment file: path={}, error={}", path, e.getMessage(), e);
+            messageRouter.sendErrorToConnection(connectionId, session.sessionId(), "Failed to store attachment");
+            return;
+        }
+
+        long uploadId = nextUploadId.incrementAndGet();
+        uploads.put(uploadId, new Upload(uploadId, connectionId, session.id(), session.sessionId(),
+                attachmentId, name, contentType, size, path, channel));
+        sendToConnection(connectionId, new Message(session.sessionId(), "SERVER", MessageType.ATTACHMENT,
+                Map.of("status", "READY", "uploadId", uploadId)));
+
+        log.debug("Attachment upload started: connectionId={}, sessionId={}, uploadId={}, size={}",
+                connectionId, session.sessionId(), uploadId, size);
+    }
+
+
+    /**
+     * Checks if the next binary chunk starts a new binary message (rate limits apply on its first chunk).
+     */
+    public boolean isMessageStart(WebSocketSession session) {
+        return !session.getAttributes().containsKey(FRAME_ATTRIBUTE);
+    }
+
+
+    /**
+     * Writes a chunk of a binary message to its upload.
+     *
+     * The container delivers a binary message in chunks of at most its binary buffer size; the upload ID
+     * is read from the first bytes of the message, even if they are split across chunks. Chunks of one
+     * connection arrive one at a time, so the state kept per connection needs no locking.
+     *
+     * @param session      the raw WebSocket session
+     * @param connectionId the sender's connection ID
+     * @param chunk        the binary chunk, {@link BinaryMessage#isLast()} on the last chunk of the message
+     */
+    public void write(WebSocketSession session, long connectionId, BinaryMessage chunk) {
+        Frame frame = (Frame) session.getAttributes().get(FRAME_ATTRIBUTE);
+        if (frame == null) {
+            frame = new Frame();
+            session.getAttributes().put(FRAME_ATTRIBUTE, frame);
+        }
+
+        ByteBuffer data = chunk.getPayload();
+        if (frame != DISCARDING && frame.upload == null) {
+            while (frame.header.hasRemaining() && data.hasRemaining()) {
+                frame.header.put(data.get());
+            }
+            if (!frame.header.hasRemaining()) {
+                long uploadId = frame.header.getLong(0);
+                Upload upload = uploads.get(uploadId);
+                if (upload == null || upload.connectionId != connectionId) {
+                    messageRouter.sendErrorToConnection(connectionId, "Unknown upload: " + uploadId);
+                    discardRest(session, chunk);
+                    return;
+                }
+                frame.upload = upload;
+            } else if (chunk.isLast()) {
+                messageRouter.sendErrorToConnection(connectionId, "Attachment frame must start with the upload ID");
+            }
+        }
+
+        if (frame.upload != null && data.hasRemaining()) {
+            append(frame.upload, data);
+        }
+        if (chunk.isLast()) {
+            session.getAttributes().remove(FRAME_ATTRIBUTE);
+        }
+    }
+
+
+    /**
+     * Drops a binary chunk and the remaining chunks of its message (e.g. a rate-limited message).
+     */
+    public void discardRest(WebSocketSession session, BinaryMessage chunk) {
+        if (chunk.isLast()) {
+            session.getAttributes().remove(FRAME_ATTRIBUTE);
+        } else {
+            session.getAttributes().put(FRAME_ATTRIBUTE, DISCARDING);
+        }
+    }
+
+
+    /**
+     * Aborts the uploads in progress of a closed connection.
+     *
+     * @param connectionId the connection ID
+     */
+    public void abortUploads(long connectionId) {
+        for (Upload upload : uploads.values()) {
+            if (upload.connectionId == connectionId) {
+                abort(upload);
+            }
+        }
+    }
+
+
+    /**
+     * Gets a completely received attachment.
+     *
+     * @param attachmentId the attachment ID
+     * @return the attachment, if still held
+     */
+    public Optional<Attachment> getAttachment(String attachmentId) {
+        return Optional.ofNullable(attachments.get(attachmentId));
+    }
+
+
+    /**
+     * Deletes attachments past their retention or whose session has ended, releasing their quota.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void removeExpired() {
+        long cutoff = System.currentTimeMillis()
+                - TimeUnit.MINUTES.toMillis(appConfig.getAttachment().getRetentionMinutes());
+        int removed = 0;
+        for (Attachment attachment : attachments.values()) {
+            if (attachment.createdAtMillis() < cutoff || sessionManager.getSession(attachment.sessionId()).isEmpty()) {
+                if (attachments.remove(attachment.attachmentId(), attachment)) {
+                    deleteQuietly(attachment.path());
+                    release(attachment.sessionId(), attachment.size());
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            log.debug("Removed {} expired attachments", removed);
+        }
+    }
+
+
+    /**
+     * Aborts uploads that received no bytes within the idle timeout, releasing their quota and file.
+     */
+    @Scheduled(fixedDelay = 10_000)
+    public void abortIdleUploads() {
+        long cutoff = System.currentTimeMillis()
+                - TimeUnit.SECONDS.toMillis(appConfig.getAttachment().getUploadIdleTimeoutSeconds());
+        for (Upload upload : uploads.values()) {
+            if (upload.lastActivityMillis < cutoff && abort(upload)) {
+                messageRouter.sendErrorToConnection(upload.connectionId, upload.externalSessionId, "Upload timed out");
+            }
+        }
+    }
+
+
+    /**
+     * Writes bytes to an upload; completes it once the declared size is reached.
+     */
+    private void append(Upload upload, ByteBuffer data) {
+        String error = null;
+        boolean complete = false;
+        synchronized (upload) {
+            if (!upload.channel.isOpen()) {
+                // Aborted meanwhile
+                return;
+            }
+            upload.lastActivityMillis = System.currentTimeMillis();
+            if (data.remaining() > upload.size - upload.written) {
+                error = "Attachment exceeds its declared size";
+            } else {
+                try {
+                    while (data.hasRemaining()) {
+                        upload.written += upload.channel.write(data);
+                    }
+                    if (upload.written == upload.size) {
+                        upload.channel.close();
+                        complete = true;
+                    }
+                } catch (IOException e) {
+                    log.error("Failed to write attachment: uploadId={}, error={}", upload.uploadId, e.getMessage(), e);
+                    error = "Failed to store attachment";
+                }
+            }
+        }
+
+        if (error != null) {
+            abort(upload);
+            messageRouter.sendErrorToConnection(upload.connectionId, upload.externalSessionId, error);
+        } else if (complete) {
+            complete(upload);
+        }
+    }
+
+
+    /**
+     * Registers a completed upload, confirms it to the sender and routes its reference to the session.
+     */
+    private void complete(Upload upload) {
+        uploads.remove(upload.uploadId);
+        Attachment attachment = new Attachment(upload.attachmentId, upload.sessionId, upload.name,
+                upload.contentType, upload.size, upload.path, System.currentTimeMillis());
+        attachments.put(attachment.attachmentId(), attachment);
+        meterRegistry.summary("opty.attachment.size").record(attachment.size());
+
+        String url = "/api/attachments/" + attachment.attachmentId();
+        sendToConnection(upload.connectionId, new Message(upload.externalSessionId, "SERVER", MessageType.ATTACHMENT,
+                Map.of("status", "COMPLETE", "uploadId", upload.uploadId,
+                        "attachmentId", attachment.attachmentId(), "url", url)));
+
+        // The reference goes through normal routing: ordered, sequenced and held until acknowledged
+        String from = sessionManager.getConnection(upload.connectionId)
+                .map(ConnectionInfo::connectionType)
+                .orElse(null);
+        messageRouter.routeMessage(upload.connectionId, new Message(upload.externalSessionId, from,
+                MessageType.ATTACHMENT, Map.of(
+                        "attachmentId", attachment.attachmentId(),
+                        "name", attachment.name(),
+                        "contentType", attachment.contentType(),
+                        "size", attachment.size(),
+                        "url", url
+                )));
+
+        log.debug("Attachment upload completed: sessionId={}, attachmentId={}, size={}",
+                upload.externalSessionId, attachment.attachmentId(), attachment.size());
+    }
+
+
+    /**
+     * Closes and deletes an upload in progress, releasing its quota.
+     *
+     * @return false if the upload was already completed or aborted
+     */
+    private boolean abort(Upload upload) {
+        if (!uploads.remove(upload.uploadId, upload)) {
+            return false;
+        }
+        synchronized (upload) {
+            try {
+                upload.channel.close();
+            } catch (IOException e) {
+                log.debug("Failed to close attachment file: uploadId={}, error={}", upload.uploadId, e.getMessage());
+            }
+        }
+        deleteQuietly(upload.path);
+        release(upload.sessionId, upload.size);
+        log.debug("Attachment upload aborted: uploadId={}, written={}, size={}",
+                upload.uploadId, upload.written, upload.size);
+        return true;
+    }
+
+
+    /**
+     * Reserves attachment bytes against a session's quota.
+     *
+     * @return false if the quota would be exceeded
+     */
+    private synchronized boolean reserve(long sessionId, long bytes) {
+        long used = sessionUsage.getOrDefault(sessionId, 0L);
+        if (used + bytes > appConfig.getAttachment().getSessionQuotaBytes()) {
+            return false;
+        }
+        sessionUsage.put(sessionId, used + bytes);
+        return true;
+    }
+
+
+    /**
+     * Releases attachment bytes reserved by a session.
+     */
+    private synchronized void release(long sessionId, long bytes) {
+        long used = sessionUsage.getOrDefault(sessionId, 0L) - bytes;
+        if (used > 0) {
+            sessionUsage.put(sessionId, used);
+        } else {
+            sessionUsage.remove(sessionId);
+        }
+    }
+
+
+    private void sendToConnection(long connectionId, Message message) {
+        sessionManager.getConnection(connectionId)
+                .ifPresent(conn -> messageRouter.sendMessage(conn.webSocketSession(), message));
+    }
+
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete attachment file: path={}, error={}", path, e.getMessage());
+        }
+    }
+
+
+    /**
+     * An upload in progress; written only by its connection, closed under its lock.
+     */
+    private static final class Upload {
+
+        private final long uploadId;
+        private final long connectionId;
+        private final long sessionId;
+        private final String externalSessionId;
+        private final String attachmentId;
+        private final String name;
+        private final String contentType;
+        private final long size;
+        private final Path path;
+        private final FileChannel channel;
+        private long written;
+        private volatile long lastActivityMillis = System.currentTimeMillis();
+
+        private Upload(long uploadId, long connectionId, long sessionId, String externalSessionId, String attachmentId,
+                       String name, String contentType, long size, Path path, FileChannel channel) {
+            this.uploadId = uploadId;
+            this.connectionId = connectionId;
+            this.sessionId = sessionId;
+            this.externalSessionId = externalSessionId;
+            this.attachmentId = attachmentId;
+            this.name = name;
+            this.contentType = contentType;
+            this.size = size;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+
+    /**
+     * Read state of a binary message: its upload ID header, then the upload it writes to.
+     */
+    private static final class Frame {
+
+        private final ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+        private Upload upload;
+    }
+}
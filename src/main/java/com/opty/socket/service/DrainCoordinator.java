@@ -0,0 +1,227 @@
+/**
+ * Graceful shutdown drain coordinator.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.ConnectionInfo;
+import com.opty.socket.model.Message;
+import com.opty.socket.model.MessageType;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Drains all connections at shutdown, in parallel, before the web server stops.
+ *
+ * Draining stops admissions and suppresses per-connection disconnect notices and queue broadcasts,
+ * since every peer is leaving too. Connections are split into batches; each batch gets one encoded
+ * {@code SERVER_RESTARTING} frame and is closed with status 1012 (service restart) on a pool of drain
+ * threads. Message deliveries still queued on session lanes and saves in flight are then waited for,
+ * so nothing accepted before shutdown is lost. Runs after the session snapshot and within
+ * {@code opty.socket.drain.timeout-millis}; the total time is recorded in {@code opty.drain.duration}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DrainCoordinator implements SmartLifecycle {
+
+    // --- ATTRIBUTES ---
+    private static final long FLUSH_POLL_MILLIS = 5;
+    private final AppConfig appConfig;
+    private final SessionManager sessionManager;
+    private final MessageRouter messageRouter;
+    private final SessionLanes sessionLanes;
+    private final MessageStorageService messageStorageService;
+    private final MeterRegistry meterRegistry;
+    private volatile boolean running;
+    private volatile boolean draining;
+
+
+    /**
+     * Checks if the server is draining (shutting down): no admissions, notices or queue broadcasts.
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+
+    /**
+     * Drains connections and flushes persistence; blocks until done or the drain timeout expires.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (appConfig.getDrain().isEnabled()) {
+            drain();
+        }
+    }
+
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+
+    /**
+     * Stops right after the session snapshot is written and before the web server shuts down.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 1;
+    }
+
+
+    /**
+     * Notifies and closes all connections in parallel batches, then waits for pending persistence.
+     */
+    private void drain() {
+        AppConfig.DrainConfig config = appConfig.getDrain();
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(config.getTimeoutMillis());
+        draining = true;
+
+        // Snapshot the open connections into batches
+        List<List<WebSocketSession>> batches = new ArrayList<>();
+        List<WebSocketSession> batch = new ArrayList<>(config.getBatchSize());
+        for (int slot = 0; slot < sessionManager.getConnectionSlotCount(); slot++) {
+            ConnectionInfo conn = sessionManager.getConnectionAtSlot(slot);
+            if (conn == null) {
+                continue;
+            }
+            batch.add(conn.webSocketSession());
+            if (batch.size() == config.getBatchSize()) {
+                batches.add(batch);
+                batch = new ArrayList<>(config.getBatchSize());
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        int connections = batches.stream().mapToInt(List::size).sum();
+        log.info("Draining connections: connections={}, batches={}", connections, batches.size());
+
+        // Notify and close batches in parallel
+        AtomicInteger closed = new AtomicInteger();
+        Message restarting = restartingMessage(config);
+        int threads = config.getThreads() > 0 ? config.getThreads() : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, batches.size())), runnable -> {
+            Thread thread = new Thread(runnable, "opty-drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (List<WebSocketSession> sessions : batches) {
+            pool.execute(() -> closed.addAndGet(closeBatch(sessions, restarting)));
+        }
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                log.warn("Drain timed out closing connections: closed={}, connections={}", closed.get(), connections);
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        long closeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        // Wait for deliveries still queued on session lanes and saves in flight
+        boolean flushed = awaitPersistence(deadlineNanos);
+
+        long totalNanos = System.nanoTime() - startNanos;
+        meterRegistry.timer("opty.drain.duration").record(totalNanos, TimeUnit.NANOSECONDS);
+        log.info("Drain completed: connections={}, closed={}, closeMillis={}, totalMillis={}, persistenceFlushed={}",
+                connections, closed.get(), closeMillis, TimeUnit.NANOSECONDS.toMillis(totalNanos), flushed);
+    }
+
+
+    /**
+     * Sends the restart notice to a batch (encoded once) and closes every connection in it.
+     *
+     * @return the number of connections closed
+     */
+    private int closeBatch(List<WebSocketSession> sessions, Message restarting) {
+        messageRouter.sendToAll(sessions, restarting);
+
+        int closed = 0;
+        for (WebSocketSession session : sessions) {
+            try {
+                session.close(CloseStatus.SERVICE_RESTARTED);
+                closed++;
+            } catch (Exception e) {
+                log.debug("Failed to close connection while draining: externalId={}, error={}",
+                        session.getId(), e.getMessage());
+            }
+        }
+        return closed;
+    }
+
+
+    /**
+     * Waits until session lanes are empty and no save is in flight.
+     *
+     * @return true if flushed before the deadline
+     */
+    private boolean awaitPersistence(long deadlineNanos) {
+        while (sessionLanes.getQueuedTasks() > 0 || messageStorageService.getInFlightSaves() > 0) {
+            if (System.nanoTime() >= deadlineNanos) {
+                log.warn("Drain timed out flushing persistence: queuedDeliveries={}, savesInFlight={}",
+                        sessionLanes.getQueuedTasks(), messageStorageService.getInFlightSaves());
+                return false;
+            }
+            try {
+                Thread.sleep(FLUSH_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Builds the restart notice, telling clients when to reconnect and whether sessions can be resumed.
+     */
+    private Message restartingMessage(AppConfig.DrainConfig config) {
+        return new Message(
+                null,
+                "SERVER",
+                MessageType.SERVER_RESTARTING,
+                Map.of(
+                        "message", "Server restarting",
+                        "reconnectAfterSeconds", config.getReconnectAfterSeconds(),
+                        "resumable", appConfig.getSnapshot().isEnabled()
+                )
+        );
+    }
+}
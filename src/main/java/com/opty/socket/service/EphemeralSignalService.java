@@ -0,0 +1,178 @@
+/**
+ * Ephemeral signal service.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.ConnectionInfo;
+import com.opty.socket.model.Message;
+import com.opty.socket.model.MessageType;
+import com.opty.socket.model.Session;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Relays typing indicators, presence and read receipts ({@code TYPING}, {@code PRESENCE}, {@code READ}).
+ *
+ * Signals are UI state, not conversation: they are never persisted, sequenced or held for offline
+ * recipients. The signals of one sender and type in a session are coalesced: the first one opens a window
+ * of {@code opty.socket.ephemeral.coalesce-window-millis}, later ones replace it, and only the latest is
+ * sent when the window closes. Recipients with a backlog of outbound frames are skipped, and the overload
+ * controller sheds signals first. As signals do not go through the session lane, they may overtake or
+ * trail chat messages sent at the same time.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EphemeralSignalService {
+
+    // --- ATTRIBUTES ---
+    private final AppConfig appConfig;
+    private final SessionManager sessionManager;
+    private final MessageRouter messageRouter;
+    private final MeterRegistry meterRegistry;
+    private final Map<SignalKey, Message> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private Counter sent;
+    private Counter coalesced;
+    private Counter dropped;
+
+
+    /**
+     * Coalescing key: one pending signal per session, sender and type.
+     */
+    private record SignalKey(long sessionId, long connectionId, MessageType type) {
+    }
+
+
+    /**
+     * Starts the flush scheduler.
+     */
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "opty-signal-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sent = meterRegistry.counter("opty.ephemeral.signals", "result", "sent");
+        coalesced = meterRegistry.counter("opty.ephemeral.signals", "result", "coalesced");
+        dropped = meterRegistry.counter("opty.ephemeral.signals", "result", "dropped");
+    }
+
+
+    /**
+     * Stops the flush scheduler; pending signals are dropped.
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Relays a signal to the other members of the sender's session, coalesced within the window.
+     *
+     * The payload is passed through as is; a {@code READ} keeps its {@code seq} (the last message read).
+     *
+     * @param senderConnectionId the sender's connection ID
+     * @param message            the signal (addressed by {@code sessionId} for multiplexed supervisors)
+     */
+    public void signal(long senderConnectionId, Message message) {
+        Session session = sessionManager.getSessionForConnection(senderConnectionId, message.sessionId()).orElse(null);
+        if (session == null) {
+            messageRouter.sendErrorToConnection(senderConnectionId, message.sessionId(), "Not in an active session");
+            return;
+        }
+
+        String from = sessionManager.getConnection(senderConnectionId)
+                .map(ConnectionInfo::connectionType)
+                .orElse(null);
+        Message signal = new Message(session.sessionId(), from, message.type(), message.payload(), Instant.now(),
+                message.type() == MessageType.READ ? message.seq() : null);
+        SignalKey key = new SignalKey(session.id(), senderConnectionId, message.type());
+
+        long windowMillis = appConfig.getEphemeral().getCoalesceWindowMillis();
+        if (windowMillis == 0) {
+            send(key, signal);
+            return;
+        }
+
+        // The first signal of a window schedules the flush; later ones only replace it
+        if (pending.put(key, signal) != null) {
+            coalesced.increment();
+            return;
+        }
+        try {
+            scheduler.schedule(() -> flush(key), windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+        }
+    }
+
+
+    /**
+     * Sends the latest signal of a key once its window closes (flush thread).
+     */
+    private void flush(SignalKey key) {
+        Message latest = pending.remove(key);
+        if (latest != null) {
+            send(key, latest);
+        }
+    }
+
+
+    /**
+     * Sends a signal to the current members of its session other than the sender.
+     */
+    private void send(SignalKey key, Message signal) {
+        Session session = sessionManager.getSession(key.sessionId()).orElse(null);
+        if (session == null || !session.isMember(key.connectionId())) {
+            return;
+        }
+
+        List<WebSocketSession> recipients = new ArrayList<>();
+        for (long memberId : session.memberConnectionIds()) {
+            if (memberId != key.connectionId()) {
+                sessionManager.getConnection(memberId).ifPresent(conn -> recipients.add(conn.webSocketSession()));
+            }
+        }
+        if (recipients.isEmpty()) {
+            return;
+        }
+
+        int delivered = messageRouter.sendEphemeral(recipients, signal);
+        sent.increment(delivered);
+        dropped.increment(recipients.size() - delivered);
+        log.debug("Signal relayed: sessionId={}, type={}, recipients={}, skipped={}",
+                session.sessionId(), signal.type(), delivered, recipients.size() - delivered);
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * Lifecycle event journal.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.Session;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Records connection and session lifecycle events in a fixed-size in-memory ring (thread-safe, lock-free).
+ *
+ * An event is a few primitives (time, type, connection ID, external session ID reference, one value) written
+ * into parallel arrays; nothing is formatted on the hot path. Writers claim a sequence number with one atomic
+ * increment and publish their slot with a release store; readers copy a slot and keep it only if its
+ * sequence is unchanged afterwards, so an entry overwritten meanwhile is skipped instead of read torn.
+ * Each category can be sampled (1 in N) with {@code opty.socket.journal.sample-rates}; totals per event
+ * are counted before sampling. Recent events are served by the {@code events} actuator endpoint and can
+ * be drained periodically to the {@code opty.events} logger as key=value lines, on a thread of their own
+ * and at most {@code log-max-events} lines per drain.
+ */
+@Slf4j
+@Service
+public class EventJournal {
+
+    // --- ATTRIBUTES ---
+    private static final Logger EVENT_LOG = LoggerFactory.getLogger("opty.events");
+    private static final Event[] EVENTS = Event.values();
+    private static final long WRITING = -1;
+    private final AppConfig appConfig;
+    private final boolean enabled;
+    private final int capacity;
+    private final int mask;
+    private final int[] sampleRates = new int[Category.values().length];
+    private final LongAdder[] totals = new LongAdder[EVENTS.length];
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLongArray published;
+    private final long[] times;
+    private final byte[] types;
+    private final long[] connectionIds;
+    private final String[] sessionIds;
+    private final long[] values;
+    private long drained;
+    private ScheduledExecutorService drainer;
+
+
+    /**
+     * Event categories, sampled independently.
+     */
+    public enum Category {
+        CONNECTION,
+        SESSION,
+        PAIRING,
+        QUEUE
+    }
+
+
+    /**
+     * Journaled events; the comment tells what the event's value holds.
+     */
+    public enum Event {
+        CONNECTION_REGISTERED(Category.CONNECTION),   // connections held
+        CONNECTION_CLOSED(Category.CONNECTION),       // close status code
+        CONNECTION_REMOVED(Category.CONNECTION),      // connections held
+        SESSION_CREATED(Category.SESSION),            // sessions held
+        SESSION_RESTORED(Category.SESSION),           // sessions held
+        SESSION_REMOVED(Category.SESSION),            // sessions held
+        SESSIONS_EXPIRED(Category.SESSION),           // sessions expired
+        SUPERVISOR_PAIRED(Category.PAIRING),          // sessions held by the supervisor
+        SUPERVISOR_UNPAIRED(Category.PAIRING),        // 0
+        OBSERVER_JOINED(Category.PAIRING),            // session members
+        OBSERVER_LEFT(Category.PAIRING),              // 0
+        QUEUE_LISTENER_ADDED(Category.QUEUE),         // queue listeners
+        QUEUE_LISTENER_REMOVED(Category.QUEUE),       // queue listeners
+        QUEUE_BROADCAST(Category.QUEUE);              // supervisors reached
+
+        private final Category category;
+
+        Event(Category category) {
+            this.category = category;
+        }
+
+        public Category getCategory() {
+            return category;
+        }
+    }
+
+
+    /**
+     * A journaled event as read back (connection ID and session ID are null when not applicable).
+     */
+    public record Entry(long seq, Instant time, Event event, Category category, Long connectionId,
+                        String sessionId, long value) {
+    }
+
+
+    /**
+     * Allocates the ring and resolves the sample rates per category.
+     */
+    public EventJournal(AppConfig appConfig) {
+        AppConfig.JournalConfig config = appConfig.getJournal();
+        this.appConfig = appConfig;
+        this.enabled = config.isEnabled();
+        this.capacity = Integer.highestOneBit(Math.max(1, config.getCapacity() - 1)) << 1;
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        this.times = new long[capacity];
+        this.types = new byte[capacity];
+        this.connectionIds = new long[capacity];
+        this.sessionIds = new String[capacity];
+        this.values = new long[capacity];
+
+        for (Category category : Category.values()) {
+            Integer rate = config.getSampleRates().get(category.name().toLowerCase(Locale.ROOT));
+            sampleRates[category.ordinal()] = rate != null ? Math.max(0, rate) : 1;
+        }
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new LongAdder();
+        }
+    }
+
+
+    /**
+     * Records an event, subject to its category's sampling.
+     *
+     * @param event        the event
+     * @param connectionId the connection concerned, or {@link Session#NO_CONNECTION}
+     * @param sessionId    the external session ID concerned, may be null
+     * @param value        the event's value (see {@link Event})
+     */
+    public void record(Event event, long connectionId, String sessionId, long value) {
+        if (!enabled) {
+            return;
+        }
+        totals[event.ordinal()].increment();
+        int rate = sampleRates[event.getCategory().ordinal()];
+        if (rate == 0 || (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0)) {
+            return;
+        }
+
+        long seq = next.getAndIncrement();
+        int slot = (int) (seq & mask);
+        published.set(slot, WRITING);
+        // A volatile store only orders earlier accesses: keep the field writes below from moving above the marker
+        VarHandle.storeStoreFence();
+        times[slot] = System.currentTimeMillis();
+        types[slot] = (byte) event.ordinal();
+        connectionIds[slot] = connectionId;
+        sessionIds[slot] = sessionId;
+        values[slot] = value;
+        published.setRelease(slot, seq + 1);
+    }
+
+
+    /**
+     * Gets the most recent events, oldest first.
+     *
+     * @param limit  the maximum number of events
+     * @param filter only events of this type, or null for all
+     * @return the events still held in the ring
+     */
+    public List<Entry> recent(int limit, Event filter) {
+        List<Entry> entries = new ArrayList<>(Math.min(limit, capacity));
+        long head = next.get();
+        for (long seq = head - 1; seq >= Math.max(0, head - capacity) && entries.size() < limit; seq--) {
+            Entry entry = read(seq);
+            if (entry != null && (filter == null || entry.event() == filter)) {
+                entries.add(entry);
+            }
+        }
+        Collections.reverse(entries);
+        return entries;
+    }
+
+
+    /**
+     * Gets the number of occurrences of each event since startup, sampled out or not.
+     */
+    public Map<Event, Long> getTotals() {
+        Map<Event, Long> counts = new EnumMap<>(Event.class);
+        for (Event event : EVENTS) {
+            counts.put(event, totals[event.ordinal()].sum());
+        }
+        return counts;
+    }
+
+
+    /**
+     * Gets the number of events written to the ring since startup.
+     */
+    public long getRecorded() {
+        return next.get();
+    }
+
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * Gets the sample rate (1 in N, 0 = off) per category.
+     */
+    public Map<Category, Integer> getSampleRates() {
+        Map<Category, Integer> rates = new EnumMap<>(Category.class);
+        for (Category category : Category.values()) {
+            rates.put(category, sampleRates[category.ordinal()]);
+        }
+        return rates;
+    }
+
+
+    /**
+     * Starts the drain thread when events are logged.
+     */
+    @PostConstruct
+    public void start() {
+        AppConfig.JournalConfig config = appConfig.getJournal();
+        if (!enabled || !config.isLogEnabled()) {
+            return;
+        }
+        drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "opty-journal-drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer.scheduleWithFixedDelay(this::drainQuietly, config.getLogIntervalMillis(),
+                config.getLogIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Stops the drain thread.
+     */
+    @PreDestroy
+    public void stop() {
+        if (drainer != null) {
+            drainer.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Writes up to {@code log-max-events} events recorded since the last drain to the {@code opty.events}
+     * logger (drain thread); the rest are written by the next drains.
+     *
+     * Events overwritten before they could be drained are counted and reported in one warning.
+     */
+    public void drainToLog() {
+        if (!enabled || !appConfig.getJournal().isLogEnabled()) {
+            return;
+        }
+
+        long head = next.get();
+        long from = Math.max(drained, head - capacity);
+        long until = Math.min(head, from + appConfig.getJournal().getLogMaxEvents());
+        long lost = from - drained;
+        long seq = from;
+        for (; seq < until; seq++) {
+            Entry entry = read(seq);
+            if (entry == null) {
+                // Still being written: resume from here next time; overwritten: skip
+                if (published.getAcquire((int) (seq & mask)) <= seq + 1) {
+                    break;
+                }
+                lost++;
+                continue;
+            }
+            EVENT_LOG.info("event={} seq={} time={} connectionId={} sessionId={} value={}",
+                    entry.event(), entry.seq(), entry.time(), entry.connectionId(), entry.sessionId(), entry.value());
+        }
+        drained = seq;
+
+        if (lost > 0) {
+            log.warn("Journal events overwritten before being logged: lost={}, capacity={}", lost, capacity);
+        }
+    }
+
+
+    /**
+     * Drains from the drain thread; a failed drain must not cancel the next ones.
+     */
+    private void drainQuietly() {
+        try {
+            drainToLog();
+        } catch (RuntimeException e) {
+            log.error("Journal drain failed: error={}", e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Reads the event with a sequence number, if it is still in the ring and completely written.
+     */
+    private Entry read(long seq) {
+        int slot = (int) (seq & mask);
+        if (published.getAcquire(slot) != seq + 1) {
+            return null;
+        }
+        long time = times[slot];
+        Event event = EVENTS[types[slot]];
+        long connectionId = connectionIds[slot];
+        String sessionId = sessionIds[slot];
+        long value = values[slot];
+
+        // Discard the copy if a writer claimed the slot meanwhile
+        VarHandle.loadLoadFence();
+        if (published.get(slot) != seq + 1) {
+            return null;
+        }
+        return new Entry(seq, Instant.ofEpochMilli(time), event, event.getCategory(),
+                connectionId != Session.NO_CONNECTION ? connectionId : null, sessionId, value);
+    }
+}
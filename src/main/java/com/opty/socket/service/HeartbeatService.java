@@ -0,0 +1,248 @@
+/**
+ * Connection heartbeat service.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.ConnectionInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Server-driven WebSocket heartbeat (thread-safe).
+ *
+ * The connection registry's slots are split into the slots of a timing wheel; each tick pings the
+ * connections in one range, so every connection is pinged once per interval without all pings firing
+ * at once. Per-connection state lives in primitive arrays indexed by registry slot. Pong round-trip time
+ * is recorded as a histogram, and peers that miss {@code max-missed-pongs} pongs in a row are closed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HeartbeatService {
+
+    // --- ATTRIBUTES ---
+    private final AppConfig appConfig;
+    private final SessionManager sessionManager;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger tracked = new AtomicInteger();
+    private AtomicLongArray pingSentNanos;
+    private AtomicIntegerArray missedPongs;
+    private int wheelSlots;
+    private ScheduledExecutorService ticker;
+    private ExecutorService reaper;
+    private Timer rttTimer;
+
+
+    /**
+     * Builds the wheel and starts ticking.
+     */
+    @PostConstruct
+    public void start() {
+        AppConfig.HeartbeatConfig config = appConfig.getHeartbeat();
+        rttTimer = Timer.builder("opty.heartbeat.rtt")
+                .description("WebSocket ping/pong round-trip time")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        int registrySlots = sessionManager.getConnectionSlotCount();
+        pingSentNanos = new AtomicLongArray(registrySlots);
+        missedPongs = new AtomicIntegerArray(registrySlots);
+        wheelSlots = Math.max(1, Math.min(config.getWheelSlots(), registrySlots));
+
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        long tickMillis = Math.max(1L, config.getIntervalSeconds() * 1000L / wheelSlots);
+        ticker = Executors.newSingleThreadScheduledExecutor(daemon("opty-heartbeat"));
+        reaper = Executors.newSingleThreadExecutor(daemon("opty-heartbeat-reaper"));
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+
+        log.info("Heartbeat started: interval={}s, slots={}, tick={}ms, maxMissedPongs={}",
+                config.getIntervalSeconds(), wheelSlots, tickMillis, config.getMaxMissedPongs());
+    }
+
+
+    /**
+     * Stops ticking.
+     */
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            reaper.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Starts heartbeating a connection.
+     *
+     * @param connectionId the connection ID
+     */
+    public void register(long connectionId) {
+        reset(sessionManager.getConnectionSlot(connectionId));
+        tracked.incrementAndGet();
+    }
+
+
+    /**
+     * Stops heartbeating a connection.
+     *
+     * @param connectionId the connection ID
+     */
+    public void unregister(long connectionId) {
+        reset(sessionManager.getConnectionSlot(connectionId));
+        tracked.decrementAndGet();
+    }
+
+
+    /**
+     * Records a pong: resets the missed counter and records the round-trip time.
+     *
+     * @param connectionId the connection ID
+     * @param payload      the pong payload (echo of the ping payload)
+     */
+    public void onPong(long connectionId, ByteBuffer payload) {
+        int slot = sessionManager.getConnectionSlot(connectionId);
+        ConnectionInfo conn = sessionManager.getConnectionAtSlot(slot);
+        if (conn == null || conn.connectionId() != connectionId) {
+            return;
+        }
+
+        missedPongs.set(slot, 0);
+        long sentNanos = pingSentNanos.getAndSet(slot, 0);
+
+        // Ping payload carries the send time; only trust it if it matches the outstanding ping
+        if (payload.remaining() == Long.BYTES && payload.getLong(payload.position()) == sentNanos && sentNanos != 0) {
+            rttTimer.record(System.nanoTime() - sentNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+
+    /**
+     * Gets the number of heartbeated connections.
+     */
+    public int getTrackedConnectionCount() {
+        return tracked.get();
+    }
+
+
+    /**
+     * Pings the connections in the registry range of the next wheel slot.
+     */
+    private void tick() {
+        try {
+            int wheelSlot = Math.floorMod(cursor.getAndIncrement(), wheelSlots);
+            int registrySlots = pingSentNanos.length();
+            int from = (int) ((long) registrySlots * wheelSlot / wheelSlots);
+            int to = (int) ((long) registrySlots * (wheelSlot + 1) / wheelSlots);
+            int maxMissed = appConfig.getHeartbeat().getMaxMissedPongs();
+
+            for (int slot = from; slot < to; slot++) {
+                ConnectionInfo conn = sessionManager.getConnectionAtSlot(slot);
+                if (conn == null) {
+                    continue;
+                }
+
+                // Previous ping still unanswered
+                if (pingSentNanos.get(slot) != 0 && missedPongs.incrementAndGet(slot) >= maxMissed) {
+                    closeDeadPeer(conn, slot);
+                    continue;
+                }
+
+                ping(conn.webSocketSession(), slot);
+            }
+        } catch (Exception e) {
+            log.error("Heartbeat tick failed: error={}", e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Sends a ping carrying its send time.
+     */
+    private void ping(WebSocketSession session, int slot) {
+        if (!session.isOpen()) {
+            return;
+        }
+        long now = System.nanoTime();
+        pingSentNanos.set(slot, now);
+        try {
+            session.sendMessage(new PingMessage(ByteBuffer.allocate(Long.BYTES).putLong(0, now)));
+        } catch (Exception e) {
+            log.debug("Ping failed: connectionId={}, error={}", session.getId(), e.getMessage());
+        }
+    }
+
+
+    /**
+     * Closes a peer that stopped answering pings (off the ticker thread).
+     */
+    private void closeDeadPeer(ConnectionInfo conn, int slot) {
+        int missed = missedPongs.get(slot);
+        reset(slot);
+        meterRegistry.counter("opty.heartbeat.dead").increment();
+        log.warn("Closing dead peer: connectionId={}, missedPongs={}", conn.connectionId(), missed);
+
+        reaper.execute(() -> {
+            try {
+                conn.webSocketSession().close(CloseStatus.SESSION_NOT_RELIABLE.withReason("Heartbeat timeout"));
+            } catch (Exception e) {
+                log.debug("Failed to close dead peer: connectionId={}, error={}", conn.connectionId(), e.getMessage());
+            }
+        });
+    }
+
+
+    /**
+     * Clears the heartbeat state of a registry slot.
+     */
+    private void reset(int slot) {
+        pingSentNanos.set(slot, 0);
+        missedPongs.set(slot, 0);
+    }
+
+
+    /**
+     * Creates a daemon thread factory.
+     */
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
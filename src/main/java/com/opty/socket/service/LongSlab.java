@@ -0,0 +1,210 @@
+/**
+ * Long-keyed slab registry.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Fixed-capacity, index-addressed registry of values keyed by sequence-assigned long IDs (thread-safe, lock-free).
+ *
+ * An ID maps to slot {@code id & mask}; allocation skips IDs whose slot is taken, so lookups are one array
+ * read plus an ID check and never hash or box the key. Values must be immutable and carry their own ID;
+ * updates replace them with CAS. ID 0 is never assigned and means "none".
+ *
+ * @param <T> the value type
+ */
+public final class LongSlab<T> {
+
+    // --- ATTRIBUTES ---
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final ToLongFunction<T> idOf;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+
+    /**
+     * Creates a slab able to hold at least {@code minCapacity} values.
+     *
+     * @param minCapacity minimum number of slots (rounded up to a power of two)
+     * @param idOf        extracts the ID stored in a value
+     */
+    public LongSlab(int minCapacity, ToLongFunction<T> idOf) {
+        int capacity = Integer.highestOneBit(Math.max(64, minCapacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.idOf = idOf;
+    }
+
+
+    /**
+     * Allocates a new ID and stores the value created for it.
+     *
+     * @param factory creates the value for the assigned ID
+     * @return the stored value, or null if the slab is full
+     */
+    public T allocate(LongFunction<T> factory) {
+        for (int attempt = 0; attempt <= mask; attempt++) {
+            long id = sequence.incrementAndGet();
+            int index = (int) (id & mask);
+            if (slots.get(index) != null) {
+                continue;
+            }
+
+            T value = factory.apply(id);
+            if (slots.compareAndSet(index, null, value)) {
+                size.incrementAndGet();
+                return value;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Stores a value under a given ID (e.g. one restored from a previous process) if its slot is free.
+     *
+     * The ID should have been passed to {@link #reserveIds} before any allocation, so it is never assigned again.
+     *
+     * @param id    the ID, stored in the value
+     * @param value the value
+     * @return true if stored, false if the slot is taken
+     */
+    public boolean allocateAt(long id, T value) {
+        if (id <= 0 || !slots.compareAndSet((int) (id & mask), null, value)) {
+            return false;
+        }
+        size.incrementAndGet();
+        return true;
+    }
+
+
+    /**
+     * Makes later allocations assign IDs above a given ID.
+     *
+     * @param maxId the highest ID in use elsewhere
+     */
+    public void reserveIds(long maxId) {
+        sequence.accumulateAndGet(maxId, Math::max);
+    }
+
+
+    /**
+     * Gets the value with the given ID.
+     *
+     * @return the value, or null if absent
+     */
+    public T get(long id) {
+        if (id <= 0) {
+            return null;
+        }
+        T value = slots.get((int) (id & mask));
+        return value != null && idOf.applyAsLong(value) == id ? value : null;
+    }
+
+
+    /**
+     * Atomically replaces the value with the given ID.
+     *
+     * The function may be applied more than once under contention and must be side-effect free;
+     * returning the same instance leaves the value unchanged.
+     *
+     * @return the resulting value, or null if absent
+     */
+    public T update(long id, UnaryOperator<T> function) {
+        int index = (int) (id & mask);
+        while (true) {
+            T current = slots.get(index);
+            if (current == null || idOf.applyAsLong(current) != id) {
+                return null;
+            }
+            T next = Objects.requireNonNull(function.apply(current));
+            if (next == current || slots.compareAndSet(index, current, next)) {
+                return next;
+            }
+        }
+    }
+
+
+    /**
+     * Removes the value with the given ID.
+     *
+     * @return the removed value, or null if absent
+     */
+    public T remove(long id) {
+        int index = (int) (id & mask);
+        while (true) {
+            T current = slots.get(index);
+            if (current == null || idOf.applyAsLong(current) != id) {
+                return null;
+            }
+            if (slots.compareAndSet(index, current, null)) {
+                size.decrementAndGet();
+                return current;
+            }
+        }
+    }
+
+
+    /**
+     * Gets the slot index of an ID (stable for the lifetime of the value).
+     */
+    public int indexOf(long id) {
+        return (int) (id & mask);
+    }
+
+
+    /**
+     * Gets the value stored at a slot index.
+     *
+     * @return the value, or null if the slot is empty
+     */
+    public T getAt(int index) {
+        return slots.get(index);
+    }
+
+
+    /**
+     * Gets the number of slots.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+
+    /**
+     * Gets the number of stored values.
+     */
+    public int size() {
+        return size.get();
+    }
+
+
+    /**
+     * Streams stored values (weakly consistent, O(capacity)).
+     */
+    public Stream<T> stream() {
+        return IntStream.range(0, capacity())
+                .mapToObj(slots::get)
+                .filter(Objects::nonNull);
+    }
+}
@@ -9,16 +9,23 @@ package com.opty.socket.service;
  * IMPORTS
  */
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.opty.socket.model.ConnectionInfo;
+import com.opty.socket.config.AppConfig;
 import com.opty.socket.model.Message;
+import com.opty.socket.model.MessageType;
 import com.opty.socket.model.Session;
+import com.opty.socket.websocket.BatchingWebSocketSession;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -37,71 +44,260 @@ public class MessageRouter {
     private final SessionManager sessionManager;
     private final ObjectMapper objectMapper;
     private final MessageStorageService messageStorageService;
+    private final AppConfig appConfig;
+    private final SessionLanes sessionLanes;
+    private final PendingDeliveryService pendingDeliveryService;
+    private final OutboundBatchingService outboundBatchingService;
+    private final OverloadController overloadController;
+    private final MeterRegistry meterRegistry;
 
     /**
      * Routes a message from sender to recipient.
      *
+     * Supervisors holding several sessions address the target session with {@code message.sessionId}.
+     * Delivery runs on the session's lane, so messages of one session arrive in order and carry
+     * the session sequence number. Messages are kept until acknowledged (store-and-forward), so messages
+     * sent while the session waits for a supervisor are delivered when one joins.
+     *
      * @param senderConnectionId the sender's connection ID
      * @param message           the message to route
-     * @return true if routing successful, false otherwise
+     * @return true if queued for delivery, false otherwise
      */
-    public boolean routeMessage(String senderConnectionId, Message message) {
+    public boolean routeMessage(long senderConnectionId, Message message) {
         try {
-            // Find sender's session
-            Session session = sessionManager.getSessionByConnectionId(senderConnectionId)
+            // Find sender's session (addressed by sessionId for multiplexed supervisors)
+            Session session = sessionManager.getSessionForConnection(senderConnectionId, message.sessionId())
                     .orElse(null);
 
             if (session == null) {
-                log.warn("No session found for connection: connectionId={}", senderConnectionId);
-                sendErrorToConnection(senderConnectionId, "Not in an active session");
+                log.warn("No session found for connection: connectionId={}, sessionId={}",
+                        senderConnectionId, message.sessionId());
+                sendErrorToConnection(senderConnectionId, message.sessionId(), "Not in an active session");
                 return false;
             }
 
-            // Determine recipient connection ID
-            String recipientConnectionId = session.getOtherPartyConnectionId(senderConnectionId);
-
-            // If session is not paired, reject message
-            if (recipientConnectionId == null) {
+            // If session is not paired and cannot be buffered, reject message
+            if (!session.isPaired() && !pendingDeliveryService.isEnabled()) {
                 log.warn("Session not paired yet: sessionId={}", session.sessionId());
-                sendErrorToConnection(senderConnectionId, "Session not paired yet, waiting for other party");
+                sendErrorToConnection(senderConnectionId, session.sessionId(),
+                        "Session not paired yet, waiting for other party");
                 return false;
             }
 
-            // Get recipient connection
-            ConnectionInfo recipientConnection = sessionManager.getConnection(recipientConnectionId)
-                    .orElse(null);
-
-            if (recipientConnection == null) {
-                // Recipient is offline
-                log.warn("Recipient offline, message not delivered: connectionId={}, sessionId={}",
-                        recipientConnectionId, session.sessionId());
-                sendErrorToConnection(senderConnectionId, "Recipient is offline");
+            // Shed beyond the adaptive delivery limit instead of growing the backlog
+            if (!overloadController.tryAcquireDelivery()) {
+                log.warn("Delivery limit reached, message rejected: sessionId={}", session.sessionId());
+                sendErrorToConnection(senderConnectionId, session.sessionId(), "Server busy, retry later");
                 return false;
             }
 
-            messageStorageService.saveMessage(message);
-             
-            // Send message to recipient
-            boolean sent = sendMessage(recipientConnection.webSocketSession(), message);
-
-            if (sent) {
-                // Update session activity
-                sessionManager.updateSessionActivity(session.sessionId());
-
-                log.debug("Message routed: sessionId={}, from={}, to={}",
-                        session.sessionId(), senderConnectionId, recipientConnectionId);
+            // Queue on the session lane
+            long queuedAt = System.nanoTime();
+            boolean queued = sessionLanes.offer(session.id(), seq -> {
+                deliver(senderConnectionId, session.id(), message, seq);
+                overloadController.recordRoutingLatency(System.nanoTime() - queuedAt);
+            });
+            if (!queued) {
+                log.warn("Session lane full, message rejected: sessionId={}", session.sessionId());
+                sendErrorToConnection(senderConnectionId, session.sessionId(), "Too many pending messages");
             }
-
-            return sent;
+            return queued;
 
         } catch (Exception e) {
             log.error("Error routing message: senderConnectionId={}, error={}",
                     senderConnectionId, e.getMessage(), e);
-            sendErrorToConnection(senderConnectionId, "Failed to route message: " + e.getMessage());
+            sendErrorToConnection(senderConnectionId, message.sessionId(),
+                    "Failed to route message: " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Delivers a routed message to every other member of the session (runs on the session lane).
+     *
+     * The message is encoded once and the same frame is written to each member; membership is read from
+     * the session snapshot of this turn, so joins and leaves take effect from the next message on.
+     */
+    private void deliver(long senderConnectionId, long sessionId, Message message, long seq) {
+        Session session = sessionManager.getSession(sessionId).orElse(null);
+        if (session == null) {
+            return;
+        }
+
+        // Always deliver with the resolved sessionId so supervisors can demultiplex
+        Message addressed = (session.sessionId().equals(message.sessionId())
+                ? message
+                : message.withSessionId(session.sessionId())).withSeq(seq);
+        String json = encode(addressed);
+        if (json == null) {
+            sendErrorToConnection(senderConnectionId, session.sessionId(), "Failed to encode message");
+            return;
+        }
+
+        // Synthetic warm-up traffic is not persisted
+        if (!session.synthetic()) {
+            messageStorageService.saveMessage(addressed);
+        }
+
+        // Keep until acknowledged by the primary recipient (client messages for the supervisor side,
+        // supervisor and observer messages for the client), if that side will acknowledge
+        boolean toSupervisor = senderConnectionId == session.clientConnectionId();
+        boolean retained = holdsFor(session, toSupervisor)
+                && pendingDeliveryService.retain(session.id(), toSupervisor, seq, json);
+
+        // Resolve members from the current snapshot: membership may have changed while the message was queued
+        List<WebSocketSession> recipients = new ArrayList<>();
+        for (long memberId : session.memberConnectionIds()) {
+            if (memberId != senderConnectionId) {
+                sessionManager.getConnection(memberId).ifPresent(conn -> recipients.add(conn.webSocketSession()));
+            }
+        }
+
+        if (recipients.isEmpty()) {
+            if (retained) {
+                if (!session.synthetic()) {
+                    log.debug("Recipient offline, message held: sessionId={}, seq={}", session.sessionId(), seq);
+                }
+                return;
+            }
+
+            // Recipient is offline
+            log.warn("Recipient offline, message not delivered: sessionId={}", session.sessionId());
+            sendErrorToConnection(senderConnectionId, session.sessionId(), "Recipient is offline");
+            return;
+        }
+
+        // Send the same frame to every member
+        int sent = fanOut(recipients, new TextMessage(json), false);
+        if (sent > 0) {
+            // Update session activity
+            sessionManager.updateSessionActivity(session.id());
+
+            // Synthetic warm-up traffic routes thousands of messages: keep it out of the log
+            if (!session.synthetic()) {
+                log.debug("Message routed: sessionId={}, seq={}, from={}, recipients={}",
+                        session.sessionId(), seq, senderConnectionId, sent);
+            }
+        }
+    }
+
+    /**
+     * Checks if messages for one side of a session are held: while it waits for a supervisor (they are
+     * replayed on join), or when the recipient declared ACK support.
+     */
+    private boolean holdsFor(Session session, boolean toSupervisor) {
+        if (toSupervisor && !session.isPaired()) {
+            return true;
+        }
+        long recipientId = toSupervisor ? session.supervisorConnectionId() : session.clientConnectionId();
+        return sessionManager.getConnection(recipientId)
+                .map(conn -> PendingDeliveryService.acknowledges(conn.webSocketSession()))
+                .orElse(false);
+    }
+
+    /**
+     * Sends the messages a party has not acknowledged yet, in order (e.g. to a supervisor taking over).
+     *
+     * They go out as one {@code BATCH} frame to connections that opted into batching, and one frame each
+     * to others. A recipient that does not acknowledge gets them once and they are dropped.
+     *
+     * @param session      the session
+     * @param connectionId the recipient connection ID
+     */
+    public void replayPending(Session session, long connectionId) {
+        boolean toSupervisor = connectionId != session.clientConnectionId();
+        sessionLanes.run(session.id(), () -> {
+            List<String> pending = pendingDeliveryService.unacknowledged(session.id(), toSupervisor);
+            if (pending.isEmpty()) {
+                return;
+            }
+            sessionManager.getConnection(connectionId).ifPresent(conn -> {
+                WebSocketSession recipient = conn.webSocketSession();
+                boolean acknowledges = PendingDeliveryService.acknowledges(recipient);
+                if (recipient instanceof BatchingWebSocketSession) {
+                    int bytes = pending.stream().mapToInt(PendingDeliveryService::utf8Length).sum();
+                    sendText(recipient, new TextMessage(BatchingWebSocketSession.batchFrame(pending, bytes)), true);
+                } else {
+                    pending.forEach(json -> sendText(recipient, new TextMessage(json), false));
+                }
+                if (!acknowledges) {
+                    pendingDeliveryService.acknowledge(session.id(), toSupervisor, Long.MAX_VALUE);
+                }
+                meterRegistry.counter("opty.pending.replayed").increment(pending.size());
+                log.info("Replayed pending messages: sessionId={}, connectionId={}, count={}",
+                        session.sessionId(), connectionId, pending.size());
+            });
+        });
+    }
+
+    /**
+     * Trims the messages a party acknowledged with an {@code ACK} carrying the highest {@code seq} received.
+     *
+     * @param connectionId the acknowledging connection ID
+     * @param ack          the ACK message
+     */
+    public void acknowledge(long connectionId, Message ack) {
+        if (ack.seq() == null) {
+            sendErrorToConnection(connectionId, ack.sessionId(), "ACK requires seq");
+            return;
+        }
+        Session session = sessionManager.getSessionForConnection(connectionId, ack.sessionId()).orElse(null);
+        if (session == null) {
+            sendErrorToConnection(connectionId, ack.sessionId(), "Not in an active session");
+            return;
+        }
+
+        // Observers receive messages live only, nothing is held for them
+        if (session.isObserver(connectionId)) {
+            return;
+        }
+
+        boolean toSupervisor = connectionId != session.clientConnectionId();
+        long seq = ack.seq();
+        sessionLanes.run(session.id(), () -> pendingDeliveryService.acknowledge(session.id(), toSupervisor, seq));
+    }
+
+    /**
+     * Drops the held messages of a session that ended.
+     *
+     * @param session the removed session
+     */
+    public void discardPending(Session session) {
+        sessionLanes.run(session.id(), () -> pendingDeliveryService.discard(session.id()));
+    }
+
+    /**
+     * Sends a server message to one party of a session, in order with the session's other deliveries.
+     *
+     * @param session      the session
+     * @param connectionId the recipient connection ID
+     * @param message      the message (stamped with the session sequence number)
+     */
+    public void sendInSession(Session session, long connectionId, Message message) {
+        sessionLanes.execute(session.id(), seq -> sessionManager.getConnection(connectionId)
+                .ifPresent(conn -> sendMessage(conn.webSocketSession(), message.withSeq(seq))));
+    }
+
+    /**
+     * Wraps a WebSocket session so that concurrent senders (routing, queue broadcasts, heartbeat)
+     * are serialized and buffered instead of failing on the container's single-writer endpoint,
+     * and coalesces chat traffic into {@code BATCH} frames if the client opted in. Also records whether
+     * the connection declared ACK support ({@code ?ack=true}).
+     *
+     * @param session the raw WebSocket session
+     * @return the session to register and send through
+     */
+    public WebSocketSession decorateForSending(WebSocketSession session) {
+        pendingDeliveryService.registerAckSupport(session);
+        AppConfig.MessageConfig config = appConfig.getMessage();
+        WebSocketSession concurrent = new ConcurrentWebSocketSessionDecorator(
+                session,
+                config.getSendTimeLimitMillis(),
+                config.getSendBufferSizeLimit()
+        );
+        return outboundBatchingService.decorate(concurrent, session.getUri());
+    }
+
     /**
      * Sends a message to a WebSocket session.
      *
@@ -115,9 +311,111 @@ public class MessageRouter {
             return false;
         }
 
+        String json = encode(message);
+        return json != null && sendText(session, new TextMessage(json), isUrgent(message));
+    }
+
+    /**
+     * Sends the same message to several WebSocket sessions, encoding it once.
+     *
+     * @param sessions the WebSocket sessions
+     * @param message  the message to send
+     * @return the number of sessions it was sent to
+     */
+    public int sendToAll(List<WebSocketSession> sessions, Message message) {
+        if (sessions.isEmpty()) {
+            return 0;
+        }
+
+        String json = encode(message);
+        if (json == null) {
+            return 0;
+        }
+
+        return fanOut(sessions, new TextMessage(json), isUrgent(message));
+    }
+
+    /**
+     * Sends an ephemeral signal (typing, presence, read) to several WebSocket sessions, encoding it once.
+     *
+     * Signals bypass the session lanes: they are not sequenced, held until acknowledged or persisted.
+     * A recipient that already has outbound frames buffered (slow consumer) is skipped, so signals never
+     * add to a backlog.
+     *
+     * @param sessions the WebSocket sessions
+     * @param message  the signal
+     * @return the number of sessions it was sent to
+     */
+    public int sendEphemeral(List<WebSocketSession> sessions, Message message) {
+        String json = encode(message);
+        if (json == null) {
+            return 0;
+        }
+
+        TextMessage frame = new TextMessage(json);
+        int sent = 0;
+        for (WebSocketSession session : sessions) {
+            if (!isBackpressured(session) && sendText(session, frame, false)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Checks if a connection has outbound frames waiting behind a send in progress.
+     */
+    private static boolean isBackpressured(WebSocketSession session) {
+        WebSocketSession current = session;
+        while (current instanceof WebSocketSessionDecorator decorator) {
+            if (decorator instanceof ConcurrentWebSocketSessionDecorator concurrent) {
+                return concurrent.getBufferSize() > 0;
+            }
+            current = decorator.getDelegate();
+        }
+        return false;
+    }
+
+    /**
+     * Writes one frame to several WebSocket sessions (frames are immutable, so one instance is shared).
+     *
+     * Each connection buffers outbound frames while its socket is busy, so a slow member does not hold
+     * back the frames queued for the others.
+     */
+    private int fanOut(List<WebSocketSession> sessions, TextMessage frame, boolean urgent) {
+        int sent = 0;
+        for (WebSocketSession session : sessions) {
+            if (session != null && sendText(session, frame, urgent)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Checks if a message must bypass outbound batching (control frames: connect, disconnect, errors).
+     */
+    private boolean isUrgent(Message message) {
+        return message.type() != MessageType.MESSAGE && message.type() != MessageType.SESSION_QUEUE_UPDATE;
+    }
+
+    /**
+     * Sends an encoded message to a WebSocket session, batching it if the session batches and it is not urgent.
+     */
+    private boolean sendText(WebSocketSession session, TextMessage frame, boolean urgent) {
+        if (!session.isOpen()) {
+            return false;
+        }
         try {
-            String json = objectMapper.writeValueAsString(message);
-            session.sendMessage(new TextMessage(json));
+            if (session instanceof BatchingWebSocketSession batching) {
+                if (urgent) {
+                    batching.sendMessage(frame);
+                } else {
+                    batching.sendBatched(frame.getPayload());
+                }
+            } else {
+                session.sendMessage(frame);
+            }
             return true;
         } catch (IOException e) {
             log.error("Failed to send message: sessionId={}, error={}",
@@ -126,79 +424,112 @@ public class MessageRouter {
         }
     }
 
+    /**
+     * Encodes a message as JSON text (text frames carry a String, so this is the only copy made).
+     *
+     * @return the JSON text, or null if the message cannot be encoded
+     */
+    private String encode(Message message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (IOException e) {
+            log.error("Failed to encode message: sessionId={}, error={}",
+                    message.sessionId(), e.getMessage(), e);
+            return null;
+        }
+    }
+
     /**
      * Sends an error message to a connection.
      *
      * @param connectionId  the connection ID
      * @param errorMessage the error message
      */
-    public void sendErrorToConnection(String connectionId, String errorMessage) {
+    public void sendErrorToConnection(long connectionId, String errorMessage) {
+        sendErrorToConnection(connectionId, null, errorMessage);
+    }
+
+    /**
+     * Sends an error message about a specific session to a connection.
+     *
+     * @param connectionId  the connection ID
+     * @param sessionId     the session the error refers to, resolved from the connection if null
+     * @param errorMessage the error message
+     */
+    public void sendErrorToConnection(long connectionId, String sessionId, String errorMessage) {
         sessionManager.getConnection(connectionId).ifPresent(conn -> {
-            Session session = sessionManager.getSessionByConnectionId(connectionId).orElse(null);
-            String sessionId = session != null ? session.sessionId() : null;
-            Message error = Message.error(sessionId, errorMessage);
+            String errorSessionId = sessionId != null
+                    ? sessionId
+                    : sessionManager.getSessionForConnection(connectionId, null)
+                            .map(Session::sessionId)
+                            .orElse(null);
+            Message error = Message.error(errorSessionId, errorMessage);
             sendMessage(conn.webSocketSession(), error);
         });
     }
 
     /**
-     * Broadcasts a message to all connections in a session.
+     * Broadcasts a message to all members of a session (on the session lane), encoded once.
      *
-     * @param sessionId the session ID
+     * @param sessionId the internal session ID
      * @param message   the message to broadcast
-     * @return number of successful sends
      */
-    public int broadcastToSession(String sessionId, Message message) {
-        Session session = sessionManager.getSession(sessionId).orElse(null);
-        if (session == null) {
-            log.warn("Cannot broadcast, session not found: sessionId={}", sessionId);
-            return 0;
-        }
-
-        int sentCount = 0;
-
-        // Send to client
-        ConnectionInfo clientConn = sessionManager.getConnection(session.clientConnectionId())
-                .orElse(null);
-        if (clientConn != null && sendMessage(clientConn.webSocketSession(), message)) {
-            sentCount++;
-        }
+    public void broadcastToSession(long sessionId, Message message) {
+        sessionLanes.execute(sessionId, seq -> {
+            Session session = sessionManager.getSession(sessionId).orElse(null);
+            if (session == null) {
+                log.warn("Cannot broadcast, session not found: sessionId={}", sessionId);
+                return;
+            }
 
-        // Send to supervisor if paired
-        if (session.isPaired()) {
-            ConnectionInfo supervisorConn = sessionManager.getConnection(session.supervisorConnectionId())
-                    .orElse(null);
-            if (supervisorConn != null && sendMessage(supervisorConn.webSocketSession(), message)) {
-                sentCount++;
+            // Client, supervisor if paired, observers
+            long[] members = session.memberConnectionIds();
+            List<WebSocketSession> recipients = new ArrayList<>(members.length);
+            for (long memberId : members) {
+                sessionManager.getConnection(memberId).ifPresent(conn -> recipients.add(conn.webSocketSession()));
             }
-        }
 
-        log.debug("Broadcast to session: sessionId={}, recipients={}", sessionId, sentCount);
-        return sentCount;
+            int sentCount = sendToAll(recipients, message.withSeq(seq));
+
+            log.debug("Broadcast to session: sessionId={}, recipients={}", session.sessionId(), sentCount);
+        });
     }
 
     /**
-     * Notifies the other party in a session about a disconnect.
+     * Notifies the other party of every session of a connection about a disconnect.
      *
      * @param disconnectedConnectionId the connection ID that disconnected
      */
-    public void notifyDisconnect(String disconnectedConnectionId) {
-        sessionManager.getSessionByConnectionId(disconnectedConnectionId).ifPresent(session -> {
-            String otherPartyId = session.getOtherPartyConnectionId(disconnectedConnectionId);
-            if (otherPartyId != null) {
-                sessionManager.getConnection(otherPartyId).ifPresent(conn -> {
-                    Message disconnectMsg = new Message(
-                            session.sessionId(),
-                            "SERVER",
-                            com.opty.socket.model.MessageType.DISCONNECT,
-                            java.util.Map.of("message", "Other party disconnected")
-                    );
-                    sendMessage(conn.webSocketSession(), disconnectMsg);
-                    log.info("Notified disconnect: sessionId={}, notified={}",
-                            session.sessionId(), otherPartyId);
-                });
+    public void notifyDisconnect(long disconnectedConnectionId) {
+        sessionManager.getSessionsByConnectionId(disconnectedConnectionId)
+                .forEach(session -> notifyDisconnect(disconnectedConnectionId, session));
+    }
+
+    /**
+     * Notifies the other party in a session that a connection left it.
+     *
+     * An observer leaving is reported to the remaining observers only; a party leaving is reported to
+     * every other member.
+     *
+     * @param disconnectedConnectionId the connection ID that left
+     * @param session                  the session it left
+     */
+    public void notifyDisconnect(long disconnectedConnectionId, Session session) {
+        boolean observer = session.isObserver(disconnectedConnectionId);
+        Message disconnectMsg = new Message(
+                session.sessionId(),
+                "SERVER",
+                MessageType.DISCONNECT,
+                java.util.Map.of("message", observer ? "Observer left" : "Other party disconnected")
+        );
+
+        for (long memberId : session.memberConnectionIds()) {
+            if (memberId == disconnectedConnectionId || (observer && !session.isObserver(memberId))) {
+                continue;
             }
-        });
+            sendInSession(session, memberId, disconnectMsg);
+            log.debug("Notified disconnect: sessionId={}, notified={}", session.sessionId(), memberId);
+        }
     }
 
 }
@@ -1,25 +1,100 @@
 package com.opty.socket.service;
 
+import com.opty.socket.config.AppConfig;
 import com.opty.socket.model.ChatMessageDocument;
 import com.opty.socket.model.Message;
 import com.opty.socket.model.MessageType;
 import com.opty.socket.repository.ChatMessageRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Serviço responsável por persistir mensagens de chat no MongoDB.
+ *
+ * As gravações não acontecem na thread de entrega: as mensagens entram numa fila limitada e
+ * threads próprias gravam em lote (saveAll). Assim, um Mongo lento não segura as lanes de sessão.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class MessageStorageService {
 
+    private static final long POLL_MILLIS = 100;
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
     private final ChatMessageRepository chatMessageRepository;
+    private final AppConfig appConfig;
+    private final MeterRegistry meterRegistry;
+    private final List<Thread> writers = new ArrayList<>();
+
+    // Mensagens aceitas e ainda não gravadas: na fila ou sendo gravadas (usado no drain e no controle de sobrecarga)
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private BlockingQueue<Message> queue;
+    private Counter dropped;
+    private volatile boolean running;
+
+    /**
+     * Recebe o repositório como proxy preguiçoso: o cliente Mongo só é criado no primeiro uso
+     * (ou em segundo plano após o startup, ver MongoConfig).
+     */
+    public MessageStorageService(@Lazy ChatMessageRepository chatMessageRepository, AppConfig appConfig,
+                                 MeterRegistry meterRegistry) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.appConfig = appConfig;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Cria a fila e inicia as threads de gravação.
+     */
+    @PostConstruct
+    public void start() {
+        AppConfig.StorageConfig config = appConfig.getStorage();
+        queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        dropped = meterRegistry.counter("opty.storage.dropped");
+        running = true;
+        for (int i = 0; i < config.getWriterThreads(); i++) {
+            Thread writer = new Thread(this::writeLoop, "opty-storage-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    /**
+     * Para de aceitar gravações e espera as threads esvaziarem a fila (com limite de tempo).
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_TIMEOUT_MILLIS);
+        for (Thread writer : writers) {
+            try {
+                writer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (inFlight.get() > 0) {
+            log.warn("Mensagens não gravadas no encerramento: count={}", inFlight.get());
+        }
+    }
 
     /**
-     * Salva uma mensagem no banco de dados.
+     * Enfileira uma mensagem para ser salva no banco de dados (não bloqueia).
      * Só salva mensagens do tipo MESSAGE.
      *
      * @param message O 'record' da mensagem recebida.
@@ -30,19 +105,66 @@ public class MessageStorageService {
             return;
         }
 
+        inFlight.incrementAndGet();
+        if (!queue.offer(message)) {
+            // Fila cheia: a mensagem já foi entregue, só não será persistida
+            inFlight.decrementAndGet();
+            dropped.increment();
+            log.warn("Fila de persistência cheia, mensagem não salva: sessionId={}", message.sessionId());
+        }
+    }
+
+    /**
+     * Retorna quantas gravações estão pendentes (na fila ou em andamento).
+     */
+    public int getInFlightSaves() {
+        return inFlight.get();
+    }
+
+    /**
+     * Laço das threads de gravação: pega o que houver na fila (até batch-size) e grava de uma vez.
+     */
+    private void writeLoop() {
+        int batchSize = appConfig.getStorage().getBatchSize();
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Grava um lote no MongoDB.
+     */
+    private void write(List<Message> batch) {
         try {
-            // Converte o record 'Message' para o 'ChatMessageDocument'
-            ChatMessageDocument document = new ChatMessageDocument(message);
-            
-            // Salva no MongoDB
-            chatMessageRepository.save(document);
-            
-            log.debug("Mensagem salva no DB: sessionId={}", message.sessionId());
+            // Converte os records 'Message' para 'ChatMessageDocument' e salva tudo numa operação
+            List<ChatMessageDocument> documents = new ArrayList<>(batch.size());
+            for (Message message : batch) {
+                documents.add(new ChatMessageDocument(message));
+            }
+            chatMessageRepository.saveAll(documents);
+
+            log.debug("Mensagens salvas no DB: count={}", documents.size());
 
         } catch (Exception e) {
-            log.error("Falha ao salvar mensagem no MongoDB: sessionId={}, error={}",
-                    message.sessionId(), e.getMessage(), e);
+            log.error("Falha ao salvar mensagens no MongoDB: count={}, error={}",
+                    batch.size(), e.getMessage(), e);
             // Mesmo se falhar ao salvar, não queremos quebrar o chat em tempo real
+        } finally {
+            inFlight.addAndGet(-batch.size());
         }
     }
-}
\ No newline at end of file
+}
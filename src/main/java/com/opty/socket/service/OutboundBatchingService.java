@@ -0,0 +1,101 @@
+/**
+ * Outbound frame batching service.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.websocket.BatchingWebSocketSession;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Wraps connections that opted in ({@code ?batch=true}) so bursts of messages share one frame.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboundBatchingService {
+
+    // --- ATTRIBUTES ---
+    private static final String OPT_IN_PARAMETER = "batch";
+    private final AppConfig appConfig;
+    private final MeterRegistry meterRegistry;
+    private ScheduledExecutorService scheduler;
+    private DistributionSummary batchSize;
+
+
+    /**
+     * Starts the flush pool, so a flush stuck on a slow peer does not delay other connections.
+     */
+    @PostConstruct
+    public void start() {
+        int configured = appConfig.getBatch().getFlushThreads();
+        int threads = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "opty-batch-flush-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        batchSize = DistributionSummary.builder("opty.batch.size")
+                .description("Messages per flushed outbound frame")
+                .register(meterRegistry);
+    }
+
+
+    /**
+     * Stops the flush pool.
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Wraps a connection for batching if enabled and requested on the handshake.
+     *
+     * @param session the session to write frames to (already safe for concurrent senders)
+     * @param uri     the handshake URI
+     * @return the batching session, or the given session if not batching
+     */
+    public WebSocketSession decorate(WebSocketSession session, URI uri) {
+        AppConfig.BatchConfig config = appConfig.getBatch();
+        if (!config.isEnabled() || uri == null) {
+            return session;
+        }
+
+        String optIn = UriComponentsBuilder.fromUri(uri).build().getQueryParams().getFirst(OPT_IN_PARAMETER);
+        if (!"true".equalsIgnoreCase(optIn)) {
+            return session;
+        }
+
+        log.debug("Outbound batching enabled: connectionId={}", session.getId());
+        return new BatchingWebSocketSession(session, scheduler, config.getFlushWindowMillis(),
+                config.getMaxMessages(), config.getMaxBytes(), batchSize::record);
+    }
+}
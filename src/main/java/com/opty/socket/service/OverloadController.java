@@ -0,0 +1,343 @@
+/**
+ * Adaptive overload controller.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.MessageType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Detects saturation from internal signals and sheds lower-priority work in stages (thread-safe).
+ *
+ * Every sample combines the delivery backlog, the mean routing latency, the persistence backlog and the
+ * sampler's own scheduling lag into a pressure ratio (1.0 = saturated). The sampler runs on a thread of its
+ * own, so the lag reflects CPU starvation and GC pauses rather than other scheduled tasks. The delivery backlog is measured
+ * against an adaptive limit: cut multiplicatively while latency, lag or persistence show congestion, raised
+ * additively while the node keeps up (AIMD). Rising pressure sheds, in order: queue update frequency,
+ * new client admissions, then non-essential frames and messages beyond the limit. Readiness is set to
+ * refusing traffic from the admission stage on, so load balancers send new connections elsewhere. It is
+ * only given back if this controller took it away, once the application is ready and not draining.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OverloadController {
+
+    // --- ATTRIBUTES ---
+    private static final double QUEUE_UPDATES_PRESSURE = 0.7;
+    private static final double ADMISSIONS_PRESSURE = 0.85;
+    private static final double FRAMES_PRESSURE = 1.0;
+    private static final double DECREASE_FACTOR = 0.75;
+    private static final Set<MessageType> ESSENTIAL_TYPES =
+            EnumSet.of(MessageType.CONNECT, MessageType.MESSAGE, MessageType.ACK, MessageType.DISCONNECT);
+    private final AppConfig appConfig;
+    private final SessionLanes sessionLanes;
+    private final MessageStorageService messageStorageService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectProvider<DrainCoordinator> drainCoordinator;
+    private final MeterRegistry meterRegistry;
+    private final LongAdder latencySumNanos = new LongAdder();
+    private final LongAdder latencyCount = new LongAdder();
+    private volatile int limit;
+    private volatile Stage stage = Stage.NORMAL;
+    private volatile double pressure;
+    private long lastSampleNanos;
+    private ScheduledExecutorService sampler;
+    private volatile boolean applicationReady;
+    private volatile boolean readinessRevoked;
+
+
+    /**
+     * Shedding stages, each including the previous ones.
+     */
+    public enum Stage {
+        NORMAL,
+        SHED_QUEUE_UPDATES,
+        SHED_ADMISSIONS,
+        SHED_FRAMES
+    }
+
+
+    /**
+     * Sets the initial limit, registers metrics and starts the sampler thread.
+     */
+    @PostConstruct
+    public void start() {
+        limit = appConfig.getOverload().getInitialLimit();
+
+        Gauge.builder("opty.overload.limit", this, controller -> controller.limit)
+                .description("Adaptive limit of messages queued for delivery")
+                .register(meterRegistry);
+        Gauge.builder("opty.overload.stage", this, controller -> controller.stage.ordinal())
+                .description("Current shedding stage (0 = normal)")
+                .register(meterRegistry);
+        Gauge.builder("opty.overload.pressure", this, controller -> controller.pressure)
+                .description("Saturation pressure (1 = saturated)")
+                .register(meterRegistry);
+
+        long intervalMillis = appConfig.getOverload().getSampleIntervalMillis();
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "opty-overload-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(this::sampleQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Stops the sampler thread.
+     */
+    @PreDestroy
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Allows readiness to be restored once the application has started (runners such as warm-up are done).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        applicationReady = true;
+    }
+
+
+    /**
+     * Keeps refusing traffic if another readiness owner reports ready while admissions are shed.
+     */
+    @EventListener
+    public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getSource() != this && event.getState() == ReadinessState.ACCEPTING_TRAFFIC && shouldShedAdmissions()) {
+            revokeReadiness();
+        }
+    }
+
+
+    /**
+     * Records the time a routed message waited before being delivered.
+     *
+     * @param nanos the routing latency in nanoseconds
+     */
+    public void recordRoutingLatency(long nanos) {
+        latencySumNanos.add(nanos);
+        latencyCount.increment();
+    }
+
+
+    /**
+     * Checks if queue updates should be coalesced instead of sent right away.
+     */
+    public boolean shouldShedQueueUpdates() {
+        return stage.compareTo(Stage.SHED_QUEUE_UPDATES) >= 0;
+    }
+
+
+    /**
+     * Checks if new client connections should be refused.
+     */
+    public boolean shouldShedAdmissions() {
+        return stage.compareTo(Stage.SHED_ADMISSIONS) >= 0;
+    }
+
+
+    /**
+     * Checks if an inbound frame of a type may be processed (non-essential types are dropped when saturated).
+     *
+     * @param type the message type
+     * @return true if the frame may be processed
+     */
+    public boolean allowFrame(MessageType type) {
+        if (stage != Stage.SHED_FRAMES || ESSENTIAL_TYPES.contains(type)) {
+            return true;
+        }
+        shed(Stage.SHED_FRAMES);
+        return false;
+    }
+
+
+    /**
+     * Checks if another message may be queued for delivery (adaptive concurrency limit).
+     *
+     * @return true if below the limit (always when overload control is disabled)
+     */
+    public boolean tryAcquireDelivery() {
+        if (!appConfig.getOverload().isEnabled() || sessionLanes.getQueuedTasks() < limit) {
+            return true;
+        }
+        shed(Stage.SHED_FRAMES);
+        return false;
+    }
+
+
+    /**
+     * Counts a unit of work shed at a stage.
+     *
+     * @param stage the stage that shed it
+     */
+    public void shed(Stage stage) {
+        meterRegistry.counter("opty.overload.shed", "stage", stage.name().toLowerCase()).increment();
+    }
+
+
+    /**
+     * Gets the current shedding stage.
+     */
+    public Stage getStage() {
+        return stage;
+    }
+
+
+    /**
+     * Samples the saturation signals, adapts the limit and updates the stage.
+     */
+    public void sample() {
+        AppConfig.OverloadConfig config = appConfig.getOverload();
+        long now = System.nanoTime();
+        long previous = lastSampleNanos;
+        lastSampleNanos = now;
+        if (previous == 0) {
+            // First run: no previous sample to measure lag against (startup is not overload)
+            return;
+        }
+        long lagMillis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(now - previous) - config.getSampleIntervalMillis());
+
+        long count = latencyCount.sumThenReset();
+        long sum = latencySumNanos.sumThenReset();
+        double latencyMillis = count > 0 ? sum / (double) count / 1_000_000.0 : 0.0;
+
+        if (!config.isEnabled()) {
+            updateStage(Stage.NORMAL, 0.0);
+            return;
+        }
+
+        int backlog = sessionLanes.getQueuedTasks();
+
+        // Storage backlog relative to the write queue the saves wait in
+        double maxStorageBacklog = Math.max(1.0,
+                appConfig.getStorage().getQueueCapacity() * config.getMaxStorageBacklogRatio());
+        int storageBacklog = messageStorageService.getInFlightSaves();
+
+        // AIMD: back off on congestion, probe upwards while the backlog uses the limit
+        boolean congested = latencyMillis > config.getTargetLatencyMillis()
+                || lagMillis > config.getMaxSchedulerLagMillis()
+                || storageBacklog > maxStorageBacklog;
+        int current = limit;
+        if (congested) {
+            limit = Math.max(config.getMinLimit(), (int) (current * DECREASE_FACTOR));
+        } else if (backlog > current / 2) {
+            limit = Math.min(config.getMaxLimit(), current + config.getLimitIncrease());
+        }
+
+        double sampled = Math.max(
+                Math.max(backlog / (double) limit, latencyMillis / config.getTargetLatencyMillis()),
+                Math.max(lagMillis / (double) config.getMaxSchedulerLagMillis(),
+                        storageBacklog / maxStorageBacklog));
+
+        Stage next;
+        if (sampled >= FRAMES_PRESSURE) {
+            next = Stage.SHED_FRAMES;
+        } else if (sampled >= ADMISSIONS_PRESSURE) {
+            next = Stage.SHED_ADMISSIONS;
+        } else if (sampled >= QUEUE_UPDATES_PRESSURE) {
+            next = Stage.SHED_QUEUE_UPDATES;
+        } else {
+            next = Stage.NORMAL;
+        }
+        updateStage(next, sampled);
+    }
+
+
+    /**
+     * Samples from the sampler thread; a failed sample must not cancel the next ones.
+     */
+    private void sampleQuietly() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            log.error("Overload sample failed: error={}", e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Applies a new stage, switching readiness when crossing the admission stage.
+     */
+    private void updateStage(Stage next, double sampled) {
+        pressure = sampled;
+        Stage previous = stage;
+        if (next == previous) {
+            return;
+        }
+        stage = next;
+
+        boolean wasRefusing = previous.compareTo(Stage.SHED_ADMISSIONS) >= 0;
+        boolean refusing = next.compareTo(Stage.SHED_ADMISSIONS) >= 0;
+        if (refusing && !wasRefusing) {
+            revokeReadiness();
+        } else if (!refusing && wasRefusing) {
+            restoreReadiness();
+        }
+
+        log.warn("Overload stage changed: {} -> {}, pressure={}, limit={}",
+                previous, next, String.format("%.2f", sampled), limit);
+    }
+
+
+    /**
+     * Reports refusing traffic, remembering that this controller did.
+     */
+    private void revokeReadiness() {
+        readinessRevoked = true;
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+    }
+
+
+    /**
+     * Reports accepting traffic again, only if this controller revoked it, the application is ready
+     * and the server is not draining.
+     */
+    private void restoreReadiness() {
+        if (!readinessRevoked) {
+            return;
+        }
+        readinessRevoked = false;
+        DrainCoordinator drain = drainCoordinator.getIfAvailable();
+        if (!applicationReady || (drain != null && drain.isDraining())) {
+            return;
+        }
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+}
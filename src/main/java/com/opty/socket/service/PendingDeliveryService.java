@@ -0,0 +1,352 @@
+/**
+ * Store-and-forward delivery buffer.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Holds encoded session messages until their recipient acknowledges them (thread-safe).
+ *
+ * Messages are kept per session and recipient side (client or supervisor) in sequence order, so a
+ * recipient that was offline, or a supervisor taking over a session, receives everything it has not
+ * acknowledged. Per-session buffers are only touched from the session's delivery lane; entries are
+ * also linked in a global FIFO so the TTL sweep and the global byte budget can drop the oldest
+ * entries of any session without touching its buffer (dropped entries are skipped lazily).
+ *
+ * Only connections that declare ACK support on the handshake ({@code ?ack=true}) get messages held for
+ * them; legacy clients never acknowledge, and holding for them would only fill the buffers until the TTL.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PendingDeliveryService {
+
+    // --- ATTRIBUTES ---
+    private static final String ACK_PARAMETER = "ack";
+    private static final String ACK_ATTRIBUTE = "opty.acks";
+    private final AppConfig appConfig;
+    private final SessionManager sessionManager;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentLinkedQueue<Entry> fifo = new ConcurrentLinkedQueue<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private AtomicReferenceArray<SessionBuffer> buffers;
+
+
+    /**
+     * Creates the buffer table and registers metrics.
+     */
+    @PostConstruct
+    public void start() {
+        buffers = new AtomicReferenceArray<>(sessionManager.getSessionSlotCount());
+        Gauge.builder("opty.pending.bytes", bytes, AtomicLong::get)
+                .description("Encoded bytes held for unacknowledged session messages")
+                .register(meterRegistry);
+    }
+
+
+    /**
+     * Checks if store-and-forward is enabled.
+     */
+    public boolean isEnabled() {
+        return appConfig.getPending().isEnabled();
+    }
+
+
+    /**
+     * Records whether a new connection declared ACK support ({@code ?ack=true} on the handshake).
+     *
+     * @param session the raw WebSocket session
+     */
+    public void registerAckSupport(WebSocketSession session) {
+        if (session.getUri() == null) {
+            return;
+        }
+        String declared = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst(ACK_PARAMETER);
+        if ("true".equalsIgnoreCase(declared)) {
+            session.getAttributes().put(ACK_ATTRIBUTE, Boolean.TRUE);
+        }
+    }
+
+
+    /**
+     * Checks if a connection declared ACK support on its handshake.
+     *
+     * @param session the WebSocket session (raw or decorated)
+     */
+    public static boolean acknowledges(WebSocketSession session) {
+        return Boolean.TRUE.equals(session.getAttributes().get(ACK_ATTRIBUTE));
+    }
+
+
+    /**
+     * Keeps an encoded message until its recipient acknowledges it (session lane only).
+     *
+     * @param sessionId    the internal session ID
+     * @param toSupervisor true if the recipient is the supervisor side, false for the client
+     * @param seq          the message sequence number
+     * @param json         the encoded message
+     * @return true if retained, false if disabled or the session is gone
+     */
+    public boolean retain(long sessionId, boolean toSupervisor, long seq, String json) {
+        AppConfig.PendingConfig config = appConfig.getPending();
+        if (!config.isEnabled()) {
+            return false;
+        }
+
+        SessionBuffer buffer = bufferFor(sessionId);
+        if (buffer == null) {
+            return false;
+        }
+
+        // Per-session bound: drop already released entries first, then the oldest
+        if (buffer.entries.size() >= config.getMaxMessagesPerSession()) {
+            buffer.entries.removeIf(Entry::isReleased);
+            while (buffer.entries.size() >= config.getMaxMessagesPerSession()) {
+                drop(buffer.entries.poll(), "overflow");
+            }
+        }
+
+        Entry entry = new Entry(seq, toSupervisor, System.currentTimeMillis() + config.getTtlSeconds() * 1000L, json);
+        buffer.entries.add(entry);
+        fifo.add(entry);
+
+        // Global budget: evict the oldest entries of any session
+        if (bytes.addAndGet(entry.size) > config.getMaxBytes()) {
+            Entry oldest;
+            while (bytes.get() > config.getMaxBytes() && (oldest = fifo.poll()) != null) {
+                drop(oldest, "budget");
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Gets the unacknowledged messages for one side of a session, in sequence order (session lane only).
+     *
+     * @param sessionId    the internal session ID
+     * @param toSupervisor true for the supervisor side, false for the client
+     * @return the encoded messages
+     */
+    public List<String> unacknowledged(long sessionId, boolean toSupervisor) {
+        SessionBuffer buffer = existingBuffer(sessionId);
+        if (buffer == null) {
+            return List.of();
+        }
+
+        long now = System.currentTimeMillis();
+        List<String> messages = new ArrayList<>();
+        for (Entry entry : buffer.entries) {
+            if (entry.toSupervisor != toSupervisor) {
+                continue;
+            }
+            if (entry.expiresAtMillis <= now) {
+                drop(entry, "ttl");
+                continue;
+            }
+            String json = entry.json;
+            if (json != null) {
+                messages.add(json);
+            }
+        }
+        buffer.entries.removeIf(Entry::isReleased);
+        return messages;
+    }
+
+
+    /**
+     * Trims messages acknowledged by a recipient (session lane only).
+     *
+     * @param sessionId    the internal session ID
+     * @param toSupervisor true if the supervisor side acknowledged, false for the client
+     * @param seq          the highest sequence number received
+     */
+    public void acknowledge(long sessionId, boolean toSupervisor, long seq) {
+        SessionBuffer buffer = existingBuffer(sessionId);
+        if (buffer == null) {
+            return;
+        }
+        for (Entry entry : buffer.entries) {
+            if (entry.toSupervisor == toSupervisor && entry.seq <= seq) {
+                entry.release();
+            }
+        }
+        buffer.entries.removeIf(Entry::isReleased);
+    }
+
+
+    /**
+     * Drops everything held for a session (session lane only).
+     *
+     * @param sessionId the internal session ID
+     */
+    public void discard(long sessionId) {
+        SessionBuffer buffer = existingBuffer(sessionId);
+        if (buffer != null) {
+            buffer.entries.forEach(Entry::release);
+            buffer.entries.clear();
+        }
+    }
+
+
+    /**
+     * Drops expired entries and unlinks released ones from the head of the global FIFO.
+     *
+     * Entries are appended in time order with the same TTL, so the sweep stops at the first live one.
+     */
+    @Scheduled(fixedDelay = 1_000)
+    public void sweepExpired() {
+        long now = System.currentTimeMillis();
+        Entry head;
+        while ((head = fifo.peek()) != null && (head.isReleased() || head.expiresAtMillis <= now)) {
+            if (fifo.remove(head)) {
+                drop(head, "ttl");
+            }
+        }
+    }
+
+
+    /**
+     * Releases an entry, counting it as dropped if it was still held.
+     */
+    private void drop(Entry entry, String reason) {
+        if (entry != null && entry.release()) {
+            meterRegistry.counter("opty.pending.dropped", "reason", reason).increment();
+        }
+    }
+
+
+    /**
+     * Gets the buffer of a session, replacing a stale buffer left in its slot by a removed session.
+     *
+     * @return the buffer, or null if the session is gone (never replaces the buffer of the slot's new session)
+     */
+    private SessionBuffer bufferFor(long sessionId) {
+        int slot = sessionManager.getSessionSlot(sessionId);
+        while (true) {
+            SessionBuffer current = buffers.get(slot);
+            if (current != null && current.sessionId == sessionId) {
+                return current;
+            }
+            if (sessionManager.getSession(sessionId).isEmpty()) {
+                return null;
+            }
+            SessionBuffer created = new SessionBuffer(sessionId);
+            if (buffers.compareAndSet(slot, current, created)) {
+                if (current != null) {
+                    current.entries.forEach(Entry::release);
+                }
+                return created;
+            }
+        }
+    }
+
+
+    /**
+     * Gets the buffer of a session if it has one.
+     */
+    private SessionBuffer existingBuffer(long sessionId) {
+        SessionBuffer buffer = buffers.get(sessionManager.getSessionSlot(sessionId));
+        return buffer != null && buffer.sessionId == sessionId ? buffer : null;
+    }
+
+
+    /**
+     * Gets the UTF-8 encoded length of a message (what it costs on the wire), without encoding it.
+     *
+     * @param json the encoded message
+     * @return its length in bytes
+     */
+    public static int utf8Length(String json) {
+        int length = 0;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < json.length() && Character.isLowSurrogate(json.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+
+    /**
+     * Messages held for one session.
+     */
+    private static final class SessionBuffer {
+        private final long sessionId;
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+        private SessionBuffer(long sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+
+
+    /**
+     * One held message; released once (acknowledged, expired, evicted or discarded).
+     */
+    private final class Entry {
+        private final long seq;
+        private final boolean toSupervisor;
+        private final long expiresAtMillis;
+        private final int size;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile String json;
+
+        private Entry(long seq, boolean toSupervisor, long expiresAtMillis, String json) {
+            this.seq = seq;
+            this.toSupervisor = toSupervisor;
+            this.expiresAtMillis = expiresAtMillis;
+            this.size = utf8Length(json);
+            this.json = json;
+        }
+
+        private boolean isReleased() {
+            return released.get();
+        }
+
+        private boolean release() {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+            json = null;
+            bytes.addAndGet(-size);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Per-session delivery lanes.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Serial execution lanes for session deliveries (thread-safe).
+ *
+ * Each session gets a mailbox drained by a shared pool, one task at a time, so deliveries within a
+ * session keep their submission order while different sessions run in parallel, without locks.
+ * Sequenced tasks receive the next sequence number of their session. Lanes are kept in an array
+ * indexed by session registry slot and created on first use by a registered session.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SessionLanes {
+
+    // --- ATTRIBUTES ---
+    private static final int DRAIN_BATCH = 64;
+    private final AppConfig appConfig;
+    private final SessionManager sessionManager;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger queued = new AtomicInteger();
+    private AtomicReferenceArray<Lane> lanes;
+    private ExecutorService pool;
+
+
+    /**
+     * Creates the lane table and starts the delivery pool.
+     */
+    @PostConstruct
+    public void start() {
+        int configured = appConfig.getMessage().getDeliveryThreads();
+        int threads = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        lanes = new AtomicReferenceArray<>(sessionManager.getSessionSlotCount());
+        pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "opty-delivery-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        log.info("Session lanes started: threads={}, laneCapacity={}",
+                threads, appConfig.getMessage().getQueueCapacity());
+    }
+
+
+    /**
+     * Stops the delivery pool.
+     */
+    @PreDestroy
+    public void stop() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * Queues a peer message delivery on a session's lane, bounded by {@code message.queue-capacity}.
+     *
+     * @param sessionId the internal session ID
+     * @param task      the delivery, receiving the session sequence number
+     * @return true if queued, false if the lane is full or the session is gone
+     */
+    public boolean offer(long sessionId, LongConsumer task) {
+        Lane lane = laneFor(sessionId);
+        if (lane == null) {
+            log.debug("Session gone, delivery not queued: sessionId={}", sessionId);
+            return false;
+        }
+        if (lane.pending.incrementAndGet() > appConfig.getMessage().getQueueCapacity()) {
+            lane.pending.decrementAndGet();
+            meterRegistry.counter("opty.delivery.rejected").increment();
+            return false;
+        }
+        lane.submit(task);
+        return true;
+    }
+
+
+    /**
+     * Queues a server notification on a session's lane (not bounded; dropped only if the session is gone).
+     *
+     * @param sessionId the internal session ID
+     * @param task      the delivery, receiving the session sequence number
+     */
+    public void execute(long sessionId, LongConsumer task) {
+        Lane lane = laneFor(sessionId);
+        if (lane == null) {
+            log.debug("Session gone, task dropped: sessionId={}", sessionId);
+            return;
+        }
+        lane.pending.incrementAndGet();
+        lane.submit(task);
+    }
+
+
+    /**
+     * Queues a task on a session's lane that does not consume a sequence number (not bounded).
+     *
+     * @param sessionId the internal session ID
+     * @param task      the task
+     */
+    public void run(long sessionId, Runnable task) {
+        execute(sessionId, new Unsequenced(task));
+    }
+
+
+    /**
+     * Gets the number of tasks waiting in all lanes (delivery backlog).
+     */
+    public int getQueuedTasks() {
+        return queued.get();
+    }
+
+
+    /**
+     * Gets the lane of a session, replacing a stale lane left in its slot by a removed session.
+     *
+     * Only a registered session may take over its slot: a late call for a removed session keeps using
+     * its own lane if still in place, and otherwise gets none, so it never evicts the lane of the session
+     * now holding the slot.
+     *
+     * @return the lane, or null if the session is gone and its lane was replaced
+     */
+    private Lane laneFor(long sessionId) {
+        int slot = sessionManager.getSessionSlot(sessionId);
+        while (true) {
+            Lane current = lanes.get(slot);
+            if (current != null && current.sessionId == sessionId) {
+                return current;
+            }
+            if (sessionManager.getSession(sessionId).isEmpty()) {
+                return null;
+            }
+            Lane created = new Lane(sessionId);
+            if (lanes.compareAndSet(slot, current, created)) {
+                return created;
+            }
+        }
+    }
+
+
+    /**
+     * Mailbox of one session; at most one pool thread drains it at a time.
+     */
+    private final class Lane implements Runnable {
+
+        private final long sessionId;
+        private final ConcurrentLinkedQueue<LongConsumer> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private long seq; // only touched by the draining thread (ordered by the scheduled flag)
+
+        private Lane(long sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        private void submit(LongConsumer task) {
+            queued.incrementAndGet();
+            mailbox.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    pool.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    log.debug("Delivery pool stopped, lane not drained: sessionId={}", sessionId);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            // Drain a bounded batch, then yield the thread to other lanes
+            LongConsumer task;
+            for (int i = 0; i < DRAIN_BATCH && (task = mailbox.poll()) != null; i++) {
+                pending.decrementAndGet();
+                queued.decrementAndGet();
+                try {
+                    if (task instanceof Unsequenced unsequenced) {
+                        unsequenced.task.run();
+                    } else {
+                        task.accept(++seq);
+                    }
+                } catch (Exception e) {
+                    log.error("Session delivery failed: sessionId={}, error={}", sessionId, e.getMessage(), e);
+                }
+            }
+
+            scheduled.set(false);
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+
+    /**
+     * Lane task that runs without a sequence number.
+     */
+    private record Unsequenced(Runnable task) implements LongConsumer {
+
+        @Override
+        public void accept(long seq) {
+            task.run();
+        }
+    }
+}
@@ -11,14 +11,27 @@ package com.opty.socket.service;
 import com.opty.socket.config.AppConfig;
 import com.opty.socket.model.ConnectionInfo;
 import com.opty.socket.model.Session;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
 
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 
@@ -28,168 +41,553 @@ import java.util.stream.Collectors;
 
 /**
  * Manages sessions and WebSocket connections (thread-safe).
+ *
+ * Sessions and connections live in index-addressed slabs keyed by internal long IDs. String IDs only
+ * exist at the protocol edge: the external session ID sent to clients, and the container's WebSocket
+ * session, which carries its internal connection ID in {@link #CONNECTION_ID_ATTRIBUTE}.
+ *
+ * Session state changes (create, pair, unpair, activity, remove) are partitioned by session ID over
+ * single-threaded shards, so every change to one session (and its queue entry and connection links)
+ * is applied in order by one writer. Reads never go through a shard. Supervisor capacity spans shards
+ * and stays a CAS on the supervisor's connection entry. Each tenant has its own waiting queue, so queue
+ * reads for one tenant never scan another's sessions. Lifecycle changes are recorded in the
+ * {@link EventJournal} rather than logged one by one.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class SessionManager {
 
     // --- ATTRIBUTES ---
+    public static final String CONNECTION_ID_ATTRIBUTE = "opty.connectionId";
+    private static final SecureRandom RANDOM = new SecureRandom();
     private final AppConfig appConfig;
-    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, String> connectionIdToSessionId = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, ConnectionInfo> connections = new ConcurrentHashMap<>();
+    private final EventJournal eventJournal;
+    private final LongSlab<Session> sessions;
+    private final LongSlab<ConnectionInfo> connections;
+    private final Map<String, WaitingQueue> waitingQueues = new ConcurrentHashMap<>();
+    private final ExecutorService[] shards;
+    private final Thread[] shardThreads;
 
 
     /**
-     * Creates a new session for a client.
+     * Creates the registries, sized from the max connections limit, and the session shards.
+     */
+    public SessionManager(AppConfig appConfig, EventJournal eventJournal) {
+        this.appConfig = appConfig;
+        this.eventJournal = eventJournal;
+        this.sessions = new LongSlab<>(appConfig.getMaxConnections(), Session::id);
+        this.connections = new LongSlab<>(appConfig.getMaxConnections(), ConnectionInfo::connectionId);
+
+        int shardCount = appConfig.getSession().getShards() > 0
+                ? appConfig.getSession().getShards()
+                : Runtime.getRuntime().availableProcessors();
+        this.shards = new ExecutorService[shardCount];
+        this.shardThreads = new Thread[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            shards[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "opty-session-shard-" + shard);
+                thread.setDaemon(true);
+                shardThreads[shard] = thread;
+                return thread;
+            });
+        }
+        log.info("Session manager started: shards={}, registryCapacity={}", shardCount, connections.capacity());
+    }
+
+
+    /**
+     * Stops the session shards.
+     */
+    @PreDestroy
+    public void stop() {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+
+    /**
+     * Gets the internal connection ID of a WebSocket session.
+     *
+     * @param session the WebSocket session (raw or decorated)
+     * @return the connection ID, or {@link Session#NO_CONNECTION} if not registered
+     */
+    public static long connectionIdOf(WebSocketSession session) {
+        return session.getAttributes().get(CONNECTION_ID_ATTRIBUTE) instanceof Long id ? id : Session.NO_CONNECTION;
+    }
+
+
+    /**
+     * Creates a new session for a client and places it in the waiting queue.
      *
      * @param clientConnectionId the client connection ID
+     * @param tier               the queue tier requested by the client, may be null
+     * @param priority           the priority requested by the client (clamped to the configured maximum)
      * @return the newly created session
+     * @throws IllegalStateException if the session registry is full
+     */
+    public Session createSession(long clientConnectionId, String tier, int priority) {
+        return createSession(clientConnectionId, appConfig.getTenant().getDefaultTenant(), tier, priority, new String[0]);
+    }
+
+
+    /**
+     * Creates a new session for a client of a tenant with routing tags and places it in the waiting queue.
+     *
+     * A known tier is added as the {@code tier:<name>} tag.
+     *
+     * @param clientConnectionId the client connection ID
+     * @param tenant             the tenant of the client connection (null for the default tenant)
+     * @param tier               the queue tier requested by the client, may be null
+     * @param priority           the priority requested by the client (clamped to the configured maximum)
+     * @param tags               the normalized routing tags requested by the client
+     * @return the newly created session
+     * @throws IllegalStateException if the session registry is full
+     */
+    public Session createSession(long clientConnectionId, String tenant, String tier, int priority, String[] tags) {
+        return createSession(clientConnectionId, tenant, tier, priority, tags, false);
+    }
+
+
+    /**
+     * Creates a synthetic session (warm-up traffic) and places it in the waiting queue of its tenant.
+     *
+     * Synthetic sessions are routed like real ones but their messages are not persisted and they are
+     * left out of the session snapshot.
+     *
+     * @param clientConnectionId the client connection ID
+     * @param tenant             the tenant of the synthetic traffic
+     * @param priority           the queue priority (clamped to the configured maximum)
+     * @return the newly created session
+     * @throws IllegalStateException if the session registry is full
+     */
+    public Session createSyntheticSession(long clientConnectionId, String tenant, int priority) {
+        return createSession(clientConnectionId, tenant, null, priority, new String[0], true);
+    }
+
+
+    /**
+     * Creates a session and places it in the waiting queue of its tenant.
      */
-    public Session createSession(String clientConnectionId) {
-        String sessionId = UUID.randomUUID().toString();
-        Session session = new Session(sessionId, clientConnectionId);
+    private Session createSession(long clientConnectionId, String tenant, String tier, int priority, String[] tags,
+                                  boolean synthetic) {
+        AppConfig.QueueConfig queueConfig = appConfig.getQueue();
+        AppConfig.TierConfig tierConfig = tier != null ? queueConfig.getTiers().get(tier) : null;
+
+        // Resolve priority and SLA deadline from tier and requested priority
+        int clientPriority = Math.max(0, Math.min(priority, queueConfig.getMaxClientPriority()));
+        int effectivePriority = clientPriority + (tierConfig != null ? tierConfig.getPriority() : 0);
+        int slaSeconds = tierConfig != null ? tierConfig.getSlaSeconds() : queueConfig.getDefaultSlaSeconds();
+        Instant slaDeadline = Instant.now().plusSeconds(slaSeconds);
+
+        String sessionTenant = tenant != null ? tenant : appConfig.getTenant().getDefaultTenant();
+        String[] sessionTags = tags;
+        if (tierConfig != null) {
+            sessionTags = Arrays.copyOf(tags, tags.length + 1);
+            sessionTags[tags.length] = "tier:" + tier;
+        }
+        String[] routingTags = sessionTags;
 
-        sessions.put(sessionId, session);
-        connectionIdToSessionId.put(clientConnectionId, sessionId);
+        Session session = sessions.allocate(id -> new Session(id, externalSessionId(id), resumeToken(), clientConnectionId,
+                sessionTenant, tierConfig != null ? tier : null, effectivePriority, slaDeadline, routingTags, synthetic));
+        if (session == null) {
+            throw new IllegalStateException("Session registry full");
+        }
+
+        onShard(session.id(), () -> {
+            connections.update(clientConnectionId, conn -> conn.withSession(session.id()));
+            return waitingQueue(session.tenant()).enqueue(session.id(), queueRank(session));
+        });
 
-        log.info("Session created: sessionId={}, clientConnectionId={}, total={}",
-                sessionId, clientConnectionId, sessions.size());
+        eventJournal.record(EventJournal.Event.SESSION_CREATED, clientConnectionId, session.sessionId(), sessions.size());
 
         return session;
     }
 
 
     /**
-     * Pairs a supervisor with an existing session.
+     * Restores a session of a previous process for the client that reclaimed it and places it back in
+     * the waiting queue at its original position.
      *
-     * @param sessionId             the session ID to join
-     * @param supervisorConnectionId the supervisor connection ID
-     * @return the updated session if successful, empty if session not found
-     */
-    public Optional<Session> pairSupervisor(String sessionId, String supervisorConnectionId) {
-        Session updatedSession = sessions.computeIfPresent(sessionId, (id, session) -> {
-            if (session.isPaired()) {
-                log.warn("Session already paired: sessionId={}, existing={}, attempted={}",
-                        sessionId, session.supervisorConnectionId(), supervisorConnectionId);
-                return session; // Don't allow re-pairing
+     * The session keeps its ID if the registry slot is free; otherwise it gets a new one.
+     *
+     * @param clientConnectionId the reclaiming client connection ID
+     * @param snapshot           the session as it was saved, with its resume token
+     * @return the restored session
+     * @throws IllegalStateException if the session registry is full
+     */
+    public Session restoreSession(long clientConnectionId, Session snapshot) {
+        Session restored = snapshot.reclaimedBy(snapshot.id(), snapshot.sessionId(), clientConnectionId);
+        if (!sessions.allocateAt(restored.id(), restored)) {
+            restored = sessions.allocate(id -> snapshot.reclaimedBy(id, externalSessionId(id), clientConnectionId));
+            if (restored == null) {
+                throw new IllegalStateException("Session registry full");
             }
-            return session.withSupervisor(supervisorConnectionId);
+        }
+
+        Session session = restored;
+        onShard(session.id(), () -> {
+            connections.update(clientConnectionId, conn -> conn.withSession(session.id()));
+            return waitingQueue(session.tenant()).enqueue(session.id(), queueRank(session));
         });
 
-        if (updatedSession != null && updatedSession.isPaired()) {
-            connectionIdToSessionId.put(supervisorConnectionId, sessionId);
-            log.info("Supervisor paired: sessionId={}, supervisorConnectionId={}",
-                    sessionId, supervisorConnectionId);
-            return Optional.of(updatedSession);
-        }
+        eventJournal.record(EventJournal.Event.SESSION_RESTORED, clientConnectionId, session.sessionId(), sessions.size());
+        return session;
+    }
 
-        return Optional.empty();
+
+    /**
+     * Keeps session IDs up to a given ID free for sessions restored from a snapshot.
+     *
+     * @param maxSessionId the highest session ID in the snapshot
+     */
+    public void reserveSessionIds(long maxSessionId) {
+        sessions.reserveIds(maxSessionId);
+    }
+
+
+    /**
+     * Pairs a supervisor with an existing session.
+     *
+     * A supervisor connection may hold several sessions at once, up to
+     * {@code opty.socket.supervisor.max-sessions}.
+     *
+     * @param sessionId              the internal session ID to join
+     * @param supervisorConnectionId the supervisor connection ID
+     * @return the updated session if successful, empty if session not found, already paired or at capacity
+     */
+    public Optional<Session> pairSupervisor(long sessionId, long supervisorConnectionId) {
+        return onShard(sessionId, () -> applyPairSupervisor(sessionId, supervisorConnectionId));
     }
 
 
     /**
      * Unpairs the supervisor from a session, keeping the session active for the client.
      *
-     * @param sessionId the session ID
-     * @return the unpaired session if successful, empty if session not found
+     * @param sessionId the internal session ID
+     * @return the unpaired session if successful, empty if session not found or not paired
      */
-    public Optional<Session> unpairSupervisor(String sessionId) {
-        Session unpairedSession = sessions.computeIfPresent(sessionId, (id, session) -> {
-            if (!session.isPaired()) {
-                log.warn("Session not paired, cannot unpair: sessionId={}", sessionId);
-                return session;
-            }
+    public Optional<Session> unpairSupervisor(long sessionId) {
+        return onShard(sessionId, () -> applyUnpairSupervisor(sessionId));
+    }
 
-            // Remove supervisor connection ID mapping
-            connectionIdToSessionId.remove(session.supervisorConnectionId());
 
-            // Create new session without supervisor
-            return new Session(session.sessionId(), session.clientConnectionId());
-        });
+    /**
+     * Adds an observer to a session (a supervisor watching without being the paired party).
+     *
+     * Observing counts against the supervisor's {@code max-sessions}. Messages of the session are
+     * fanned out to observers, and observers may post into the session.
+     *
+     * @param sessionId            the internal session ID
+     * @param observerConnectionId the observing supervisor connection ID
+     * @return the updated session if added, empty if not found, full, already a member or at capacity
+     */
+    public Optional<Session> addObserver(long sessionId, long observerConnectionId) {
+        return onShard(sessionId, () -> applyAddObserver(sessionId, observerConnectionId));
+    }
+
+
+    /**
+     * Removes an observer from a session.
+     *
+     * @param sessionId            the internal session ID
+     * @param observerConnectionId the observing connection ID
+     * @return the updated session if removed, empty if not found or not observing
+     */
+    public Optional<Session> removeObserver(long sessionId, long observerConnectionId) {
+        return onShard(sessionId, () -> applyRemoveObserver(sessionId, observerConnectionId));
+    }
+
 
-        if (unpairedSession != null && !unpairedSession.isPaired()) {
-            log.info("Supervisor unpaired from session: sessionId={}", sessionId);
-            return Optional.of(unpairedSession);
+    /**
+     * Adds an observer to a session (on the session's shard).
+     */
+    private Optional<Session> applyAddObserver(long sessionId, long observerConnectionId) {
+        Session current = sessions.get(sessionId);
+        if (current == null || current.isMember(observerConnectionId)
+                || current.observerConnectionIds().length >= appConfig.getSession().getMaxObservers()) {
+            return Optional.empty();
         }
 
+        if (!reserveSupervisorSlot(observerConnectionId, sessionId)) {
+            log.warn("Supervisor at capacity, cannot observe: supervisorConnectionId={}", observerConnectionId);
+            return Optional.empty();
+        }
+
+        Session updated = sessions.update(sessionId, session -> session.withObserver(observerConnectionId));
+        eventJournal.record(EventJournal.Event.OBSERVER_JOINED, observerConnectionId, updated.sessionId(),
+                updated.memberConnectionIds().length);
+        return Optional.of(updated);
+    }
+
+
+    /**
+     * Removes an observer from a session (on the session's shard).
+     */
+    private Optional<Session> applyRemoveObserver(long sessionId, long observerConnectionId) {
+        Session current = sessions.get(sessionId);
+        if (current == null || !current.isObserver(observerConnectionId)) {
+            return Optional.empty();
+        }
+
+        Session updated = sessions.update(sessionId, session -> session.withoutObserver(observerConnectionId));
+        releaseSupervisorSlot(observerConnectionId, sessionId);
+
+        eventJournal.record(EventJournal.Event.OBSERVER_LEFT, observerConnectionId, updated.sessionId(), 0);
+        return Optional.of(updated);
+    }
+
+
+    /**
+     * Pairs a supervisor with a session (on the session's shard).
+     */
+    private Optional<Session> applyPairSupervisor(long sessionId, long supervisorConnectionId) {
+
+        // Reserve a slot on the supervisor connection first (atomic capacity check)
+        if (!reserveSupervisorSlot(supervisorConnectionId, sessionId)) {
+            log.warn("Supervisor at capacity: supervisorConnectionId={}, max={}",
+                    supervisorConnectionId, appConfig.getSupervisor().getMaxSessions());
+            return Optional.empty();
+        }
+
+        Session updatedSession = sessions.update(sessionId, session ->
+                session.isPaired() ? session : session.withSupervisor(supervisorConnectionId));
+
+        if (updatedSession != null && updatedSession.supervisorConnectionId() == supervisorConnectionId) {
+            waitingQueue(updatedSession.tenant()).remove(sessionId, queueRank(updatedSession));
+            eventJournal.record(EventJournal.Event.SUPERVISOR_PAIRED, supervisorConnectionId, updatedSession.sessionId(),
+                    getSupervisorSessionCount(supervisorConnectionId));
+            return Optional.of(updatedSession);
+        }
+
+        if (updatedSession != null) {
+            log.warn("Session already paired: sessionId={}, existing={}, attempted={}",
+                    updatedSession.sessionId(), updatedSession.supervisorConnectionId(), supervisorConnectionId);
+        }
+
+        // Pairing failed: release the reserved slot
+        releaseSupervisorSlot(supervisorConnectionId, sessionId);
         return Optional.empty();
     }
 
 
     /**
-     * Gets a session by session ID.
+     * Unpairs the supervisor from a session (on the session's shard).
+     */
+    private Optional<Session> applyUnpairSupervisor(long sessionId) {
+        Session current = sessions.get(sessionId);
+        if (current == null || !current.isPaired()) {
+            log.warn("Session not paired, cannot unpair: sessionId={}", current != null ? current.sessionId() : sessionId);
+            return Optional.empty();
+        }
+
+        Session unpaired = sessions.update(sessionId, Session::withoutSupervisor);
+
+        // Remove session from the supervisor's sessions
+        releaseSupervisorSlot(current.supervisorConnectionId(), sessionId);
+
+        // Back to the waiting queue at its original position
+        waitingQueue(unpaired.tenant()).enqueue(sessionId, queueRank(unpaired));
+
+        eventJournal.record(EventJournal.Event.SUPERVISOR_UNPAIRED, current.supervisorConnectionId(), unpaired.sessionId(), 0);
+        return Optional.of(unpaired);
+    }
+
+
+    /**
+     * Gets a session by internal ID.
      *
-     * @param sessionId the session ID
+     * @param sessionId the internal session ID
      * @return the session, or empty if not found
      */
-    public Optional<Session> getSession(String sessionId) {
+    public Optional<Session> getSession(long sessionId) {
         return Optional.ofNullable(sessions.get(sessionId));
     }
 
 
     /**
-     * Gets a session by connection ID (client or supervisor).
+     * Gets the registry slot of a session (stable while the session exists).
+     *
+     * @param sessionId the internal session ID
+     */
+    public int getSessionSlot(long sessionId) {
+        return sessions.indexOf(sessionId);
+    }
+
+
+    /**
+     * Gets the number of session registry slots.
+     */
+    public int getSessionSlotCount() {
+        return sessions.capacity();
+    }
+
+
+    /**
+     * Gets a session by the external session ID exchanged with clients.
+     *
+     * @param sessionId the external session ID
+     * @return the session, or empty if not found or malformed
+     */
+    public Optional<Session> findSession(String sessionId) {
+        if (sessionId == null) {
+            return Optional.empty();
+        }
+        int separator = sessionId.indexOf('.');
+        if (separator <= 0) {
+            return Optional.empty();
+        }
+
+        long id;
+        try {
+            id = Long.parseLong(sessionId, 0, separator, Character.MAX_RADIX);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+
+        // The random suffix must match too, so stale or guessed IDs never resolve
+        Session session = sessions.get(id);
+        return session != null && session.sessionId().equals(sessionId) ? Optional.of(session) : Optional.empty();
+    }
+
+
+    /**
+     * Gets the session of a client connection.
+     *
+     * Supervisor connections may hold several sessions; use
+     * {@link #getSessionForConnection(long, String)} or {@link #getSessionsByConnectionId(long)} instead.
      *
      * @param connectionId the connection ID
      * @return the session, or empty if not found
      */
-    public Optional<Session> getSessionByConnectionId(String connectionId) {
-        String sessionId = connectionIdToSessionId.get(connectionId);
-        if (sessionId == null) {
+    public Optional<Session> getSessionByConnectionId(long connectionId) {
+        ConnectionInfo conn = connections.get(connectionId);
+        if (conn == null || !conn.isClient() || conn.sessionCount() == 0) {
             return Optional.empty();
         }
-        return getSession(sessionId);
+        return getSession(conn.sessionIds()[0]);
     }
 
+
     /**
-     * Updates the last activity time for a session.
+     * Resolves the session a connection is addressing.
+     *
+     * If a session ID is given, the connection must be a member of that session (party or observer).
+     * Otherwise the connection's only session is returned (client, or supervisor holding one session).
      *
-     * @param sessionId the session ID
-     * @return true if updated successfully, false if session not found
+     * @param connectionId the connection ID (client or supervisor)
+     * @param sessionId    the addressed external session ID, may be null
+     * @return the session, or empty if not found or not a member
      */
-    public boolean updateSessionActivity(String sessionId) {
-        return sessions.computeIfPresent(sessionId, (id, session) ->
-                session.withLastActivity()
-        ) != null;
+    public Optional<Session> getSessionForConnection(long connectionId, String sessionId) {
+        if (sessionId != null && !sessionId.isBlank()) {
+            return findSession(sessionId)
+                    .filter(session -> session.isMember(connectionId));
+        }
+
+        // Without explicit sessionId: only unambiguous if holding a single session
+        ConnectionInfo conn = connections.get(connectionId);
+        if (conn != null && conn.sessionCount() == 1) {
+            return getSession(conn.sessionIds()[0]);
+        }
+        return Optional.empty();
+    }
+
+
+    /**
+     * Gets all sessions a connection takes part in.
+     *
+     * @param connectionId the connection ID (client or supervisor)
+     * @return list of sessions (at most one for clients)
+     */
+    public List<Session> getSessionsByConnectionId(long connectionId) {
+        ConnectionInfo conn = connections.get(connectionId);
+        if (conn == null) {
+            return List.of();
+        }
+        return Arrays.stream(conn.sessionIds())
+                .mapToObj(sessions::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+
+    /**
+     * Gets the number of sessions a supervisor connection currently holds.
+     *
+     * @param supervisorConnectionId the supervisor connection ID
+     */
+    public int getSupervisorSessionCount(long supervisorConnectionId) {
+        ConnectionInfo conn = connections.get(supervisorConnectionId);
+        return conn == null ? 0 : conn.sessionCount();
+    }
+
+
+    /**
+     * Checks if a supervisor connection can still join sessions.
+     *
+     * @param supervisorConnectionId the supervisor connection ID
+     */
+    public boolean hasSupervisorCapacity(long supervisorConnectionId) {
+        return getSupervisorSessionCount(supervisorConnectionId) < appConfig.getSupervisor().getMaxSessions();
+    }
+
+
+    /**
+     * Updates the last activity time for a session (applied asynchronously on the session's shard).
+     *
+     * @param sessionId the internal session ID
+     */
+    public void updateSessionActivity(long sessionId) {
+        onShardAsync(sessionId, () -> sessions.update(sessionId, Session::withLastActivity));
     }
 
 
     /**
      * Removes a session.
      *
-     * @param sessionId the session ID to remove
+     * @param sessionId the internal session ID to remove
      * @return the removed session, or empty if not found
      */
-    public Optional<Session> removeSession(String sessionId) {
+    public Optional<Session> removeSession(long sessionId) {
+        return onShard(sessionId, () -> applyRemoveSession(sessionId));
+    }
+
+
+    /**
+     * Removes a session (on the session's shard).
+     */
+    private Optional<Session> applyRemoveSession(long sessionId) {
         Session removed = sessions.remove(sessionId);
         if (removed != null) {
+            waitingQueue(removed.tenant()).remove(sessionId, queueRank(removed));
+
             // Clean up connection mappings
-            connectionIdToSessionId.remove(removed.clientConnectionId());
-            if (removed.supervisorConnectionId() != null) {
-                connectionIdToSessionId.remove(removed.supervisorConnectionId());
+            connections.update(removed.clientConnectionId(), conn -> conn.withoutSession(sessionId));
+            if (removed.isPaired()) {
+                releaseSupervisorSlot(removed.supervisorConnectionId(), sessionId);
+            }
+            for (long observer : removed.observerConnectionIds()) {
+                releaseSupervisorSlot(observer, sessionId);
             }
 
-            log.info("Session removed: sessionId={}, total={}",
-                    sessionId, sessions.size());
+            eventJournal.record(EventJournal.Event.SESSION_REMOVED, removed.clientConnectionId(), removed.sessionId(),
+                    sessions.size());
         }
         return Optional.ofNullable(removed);
     }
 
 
     /**
-     * Removes a session by connection ID.
+     * Removes a session by client connection ID.
      *
-     * @param connectionId the connection ID (client or supervisor)
+     * @param connectionId the client connection ID
      * @return the removed session, or empty if not found
      */
-    public Optional<Session> removeSessionByConnectionId(String connectionId) {
-        String sessionId = connectionIdToSessionId.get(connectionId);
-        if (sessionId == null) {
-            return Optional.empty();
-        }
-        return removeSession(sessionId);
+    public Optional<Session> removeSessionByConnectionId(long connectionId) {
+        return getSessionByConnectionId(connectionId)
+                .flatMap(session -> removeSession(session.id()));
     }
 
 
@@ -199,7 +597,7 @@ public class SessionManager {
      * @return list of all sessions
      */
     public List<Session> getAllSessions() {
-        return List.copyOf(sessions.values());
+        return sessions.stream().collect(Collectors.toList());
     }
 
     /**
@@ -208,24 +606,74 @@ public class SessionManager {
      * @return list of paired sessions
      */
     public List<Session> getPairedSessions() {
-        return sessions.values().stream()
+        return sessions.stream()
                 .filter(Session::isPaired)
                 .collect(Collectors.toList());
     }
 
 
     /**
-     * Gets all unpaired sessions (waiting for supervisor).
+     * Gets all unpaired sessions (waiting for supervisor) of every tenant, each tenant's most urgent first.
      *
-     * @return list of unpaired sessions
+     * @return list of unpaired sessions in queue order per tenant
      */
     public List<Session> getUnpairedSessions() {
-        return sessions.values().stream()
-                .filter(session -> !session.isPaired())
+        List<Session> unpaired = new ArrayList<>();
+        for (String tenant : waitingQueues.keySet()) {
+            unpaired.addAll(getUnpairedSessions(tenant));
+        }
+        return unpaired;
+    }
+
+
+    /**
+     * Gets the unpaired sessions of one tenant, most urgent first (other tenants' queues are not scanned).
+     *
+     * @param tenant the tenant
+     * @return list of the tenant's unpaired sessions in queue order
+     */
+    public List<Session> getUnpairedSessions(String tenant) {
+        WaitingQueue waitingQueue = waitingQueues.get(tenant);
+        if (waitingQueue == null) {
+            return List.of();
+        }
+        return Arrays.stream(waitingQueue.sessionIds())
+                .mapToObj(sessions::get)
+                .filter(session -> session != null && !session.isPaired())
                 .collect(Collectors.toList());
     }
 
-    
+
+    /**
+     * Pairs a supervisor with the most urgent waiting session of its tenant that it can take.
+     *
+     * @param supervisorConnectionId the supervisor connection ID
+     * @param tenant                 the supervisor's tenant, null for the default (only this tenant's queue is scanned)
+     * @param eligible               filters the sessions the supervisor may take (e.g. by routing tags)
+     * @return the paired session, or empty if none is eligible or the supervisor is at capacity
+     */
+    public Optional<Session> pairNextWaiting(long supervisorConnectionId, String tenant, Predicate<Session> eligible) {
+        WaitingQueue waitingQueue = waitingQueues.get(tenant != null ? tenant : appConfig.getTenant().getDefaultTenant());
+        if (waitingQueue == null) {
+            return Optional.empty();
+        }
+        for (long sessionId : waitingQueue.sessionIds()) {
+            if (!hasSupervisorCapacity(supervisorConnectionId)) {
+                return Optional.empty();
+            }
+            Session candidate = sessions.get(sessionId);
+            if (candidate == null || !eligible.test(candidate)) {
+                continue;
+            }
+            Optional<Session> paired = pairSupervisor(sessionId, supervisorConnectionId);
+            if (paired.isPresent()) {
+                return paired;
+            }
+        }
+        return Optional.empty();
+    }
+
+
     /**
      * Cleans up expired sessions.
      *
@@ -233,18 +681,19 @@ public class SessionManager {
      */
     public int cleanupExpiredSessions() {
         int timeoutMinutes = appConfig.getSession().getTimeoutMinutes();
-        List<String> expiredSessionIds = sessions.values().stream()
+        long[] expiredSessionIds = sessions.stream()
                 .filter(session -> session.isExpired(timeoutMinutes))
-                .map(Session::sessionId)
-                .collect(Collectors.toList());
+                .mapToLong(Session::id)
+                .toArray();
 
-        expiredSessionIds.forEach(this::removeSession);
+        Arrays.stream(expiredSessionIds).forEach(this::removeSession);
 
-        if (!expiredSessionIds.isEmpty()) {
-            log.info("Cleaned up {} expired sessions", expiredSessionIds.size());
+        if (expiredSessionIds.length > 0) {
+            eventJournal.record(EventJournal.Event.SESSIONS_EXPIRED, Session.NO_CONNECTION, null, expiredSessionIds.length);
+            log.info("Cleaned up {} expired sessions", expiredSessionIds.length);
         }
 
-        return expiredSessionIds.size();
+        return expiredSessionIds.length;
     }
 
 
@@ -260,7 +709,7 @@ public class SessionManager {
      * Gets the number of paired sessions.
      */
     public int getPairedSessionCount() {
-        return (int) sessions.values().stream()
+        return (int) sessions.stream()
                 .filter(Session::isPaired)
                 .count();
     }
@@ -269,24 +718,30 @@ public class SessionManager {
     // ========== Connection Management Methods ==========
 
     /**
-     * Registers a new connection.
+     * Registers a new connection and tags the WebSocket session with its internal connection ID.
      *
-     * @param connectionInfo the connection information
-     * @return true if registered successfully, false if max connections reached
+     * @param webSocketSession the session to send through (attributes are shared with the raw session)
+     * @param connectionType   CLIENT or SUPERVISOR
+     * @return the registered connection, or empty if max connections reached
      */
-    public boolean registerConnection(ConnectionInfo connectionInfo) {
+    public Optional<ConnectionInfo> registerConnection(WebSocketSession webSocketSession, String connectionType) {
         if (connections.size() >= appConfig.getMaxConnections()) {
             log.warn("Max connections reached: {}/{}", connections.size(), appConfig.getMaxConnections());
-            return false;
+            return Optional.empty();
         }
 
-        connections.put(connectionInfo.connectionId(), connectionInfo);
-        log.info("Connection registered: connectionId={}, type={}, total={}",
-                connectionInfo.connectionId(),
-                connectionInfo.connectionType(),
+        ConnectionInfo connectionInfo = connections.allocate(id ->
+                new ConnectionInfo(id, webSocketSession, connectionType));
+        if (connectionInfo == null) {
+            log.warn("Connection registry full: capacity={}", connections.capacity());
+            return Optional.empty();
+        }
+
+        webSocketSession.getAttributes().put(CONNECTION_ID_ATTRIBUTE, connectionInfo.connectionId());
+        eventJournal.record(EventJournal.Event.CONNECTION_REGISTERED, connectionInfo.connectionId(), null,
                 connections.size());
 
-        return true;
+        return Optional.of(connectionInfo);
     }
 
 
@@ -296,13 +751,10 @@ public class SessionManager {
      * @param connectionId the connection ID to remove
      * @return the removed connection info, or empty if not found
      */
-    public Optional<ConnectionInfo> removeConnection(String connectionId) {
+    public Optional<ConnectionInfo> removeConnection(long connectionId) {
         ConnectionInfo removed = connections.remove(connectionId);
         if (removed != null) {
-            log.info("Connection removed: connectionId={}, type={}, total={}",
-                    connectionId,
-                    removed.connectionType(),
-                    connections.size());
+            eventJournal.record(EventJournal.Event.CONNECTION_REMOVED, connectionId, null, connections.size());
         }
         return Optional.ofNullable(removed);
     }
@@ -314,49 +766,51 @@ public class SessionManager {
      * @param connectionId the connection ID
      * @return the connection info, or empty if not found
      */
-    public Optional<ConnectionInfo> getConnection(String connectionId) {
+    public Optional<ConnectionInfo> getConnection(long connectionId) {
         return Optional.ofNullable(connections.get(connectionId));
     }
 
 
     /**
-     * Updates the session ID for a connection.
+     * Gets the registry slot of a connection (stable while the connection is registered).
+     *
+     * Lets other services keep per-connection state in plain arrays indexed by slot.
      *
      * @param connectionId the connection ID
-     * @param sessionId    the session ID to associate
-     * @return true if updated successfully, false if connection not found
      */
-    public boolean updateSessionId(String connectionId, String sessionId) {
-        return connections.computeIfPresent(connectionId, (id, info) -> {
-            log.debug("Updated sessionId for connection: connectionId={}, sessionId={}",
-                    connectionId, sessionId);
-            return info.withSessionId(sessionId);
-        }) != null;
+    public int getConnectionSlot(long connectionId) {
+        return connections.indexOf(connectionId);
     }
 
 
     /**
-     * Gets all connections of a specific type.
+     * Gets the connection registered at a slot.
      *
-     * @param connectionType CLIENT or SUPERVISOR
-     * @return list of connections of the specified type
+     * @param slot the slot index, below {@link #getConnectionSlotCount()}
+     * @return the connection info, or null if the slot is empty
      */
-    public List<ConnectionInfo> getConnectionsByType(String connectionType) {
-        return connections.values().stream()
-                .filter(conn -> connectionType.equals(conn.connectionType()))
-                .collect(Collectors.toList());
+    public ConnectionInfo getConnectionAtSlot(int slot) {
+        return connections.getAt(slot);
     }
 
 
     /**
-     * Gets all connections associated with a session.
+     * Gets the number of connection registry slots.
+     */
+    public int getConnectionSlotCount() {
+        return connections.capacity();
+    }
+
+
+    /**
+     * Gets all connections of a specific type.
      *
-     * @param sessionId the session ID
-     * @return list of connections in this session
+     * @param connectionType CLIENT or SUPERVISOR
+     * @return list of connections of the specified type
      */
-    public List<ConnectionInfo> getConnectionsBySession(String sessionId) {
-        return connections.values().stream()
-                .filter(conn -> sessionId.equals(conn.sessionId()))
+    public List<ConnectionInfo> getConnectionsByType(String connectionType) {
+        return connections.stream()
+                .filter(conn -> connectionType.equals(conn.connectionType()))
                 .collect(Collectors.toList());
     }
 
@@ -373,7 +827,7 @@ public class SessionManager {
      * Gets the number of client connections.
      */
     public int getClientConnectionCount() {
-        return (int) connections.values().stream()
+        return (int) connections.stream()
                 .filter(ConnectionInfo::isClient)
                 .count();
     }
@@ -383,16 +837,106 @@ public class SessionManager {
      * Gets the number of supervisor connections.
      */
     public int getSupervisorConnectionCount() {
-        return (int) connections.values().stream()
+        return (int) connections.stream()
                 .filter(ConnectionInfo::isSupervisor)
                 .count();
     }
 
-    
+
+    /**
+     * Atomically adds a session to a supervisor's sessions if below capacity.
+     */
+    private boolean reserveSupervisorSlot(long supervisorConnectionId, long sessionId) {
+        int maxSessions = appConfig.getSupervisor().getMaxSessions();
+        boolean[] reserved = {false};
+
+        // Flag reflects the last (successful) application of the update function
+        connections.update(supervisorConnectionId, conn -> {
+            reserved[0] = !conn.hasSession(sessionId) && conn.sessionCount() < maxSessions;
+            return reserved[0] ? conn.withSession(sessionId) : conn;
+        });
+
+        return reserved[0];
+    }
+
+
+    /**
+     * Removes a session from a supervisor's sessions.
+     */
+    private void releaseSupervisorSlot(long supervisorConnectionId, long sessionId) {
+        connections.update(supervisorConnectionId, conn -> conn.withoutSession(sessionId));
+    }
+
+
+    /**
+     * Runs a session command on the session's shard and waits for its result.
+     *
+     * Commands issued from the shard's own thread run inline.
+     */
+    private <T> T onShard(long sessionId, Supplier<T> command) {
+        int shard = shardOf(sessionId);
+        if (Thread.currentThread() == shardThreads[shard]) {
+            return command.get();
+        }
+        try {
+            return CompletableFuture.supplyAsync(command, shards[shard]).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * Queues a session command on the session's shard without waiting.
+     */
+    private void onShardAsync(long sessionId, Runnable command) {
+        try {
+            shards[shardOf(sessionId)].execute(command);
+        } catch (RejectedExecutionException e) {
+            log.debug("Session shard stopped, dropping command: sessionId={}", sessionId);
+        }
+    }
+
+
+    /**
+     * Gets the shard owning a session.
+     */
+    private int shardOf(long sessionId) {
+        return (int) Long.remainderUnsigned(sessionId, shards.length);
+    }
+
+
+    /**
+     * Builds the external ID of a session: the internal ID in base 36 plus a random suffix.
+     */
+    private static String externalSessionId(long id) {
+        return Long.toString(id, Character.MAX_RADIX) + '.' + Long.toHexString(RANDOM.nextLong() | Long.MIN_VALUE);
+    }
+
+
+    /**
+     * Generates a session resume token (never 0).
+     */
+    private static long resumeToken() {
+        return RANDOM.nextLong() | 1L;
+    }
+
+
+    /**
+     * Gets the waiting queue of a tenant, creating it on first use (tenants are bounded by configuration).
+     */
+    private WaitingQueue waitingQueue(String tenant) {
+        return waitingQueues.computeIfAbsent(tenant, key -> new WaitingQueue());
+    }
+
+
     /**
-     * Checks if max connections limit has been reached.
+     * Computes the waiting queue rank of a session from the configured priority weight.
      */
-    public boolean isMaxConnectionsReached() {
-        return connections.size() >= appConfig.getMaxConnections();
+    private long queueRank(Session session) {
+        return session.queueRank(appConfig.getQueue().getPriorityWeightSeconds() * 1000L);
     }
 }
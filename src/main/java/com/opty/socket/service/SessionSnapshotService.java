@@ -0,0 +1,334 @@
+/**
+ * Warm-restart session snapshot.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.Session;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Saves sessions on shutdown and lets returning clients reclaim them after a restart.
+ *
+ * On graceful shutdown, before connections are closed, waiting sessions (in queue order) and paired
+ * sessions are written to a compact binary file. On startup the file is memory-mapped and only indexed
+ * by resume token; an entry is decoded when its client reconnects with {@code ?resume=<token>}, within
+ * {@code opty.socket.snapshot.resume-grace-seconds}. A reclaimed session goes back to the waiting queue
+ * with its original creation time, priority and SLA deadline, so the client keeps its place.
+ *
+ * File layout (big-endian): magic, version, written-at millis, entry count, then per entry the session ID,
+ * resume token, creation time, SLA deadline, priority, external ID, tenant, tier and tags. Strings are
+ * a length (-1 for null) followed by UTF-8 bytes.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SessionSnapshotService implements SmartLifecycle {
+
+    // --- ATTRIBUTES ---
+    private static final int MAGIC = 0x4F505353;
+    private static final int VERSION = 1;
+    private final AppConfig appConfig;
+    private final SessionManager sessionManager;
+    private final Map<Long, Integer> offsetsByToken = new ConcurrentHashMap<>();
+    private volatile ByteBuffer snapshot;
+    private volatile long resumeDeadlineMillis;
+    private volatile boolean running;
+
+
+    /**
+     * Loads the snapshot of the previous process, before any session is created.
+     */
+    @PostConstruct
+    public void load() {
+        AppConfig.SnapshotConfig config = appConfig.getSnapshot();
+        Path path = Path.of(config.getPath());
+        if (!config.isEnabled() || !Files.isRegularFile(path)) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                log.warn("Ignoring session snapshot with unknown format: path={}", path);
+                return;
+            }
+            long ageMillis = System.currentTimeMillis() - mapped.getLong();
+            if (ageMillis > config.getMaxAgeSeconds() * 1000L) {
+                log.warn("Ignoring stale session snapshot: path={}, ageSeconds={}", path, ageMillis / 1000);
+                return;
+            }
+
+            // Index entries by resume token; decoding waits until a client reclaims its session
+            int count = mapped.getInt();
+            long maxSessionId = 0;
+            for (int i = 0; i < count; i++) {
+                int offset = mapped.position();
+                long id = mapped.getLong();
+                offsetsByToken.put(mapped.getLong(), offset);
+                maxSessionId = Math.max(maxSessionId, id);
+                skipEntryTail(mapped);
+            }
+
+            sessionManager.reserveSessionIds(maxSessionId);
+            snapshot = mapped;
+            resumeDeadlineMillis = System.currentTimeMillis() + config.getResumeGraceSeconds() * 1000L;
+            log.info("Session snapshot loaded: path={}, sessions={}, ageMillis={}, loadMillis={}",
+                    path, count, ageMillis, (System.nanoTime() - startNanos) / 1_000_000);
+
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            log.error("Failed to load session snapshot: path={}, error={}", path, e.toString());
+            offsetsByToken.clear();
+        } finally {
+            deleteQuietly(path);
+        }
+    }
+
+
+    /**
+     * Reclaims a session of the previous process for a reconnecting client.
+     *
+     * @param clientConnectionId the client connection ID
+     * @param resumeToken        the resume token sent by the client (hex), may be null
+     * @param tenant             the tenant of the client connection
+     * @return the restored session, or empty if the token is unknown, already used, of another tenant or expired
+     */
+    public Optional<Session> resume(long clientConnectionId, String resumeToken, String tenant) {
+        ByteBuffer buffer = snapshot;
+        if (buffer == null || resumeToken == null || resumeToken.isBlank()) {
+            return Optional.empty();
+        }
+        if (System.currentTimeMillis() > resumeDeadlineMillis) {
+            expire();
+            return Optional.empty();
+        }
+
+        long token;
+        try {
+            token = Long.parseUnsignedLong(resumeToken.trim(), 16);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+
+        // Each token can be used once
+        Integer offset = offsetsByToken.remove(token);
+        if (offset == null) {
+            return Optional.empty();
+        }
+        Session saved = readEntry(buffer.duplicate().position(offset));
+        if (tenant != null && !tenant.equals(saved.tenant())) {
+            log.warn("Session resume refused for another tenant: sessionId={}, tenant={}", saved.sessionId(), tenant);
+            return Optional.empty();
+        }
+        return Optional.of(sessionManager.restoreSession(clientConnectionId, saved));
+    }
+
+
+    /**
+     * Drops the snapshot once the resume grace period is over.
+     */
+    @Scheduled(fixedDelay = 10_000)
+    public void expire() {
+        if (snapshot == null || System.currentTimeMillis() <= resumeDeadlineMillis) {
+            return;
+        }
+        int unclaimed = offsetsByToken.size();
+        offsetsByToken.clear();
+        snapshot = null;
+        log.info("Session snapshot expired: unclaimed={}", unclaimed);
+    }
+
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+
+    /**
+     * Writes the snapshot on shutdown; runs before the web server closes connections (highest phase stops first).
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (appConfig.getSnapshot().isEnabled()) {
+            write();
+        }
+    }
+
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+
+    /**
+     * Writes waiting sessions in queue order, then paired sessions, to a temporary file moved into place.
+     */
+    private void write() {
+        Path path = Path.of(appConfig.getSnapshot().getPath()).toAbsolutePath();
+        long startNanos = System.nanoTime();
+
+        List<Session> sessions = new ArrayList<>(sessionManager.getUnpairedSessions());
+        sessions.addAll(sessionManager.getPairedSessions());
+        sessions.removeIf(Session::synthetic);
+
+        try {
+            Files.createDirectories(path.getParent());
+            Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 65536))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(sessions.size());
+                for (Session session : sessions) {
+                    writeEntry(out, session);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            log.info("Session snapshot written: path={}, sessions={}, bytes={}, millis={}",
+                    path, sessions.size(), Files.size(path), (System.nanoTime() - startNanos) / 1_000_000);
+        } catch (IOException e) {
+            log.error("Failed to write session snapshot: path={}, error={}", path, e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Writes one session entry.
+     */
+    private static void writeEntry(DataOutputStream out, Session session) throws IOException {
+        out.writeLong(session.id());
+        out.writeLong(session.resumeToken());
+        out.writeLong(session.createdAtMillis());
+        out.writeLong(session.slaDeadlineMillis());
+        out.writeInt(session.priority());
+        writeString(out, session.sessionId());
+        writeString(out, session.tenant());
+        writeString(out, session.tier());
+        out.writeShort(session.tags().length);
+        for (String tag : session.tags()) {
+            writeString(out, tag);
+        }
+    }
+
+
+    /**
+     * Reads one session entry (as an unpaired session without client).
+     */
+    private static Session readEntry(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        long resumeToken = buffer.getLong();
+        long createdAtMillis = buffer.getLong();
+        long slaDeadlineMillis = buffer.getLong();
+        int priority = buffer.getInt();
+        String sessionId = readString(buffer);
+        String tenant = readString(buffer);
+        String tier = readString(buffer);
+        String[] tags = new String[buffer.getShort()];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = readString(buffer);
+        }
+        return new Session(id, sessionId, resumeToken, Session.NO_CONNECTION, Session.NO_CONNECTION,
+                createdAtMillis, createdAtMillis, tier, priority, slaDeadlineMillis, tenant, tags, new long[0], false);
+    }
+
+
+    /**
+     * Skips the rest of an entry after its session ID and resume token.
+     */
+    private static void skipEntryTail(ByteBuffer buffer) {
+        buffer.position(buffer.position() + 2 * Long.BYTES + Integer.BYTES);
+        for (int i = 0; i < 3; i++) {
+            skipString(buffer);
+        }
+        int tags = buffer.getShort();
+        for (int i = 0; i < tags; i++) {
+            skipString(buffer);
+        }
+    }
+
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length > 0) {
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+
+    /**
+     * Deletes the loaded snapshot, so a later crash never restores it twice (the mapping stays readable).
+     */
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete session snapshot: path={}, error={}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Startup timing.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Measures how long after JVM start the server became ready and accepted its first connection.
+ *
+ * Both are counted from the JVM start time, so class loading and context refresh are included.
+ * Published as {@code opty.startup.ready} and {@code opty.startup.first.connection}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StartupTimer {
+
+    // --- ATTRIBUTES ---
+    private static final long NOT_YET = -1;
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong readyMillis = new AtomicLong(NOT_YET);
+    private final AtomicLong firstConnectionMillis = new AtomicLong(NOT_YET);
+
+
+    /**
+     * Records the time to readiness and registers the startup gauges.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        readyMillis.set(sinceJvmStart());
+        TimeGauge.builder("opty.startup.ready", readyMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Time from JVM start to application ready")
+                .register(meterRegistry);
+        TimeGauge.builder("opty.startup.first.connection", firstConnectionMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Time from JVM start to the first accepted WebSocket connection (-1 until then)")
+                .register(meterRegistry);
+        log.info("Application ready: millisSinceJvmStart={}", readyMillis.get());
+    }
+
+
+    /**
+     * Records an accepted WebSocket connection; only the first one is timed.
+     */
+    public void recordConnectionAccepted() {
+        if (firstConnectionMillis.get() == NOT_YET && firstConnectionMillis.compareAndSet(NOT_YET, sinceJvmStart())) {
+            log.info("First connection accepted: millisSinceJvmStart={}", firstConnectionMillis.get());
+        }
+    }
+
+
+    /**
+     * Gets the milliseconds elapsed since the JVM started.
+     */
+    private static long sinceJvmStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+}
@@ -8,18 +8,28 @@ package com.opty.socket.service;
 /**
  * IMPORTS
  */
+import com.opty.socket.config.AppConfig;
 import com.opty.socket.dto.SessionDTO;
 import com.opty.socket.model.Message;
 import com.opty.socket.model.MessageType;
+import com.opty.socket.model.Session;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.WebSocketSession;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 
@@ -29,6 +39,13 @@ import java.util.stream.Collectors;
 
 /**
  * Manages supervisor queue and broadcasts session updates.
+ *
+ * Listeners only see sessions of their own tenant. Supervisors may also subscribe to routing tags
+ * (e.g. {@code lang:pt}, {@code product:billing}) and then only see sessions carrying at least one of
+ * them; supervisors without tags see every session of their tenant. An inverted index from tenant and
+ * tag to listeners yields the recipients of a queue change without scanning all listeners.
+ * Under overload, changes are coalesced into one full broadcast per
+ * {@code opty.socket.overload.queue-update-interval-millis}; while draining for shutdown, none are sent.
  */
 @Slf4j
 @Service
@@ -36,36 +53,77 @@ import java.util.stream.Collectors;
 public class SupervisorQueueService {
 
     // --- ATTRIBUTES ---
+    private static final Set<String> ALL_TAGS = Set.of();
+    private static final int MAX_TAG_LENGTH = 64;
     private final SessionManager sessionManager;
     private final MessageRouter messageRouter;
-    private final Set<String> queueListeners = ConcurrentHashMap.newKeySet();
+    private final AppConfig appConfig;
+    private final OverloadController overloadController;
+    private final DrainCoordinator drainCoordinator;
+    private final EventJournal eventJournal;
+    private final AtomicBoolean deferredBroadcast = new AtomicBoolean();
+    private final Map<Long, Subscription> queueListeners = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> wildcardListeners = new ConcurrentHashMap<>();
+    private final Map<TenantTag, Set<Long>> listenersByTag = new ConcurrentHashMap<>();
+
+
+    /**
+     * Registers a supervisor of the default tenant as a queue listener for all its sessions.
+     *
+     * @param connectionId the supervisor connection ID
+     */
+    public void registerQueueListener(long connectionId) {
+        registerQueueListener(connectionId, appConfig.getTenant().getDefaultTenant(), ALL_TAGS);
+    }
+
 
-    
     /**
-     * Registers a supervisor as a queue listener.
+     * Registers a supervisor as a queue listener for sessions of its tenant carrying any of the given tags.
      *
      * @param connectionId the supervisor connection ID
+     * @param tenant       the supervisor's tenant (null for the default tenant)
+     * @param tags         the subscribed tags (empty for all sessions of the tenant)
      */
-    public void registerQueueListener(String connectionId) {
-        boolean added = queueListeners.add(connectionId);
-        if (added) {
-            log.info("Supervisor registered as queue listener: connectionId={}, totalListeners={}",
-                    connectionId, queueListeners.size());
+    public void registerQueueListener(long connectionId, String tenant, Set<String> tags) {
+        if (tenant == null) {
+            tenant = appConfig.getTenant().getDefaultTenant();
         }
+        Subscription subscription = new Subscription(tenant, tags.isEmpty() ? ALL_TAGS : Set.copyOf(tags));
+        if (queueListeners.putIfAbsent(connectionId, subscription) != null) {
+            return;
+        }
+
+        // Add and remove per key are atomic, so an emptied set is never reused after being unlinked
+        if (subscription.tags().isEmpty()) {
+            wildcardListeners.compute(tenant, (key, listeners) -> withListener(listeners, connectionId));
+        } else {
+            for (String tag : subscription.tags()) {
+                listenersByTag.compute(new TenantTag(tenant, tag), (key, listeners) -> withListener(listeners, connectionId));
+            }
+        }
+
+        eventJournal.record(EventJournal.Event.QUEUE_LISTENER_ADDED, connectionId, null, queueListeners.size());
     }
 
 
     /**
-     * Removes a supervisor from queue listeners (when accepting session or disconnecting).
+     * Removes a supervisor from queue listeners (when disconnecting).
      *
      * @param connectionId the supervisor connection ID
      */
-    public void removeQueueListener(String connectionId) {
-        boolean removed = queueListeners.remove(connectionId);
-        if (removed) {
-            log.info("Supervisor removed from queue listeners: connectionId={}, totalListeners={}",
-                    connectionId, queueListeners.size());
+    public void removeQueueListener(long connectionId) {
+        Subscription subscription = queueListeners.remove(connectionId);
+        if (subscription == null) {
+            return;
+        }
+
+        wildcardListeners.computeIfPresent(subscription.tenant(), (key, listeners) -> withoutListener(listeners, connectionId));
+        for (String tag : subscription.tags()) {
+            listenersByTag.computeIfPresent(new TenantTag(subscription.tenant(), tag),
+                    (key, listeners) -> withoutListener(listeners, connectionId));
         }
+
+        eventJournal.record(EventJournal.Event.QUEUE_LISTENER_REMOVED, connectionId, null, queueListeners.size());
     }
 
 
@@ -75,82 +133,261 @@ public class SupervisorQueueService {
      * @param connectionId the supervisor connection ID
      * @return true if listening to queue, false otherwise
      */
-    public boolean isQueueListener(String connectionId) {
-        return queueListeners.contains(connectionId);
+    public boolean isQueueListener(long connectionId) {
+        return queueListeners.containsKey(connectionId);
+    }
+
+
+    /**
+     * Checks if a supervisor's subscription covers a session.
+     *
+     * @param connectionId the supervisor connection ID
+     * @param session      the session
+     * @return true if of the session's tenant and subscribed to all its sessions or to one of the session's tags
+     */
+    public boolean isSubscribed(long connectionId, Session session) {
+        Subscription subscription = queueListeners.get(connectionId);
+        return subscription != null && subscription.matches(session);
+    }
+
+
+    /**
+     * Parses a comma-separated tag list from a handshake parameter.
+     *
+     * Tags are trimmed and lower-cased; blank, overlong and surplus tags (beyond
+     * {@code opty.socket.queue.max-tags}) are ignored.
+     *
+     * @param raw the parameter value, may be null
+     * @return the distinct tags in order
+     */
+    public String[] parseTags(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return new String[0];
+        }
+        return Arrays.stream(raw.split(","))
+                .map(tag -> tag.trim().toLowerCase(Locale.ROOT))
+                .filter(tag -> !tag.isEmpty() && tag.length() <= MAX_TAG_LENGTH)
+                .distinct()
+                .limit(appConfig.getQueue().getMaxTags())
+                .toArray(String[]::new);
     }
 
 
     /**
-     * Broadcasts session queue update to all listening supervisors.
+     * Broadcasts session queue update to all listening supervisors with free capacity.
+     * Called when several sessions change at once (e.g. a supervisor holding sessions disconnects).
+     */
+    public void broadcastQueueUpdate() {
+        if (deferWhileOverloaded()) {
+            return;
+        }
+        broadcastQueueUpdate(queueListeners.keySet(), true);
+    }
+
+
+    /**
+     * Broadcasts session queue update to the supervisors subscribed to a changed session.
      * Called when:
      * - New session is created (client connects)
      * - Session is accepted by supervisor (becomes paired)
      * - Session is closed (client disconnects)
+     *
+     * @param changed the session that entered or left the queue
      */
-    public void broadcastQueueUpdate() {
-        if (queueListeners.isEmpty()) {
-            log.debug("No queue listeners to broadcast to");
+    public void broadcastQueueUpdate(Session changed) {
+        if (deferWhileOverloaded()) {
             return;
         }
+        // Synthetic warm-up sessions broadcast on every step: keep them out of the log
+        broadcastQueueUpdate(listenersFor(changed), !changed.synthetic());
+    }
 
-        // Get all unpaired sessions
-        List<SessionDTO> availableSessions = sessionManager.getUnpairedSessions()
-                .stream()
-                .map(SessionDTO::fromSession)
-                .collect(Collectors.toList());
 
-        // Create broadcast message
-        Message queueUpdate = new Message(
-                null,
-                "SERVER",
-                MessageType.SESSION_QUEUE_UPDATE,
-                Map.of("sessions", availableSessions)
-        );
+    /**
+     * Sends the broadcast deferred while queue updates were being shed, if any.
+     */
+    @Scheduled(fixedDelayString = "${opty.socket.overload.queue-update-interval-millis:1000}")
+    public void flushDeferredBroadcast() {
+        if (deferredBroadcast.getAndSet(false) && !drainCoordinator.isDraining()) {
+            broadcastQueueUpdate(queueListeners.keySet(), true);
+        }
+    }
+
+
+    /**
+     * Sends each listener with free capacity the waiting sessions matching its subscription.
+     *
+     * Listeners are grouped by subscription so each distinct view is encoded once.
+     *
+     * @param listeners the listeners to update
+     * @param logged    whether to log the broadcast
+     */
+    private void broadcastQueueUpdate(Collection<Long> listeners, boolean logged) {
+        if (listeners.isEmpty()) {
+            if (logged) {
+                log.debug("No queue listeners to broadcast to");
+            }
+            return;
+        }
+
+        // Group recipients that can still take sessions by subscription
+        Map<Subscription, List<WebSocketSession>> recipientsByFilter = new HashMap<>();
+        for (long listenerId : listeners) {
+            Subscription subscription = queueListeners.get(listenerId);
+            if (subscription == null || !sessionManager.hasSupervisorCapacity(listenerId)) {
+                continue;
+            }
+            sessionManager.getConnection(listenerId).ifPresent(conn -> recipientsByFilter
+                    .computeIfAbsent(subscription, key -> new ArrayList<>())
+                    .add(conn.webSocketSession()));
+        }
+        if (recipientsByFilter.isEmpty()) {
+            return;
+        }
 
-        // Send to all queue listeners
+        // Read each recipient tenant's queue once, then filter per subscription
+        Map<String, List<Session>> waitingByTenant = new HashMap<>();
         int successCount = 0;
-        for (String listenerId : queueListeners) {
-            sessionManager.getConnection(listenerId).ifPresent(conn -> {
-                messageRouter.sendMessage(conn.webSocketSession(), queueUpdate);
-            });
-            successCount++;
+        for (Map.Entry<Subscription, List<WebSocketSession>> group : recipientsByFilter.entrySet()) {
+            List<Session> waiting = waitingByTenant.computeIfAbsent(group.getKey().tenant(),
+                    sessionManager::getUnpairedSessions);
+            Message queueUpdate = queueUpdate(waiting, group.getKey());
+            successCount += messageRouter.sendToAll(group.getValue(), queueUpdate);
         }
 
-        log.info("Broadcast queue update to {} supervisors: {} available sessions",
-                successCount, availableSessions.size());
+        eventJournal.record(EventJournal.Event.QUEUE_BROADCAST, Session.NO_CONNECTION, null, successCount);
+        if (logged) {
+            log.debug("Broadcast queue update to {} supervisors: {} tenants, {} views",
+                    successCount, waitingByTenant.size(), recipientsByFilter.size());
+        }
     }
 
 
     /**
      * Sends initial queue state to a newly connected supervisor.
      *
-     * @param session the supervisor WebSocket session
+     * @param connectionId the supervisor connection ID
+     * @param session      the supervisor WebSocket session
+     */
+    public void sendInitialQueue(long connectionId, WebSocketSession session) {
+        Subscription subscription = queueListeners.get(connectionId);
+        if (subscription == null) {
+            return;
+        }
+        Message queueUpdate = queueUpdate(sessionManager.getUnpairedSessions(subscription.tenant()), subscription);
+
+        messageRouter.sendMessage(session, queueUpdate);
+        log.debug("Sent initial queue to supervisor: connectionId={}, tenant={}, tags={}",
+                connectionId, subscription.tenant(), subscription.tags());
+    }
+
+
+    /**
+     * Gets the number of active queue listeners.
+     *
+     * @return count of queue listeners
+     */
+    public int getQueueListenerCount() {
+        return queueListeners.size();
+    }
+
+
+    /**
+     * Marks a full broadcast as due instead of sending it while queue updates are shed, or drops it while draining.
+     *
+     * @return true if the broadcast was deferred or dropped
+     */
+    private boolean deferWhileOverloaded() {
+        if (drainCoordinator.isDraining()) {
+            return true;
+        }
+        if (!overloadController.shouldShedQueueUpdates()) {
+            return false;
+        }
+        if (!deferredBroadcast.getAndSet(true)) {
+            overloadController.shed(OverloadController.Stage.SHED_QUEUE_UPDATES);
+        }
+        return true;
+    }
+
+
+    /**
+     * Gets the listeners subscribed to a session (all-session listeners of its tenant plus those of its tags).
+     */
+    private Set<Long> listenersFor(Session session) {
+        Set<Long> listeners = new HashSet<>(wildcardListeners.getOrDefault(session.tenant(), Set.of()));
+        for (String tag : session.tags()) {
+            Set<Long> tagged = listenersByTag.get(new TenantTag(session.tenant(), tag));
+            if (tagged != null) {
+                listeners.addAll(tagged);
+            }
+        }
+        return listeners;
+    }
+
+
+    /**
+     * Adds a listener to an index entry, creating it if needed.
+     */
+    private static Set<Long> withListener(Set<Long> listeners, long connectionId) {
+        Set<Long> updated = listeners != null ? listeners : ConcurrentHashMap.newKeySet();
+        updated.add(connectionId);
+        return updated;
+    }
+
+
+    /**
+     * Removes a listener from an index entry, unlinking the entry once empty.
      */
-    public void sendInitialQueue(WebSocketSession session) {
-        List<SessionDTO> availableSessions = sessionManager.getUnpairedSessions()
-                .stream()
+    private static Set<Long> withoutListener(Set<Long> listeners, long connectionId) {
+        listeners.remove(connectionId);
+        return listeners.isEmpty() ? null : listeners;
+    }
+
+
+    /**
+     * Builds the queue update message for one subscription.
+     */
+    private static Message queueUpdate(List<Session> waiting, Subscription subscription) {
+        List<SessionDTO> availableSessions = waiting.stream()
+                .filter(subscription::matches)
                 .map(SessionDTO::fromSession)
                 .collect(Collectors.toList());
 
-        Message queueUpdate = new Message(
+        return new Message(
                 null,
                 "SERVER",
                 MessageType.SESSION_QUEUE_UPDATE,
                 Map.of("sessions", availableSessions)
         );
+    }
 
-        messageRouter.sendMessage(session, queueUpdate);
-        log.info("Sent initial queue to supervisor: connectionId={}, sessions={}",
-                session.getId(), availableSessions.size());
+
+    /**
+     * Queue subscription of a listener: its tenant and tags (empty for all sessions of the tenant).
+     */
+    private record Subscription(String tenant, Set<String> tags) {
+
+        private boolean matches(Session session) {
+            if (!tenant.equals(session.tenant())) {
+                return false;
+            }
+            if (tags.isEmpty()) {
+                return true;
+            }
+            for (String tag : session.tags()) {
+                if (tags.contains(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
 
     /**
-     * Gets the number of supervisors currently listening to the queue.
-     *
-     * @return number of queue listeners
+     * Inverted index key.
      */
-    public int getQueueListenerCount() {
-        return queueListeners.size();
+    private record TenantTag(String tenant, String tag) {
     }
 }
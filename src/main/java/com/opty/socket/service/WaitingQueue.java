@@ -0,0 +1,79 @@
+/**
+ * Waiting session queue.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import java.util.concurrent.ConcurrentSkipListSet;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Concurrent priority queue of sessions waiting for a supervisor (thread-safe).
+ *
+ * Sessions are ordered by a rank fixed at enqueue time: the SLA deadline minus a priority boost.
+ * Every waiting session ages at the same rate, so the relative order never changes while
+ * sessions wait and no re-sorting is needed; the head is always the most urgent session.
+ *
+ * Since the rank is derived from the session itself, callers pass it again on removal and the
+ * queue needs no ID-to-entry index.
+ */
+public class WaitingQueue {
+
+    // --- ATTRIBUTES ---
+    private final ConcurrentSkipListSet<Entry> ordered = new ConcurrentSkipListSet<>();
+
+
+    /**
+     * Adds a session to the queue.
+     *
+     * @param sessionId the internal session ID
+     * @param rank      the session rank (lower is served first)
+     * @return true if the session was not already waiting
+     */
+    public boolean enqueue(long sessionId, long rank) {
+        return ordered.add(new Entry(rank, sessionId));
+    }
+
+
+    /**
+     * Removes a session from the queue.
+     *
+     * @param sessionId the internal session ID
+     * @param rank      the rank the session was enqueued with
+     * @return true if the session was waiting
+     */
+    public boolean remove(long sessionId, long rank) {
+        return ordered.remove(new Entry(rank, sessionId));
+    }
+
+
+    /**
+     * Gets waiting session IDs in serving order.
+     */
+    public long[] sessionIds() {
+        return ordered.stream()
+                .mapToLong(Entry::sessionId)
+                .toArray();
+    }
+
+
+    /**
+     * Queue entry ordered by rank, then by session ID (unique, increasing with creation).
+     */
+    private record Entry(long rank, long sessionId) implements Comparable<Entry> {
+
+        @Override
+        public int compareTo(Entry other) {
+            int byRank = Long.compare(rank, other.rank);
+            return byRank != 0 ? byRank : Long.compare(sessionId, other.sessionId);
+        }
+    }
+}
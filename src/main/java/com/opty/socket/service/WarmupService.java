@@ -0,0 +1,365 @@
+/**
+ * JIT warm-up before readiness.
+ */
+
+package com.opty.socket.service;
+
+
+/**
+ * IMPORTS
+ */
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.ConnectionInfo;
+import com.opty.socket.model.Message;
+import com.opty.socket.model.Session;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Runs the relay's hot paths with synthetic traffic before the server reports ready.
+ *
+ * Synthetic paired sessions (and as many waiting ones) are created on stub connections of a reserved
+ * tenant, so no real supervisor sees them, and their messages are neither persisted nor logged. Each step
+ * parses client and supervisor frames, routes them through the session lanes, acknowledges them and
+ * broadcasts a queue update (SessionDTO encoding). Steps are grouped in rounds; warm-up ends once at least
+ * {@code opty.socket.warmup.min-messages} were routed and a round passed without JIT compilation activity,
+ * or when {@code budget-millis} expires. Application runners complete before Spring Boot publishes
+ * readiness, so the readiness probe refuses traffic until then. Step latency of the first and last round
+ * is logged; the total time is recorded in {@code opty.warmup.duration}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WarmupService implements ApplicationRunner {
+
+    // --- ATTRIBUTES ---
+    private static final String TENANT = AppConfig.TenantConfig.RESERVED_TENANT;
+    private static final long QUIET_COMPILATION_MILLIS = 1;
+    private final AppConfig appConfig;
+    private final SessionManager sessionManager;
+    private final MessageRouter messageRouter;
+    private final SupervisorQueueService supervisorQueueService;
+    private final SessionLanes sessionLanes;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+
+    /**
+     * Runs the warm-up, if enabled; blocks startup (and readiness) until compiled or out of budget.
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        AppConfig.WarmupConfig config = appConfig.getWarmup();
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(config.getBudgetMillis());
+
+        Fixture fixture = new Fixture();
+        Result result;
+        try {
+            setUp(fixture, config.getSessions());
+            result = exercise(fixture, config, deadlineNanos);
+        } catch (IOException | RuntimeException e) {
+            result = null;
+            log.warn("JIT warm-up aborted: error={}", e.toString());
+        } finally {
+            tearDown(fixture, deadlineNanos);
+        }
+
+        long totalNanos = System.nanoTime() - startNanos;
+        meterRegistry.timer("opty.warmup.duration").record(totalNanos, TimeUnit.NANOSECONDS);
+        if (result != null) {
+            log.info("JIT warm-up completed: rounds={}, messages={}, compiled={}, millis={}, "
+                            + "firstRoundStepMicros={}, lastRoundStepMicros={}",
+                    result.rounds(), result.messages(), result.compiled(), TimeUnit.NANOSECONDS.toMillis(totalNanos),
+                    result.firstRoundStepNanos() / 1000, result.lastRoundStepNanos() / 1000);
+        }
+    }
+
+
+    /**
+     * Creates the synthetic connections and sessions: paired ones to route through, waiting ones to broadcast.
+     */
+    private void setUp(Fixture fixture, int sessions) {
+        for (int i = 0; i < sessions; i++) {
+            long clientConnectionId = connect(fixture, "CLIENT");
+            long supervisorConnectionId = connect(fixture, "SUPERVISOR");
+            Session session = sessionManager.createSyntheticSession(clientConnectionId, TENANT, 0);
+            fixture.sessions.add(session);
+            session = sessionManager.pairSupervisor(session.id(), supervisorConnectionId)
+                    .orElseThrow(() -> new IllegalStateException("Warm-up session could not be paired"));
+            supervisorQueueService.registerQueueListener(supervisorConnectionId, TENANT, Set.of());
+            fixture.pairs.add(new Pair(session, clientConnectionId, supervisorConnectionId));
+        }
+        for (int i = 0; i < sessions; i++) {
+            Session waiting = sessionManager.createSyntheticSession(connect(fixture, "CLIENT"), TENANT, i % 3);
+            fixture.sessions.add(waiting);
+            fixture.waiting.add(waiting);
+        }
+    }
+
+
+    /**
+     * Runs rounds of steps until compiled or out of budget.
+     */
+    private Result exercise(Fixture fixture, AppConfig.WarmupConfig config, long deadlineNanos) throws IOException {
+        CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+        boolean compilationTimed = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+        int messagesPerStep = 2 * fixture.pairs.size();
+        int stepsPerRound = Math.max(1, config.getRoundMessages() / messagesPerStep);
+
+        int rounds = 0;
+        long messages = 0;
+        long firstRoundStepNanos = 0;
+        long lastRoundStepNanos = 0;
+        boolean compiled = false;
+        while (!compiled && System.nanoTime() < deadlineNanos) {
+            long compilationMillis = compilationTimed ? compiler.getTotalCompilationTime() : 0;
+            long roundNanos = 0;
+            for (int step = 0; step < stepsPerRound; step++) {
+                roundNanos += step(fixture, messages + step, deadlineNanos);
+            }
+            rounds++;
+            messages += (long) stepsPerRound * messagesPerStep;
+            lastRoundStepNanos = roundNanos / stepsPerRound;
+            if (rounds == 1) {
+                firstRoundStepNanos = lastRoundStepNanos;
+            }
+
+            // Hot methods have reached their final tier once a round triggers no more compilation
+            long compiling = compilationTimed ? compiler.getTotalCompilationTime() - compilationMillis : 0;
+            compiled = messages >= config.getMinMessages() && compiling <= QUIET_COMPILATION_MILLIS;
+        }
+        return new Result(rounds, messages, compiled, firstRoundStepNanos, lastRoundStepNanos);
+    }
+
+
+    /**
+     * One step: every pair exchanges a message both ways and acknowledges it, then the queue is broadcast.
+     *
+     * @return the step latency: until every delivery and acknowledgement ran on the session lanes
+     */
+    private long step(Fixture fixture, long counter, long deadlineNanos) throws IOException {
+        long startNanos = System.nanoTime();
+        for (Pair pair : fixture.pairs) {
+            String sessionId = pair.session().sessionId();
+            messageRouter.routeMessage(pair.clientConnectionId(), parse(frame(sessionId, "CLIENT", counter)));
+            messageRouter.routeMessage(pair.supervisorConnectionId(), parse(frame(sessionId, "SUPERVISOR", counter)));
+            messageRouter.acknowledge(pair.clientConnectionId(), parse(ack(sessionId, "CLIENT")));
+            messageRouter.acknowledge(pair.supervisorConnectionId(), parse(ack(sessionId, "SUPERVISOR")));
+        }
+        supervisorQueueService.broadcastQueueUpdate(fixture.waiting.get((int) (counter % fixture.waiting.size())));
+        awaitLanes(deadlineNanos);
+        return System.nanoTime() - startNanos;
+    }
+
+
+    /**
+     * Removes the synthetic sessions, listeners and connections.
+     */
+    private void tearDown(Fixture fixture, long deadlineNanos) {
+        for (Session session : fixture.sessions) {
+            messageRouter.discardPending(session);
+            sessionManager.removeSession(session.id());
+        }
+        for (Pair pair : fixture.pairs) {
+            supervisorQueueService.removeQueueListener(pair.supervisorConnectionId());
+        }
+        awaitLanes(deadlineNanos);
+        for (long connectionId : fixture.connectionIds) {
+            sessionManager.removeConnection(connectionId);
+        }
+    }
+
+
+    /**
+     * Registers a stub connection, decorated like a real one.
+     */
+    private long connect(Fixture fixture, String connectionType) {
+        WebSocketSession stub = new StubWebSocketSession("warmup-" + fixture.connectionIds.size());
+        ConnectionInfo connection = sessionManager.registerConnection(messageRouter.decorateForSending(stub), connectionType)
+                .orElseThrow(() -> new IllegalStateException("No connection slot left for warm-up"));
+        fixture.connectionIds.add(connection.connectionId());
+        return connection.connectionId();
+    }
+
+
+    /**
+     * Waits until the session lanes ran every queued task, yielding the processor to the lane threads.
+     */
+    private void awaitLanes(long deadlineNanos) {
+        while (sessionLanes.getQueuedTasks() > 0 && System.nanoTime() < deadlineNanos) {
+            Thread.yield();
+        }
+    }
+
+
+    private Message parse(String frame) throws IOException {
+        return objectMapper.readValue(frame, Message.class);
+    }
+
+
+    private static String frame(String sessionId, String from, long counter) {
+        return "{\"sessionId\":\"" + sessionId + "\",\"from\":\"" + from + "\",\"type\":\"MESSAGE\","
+                + "\"payload\":{\"text\":\"warm-up message " + counter + "\"}}";
+    }
+
+
+    private static String ack(String sessionId, String from) {
+        return "{\"sessionId\":\"" + sessionId + "\",\"from\":\"" + from + "\",\"type\":\"ACK\",\"seq\":" + Long.MAX_VALUE + "}";
+    }
+
+
+    /**
+     * Synthetic connections and sessions of a warm-up run.
+     */
+    private static final class Fixture {
+        private final List<Long> connectionIds = new ArrayList<>();
+        private final List<Session> sessions = new ArrayList<>();
+        private final List<Pair> pairs = new ArrayList<>();
+        private final List<Session> waiting = new ArrayList<>();
+    }
+
+
+    /**
+     * A paired synthetic session and its two connections.
+     */
+    private record Pair(Session session, long clientConnectionId, long supervisorConnectionId) {
+    }
+
+
+    /**
+     * Outcome of a warm-up run.
+     */
+    private record Result(int rounds, long messages, boolean compiled, long firstRoundStepNanos, long lastRoundStepNanos) {
+    }
+
+
+    /**
+     * Open WebSocket session that discards every frame sent to it.
+     */
+    private static final class StubWebSocketSession implements WebSocketSession {
+
+        private static final URI WARMUP_URI = URI.create("ws://localhost/warmup");
+        private final String id;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private volatile boolean open = true;
+
+        private StubWebSocketSession(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return WARMUP_URI;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return HttpHeaders.EMPTY;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Admission control handshake interceptor.
+ */
+
+package com.opty.socket.websocket;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.service.AdmissionControlService;
+import com.opty.socket.service.DrainCoordinator;
+import com.opty.socket.service.OverloadController;
+import com.opty.socket.service.StartupTimer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Refuses WebSocket upgrades with HTTP 503 and {@code Retry-After} when the server is at capacity
+ * or the handshake rate is exceeded. While the overload controller sheds admissions, new client
+ * connections are refused too; supervisors are still admitted, since they drain the queue. Every
+ * handshake is refused once the server is draining for shutdown.
+ *
+ * The connection permit acquired here is released when the connection closes, or right away
+ * if the upgrade fails.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdmissionHandshakeInterceptor implements HandshakeInterceptor {
+
+    // --- ATTRIBUTES ---
+    private static final String HANDSHAKE_ATTRIBUTES_KEY = AdmissionHandshakeInterceptor.class.getName() + ".attributes";
+    private final AdmissionControlService admissionControlService;
+    private final OverloadController overloadController;
+    private final DrainCoordinator drainCoordinator;
+    private final StartupTimer startupTimer;
+    private final AppConfig appConfig;
+
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (drainCoordinator.isDraining()) {
+            log.info("Rejecting WebSocket upgrade: uri={}, reason=draining", request.getURI().getPath());
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(appConfig.getDrain().getReconnectAfterSeconds()));
+            return false;
+        }
+
+        if (overloadController.shouldShedAdmissions()
+                && WebSocketHandlerDecorator.unwrap(wsHandler) instanceof ClientWebSocketHandler) {
+            overloadController.shed(OverloadController.Stage.SHED_ADMISSIONS);
+            log.warn("Rejecting WebSocket upgrade: uri={}, reason=overload", request.getURI().getPath());
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(appConfig.getAdmission().getRetryAfterSeconds()));
+            return false;
+        }
+
+        AdmissionControlService.Admission admission = admissionControlService.tryAdmit(attributes);
+        if (admission.admitted()) {
+            // Keep the attributes reachable from afterHandshake to release the permit on failure
+            if (request instanceof ServletServerHttpRequest servletRequest) {
+                servletRequest.getServletRequest().setAttribute(HANDSHAKE_ATTRIBUTES_KEY, attributes);
+            }
+            return true;
+        }
+
+        log.warn("Rejecting WebSocket upgrade: uri={}, reason={}", request.getURI().getPath(), admission.reason());
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(admission.retryAfterSeconds()));
+        return false;
+    }
+
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+        if (exception != null || !isUpgraded(response)) {
+            // Upgrade failed: no connection will ever release the permit
+            releasePermit(request);
+            return;
+        }
+        startupTimer.recordConnectionAccepted();
+    }
+
+
+    /**
+     * Checks if the response switched protocols.
+     */
+    private boolean isUpgraded(ServerHttpResponse response) {
+        if (response instanceof ServletServerHttpResponse servletResponse) {
+            return servletResponse.getServletResponse().getStatus() == HttpStatus.SWITCHING_PROTOCOLS.value();
+        }
+        return true;
+    }
+
+
+    /**
+     * Releases the permit stored by {@link #beforeHandshake} on the request attributes.
+     */
+    @SuppressWarnings("unchecked")
+    private void releasePermit(ServerHttpRequest request) {
+        if (request instanceof ServletServerHttpRequest servletRequest
+                && servletRequest.getServletRequest().getAttribute(HANDSHAKE_ATTRIBUTES_KEY) instanceof Map<?, ?> map) {
+            admissionControlService.release((Map<String, Object>) map);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Batching WebSocket session decorator.
+ */
+
+package com.opty.socket.websocket;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.service.PendingDeliveryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Coalesces encoded messages sent to one connection into {@code BATCH} frames (thread-safe).
+ *
+ * Batched messages wait at most one flush window, or until the batch reaches its size limits, and then
+ * go out as a single frame {@code {"from":"SERVER","type":"BATCH","payload":{"messages":[...]}}}
+ * built from the already encoded messages (a lone message is sent as is). Immediate sends and
+ * {@link #sendMessage} flush the batch first, so frames never overtake each other.
+ *
+ * The batch is swapped out under the lock but written outside it: frames go through an ordered outbox
+ * drained by one sender at a time, so a slow peer holds up the thread writing to it, never the threads
+ * that only queue messages for it.
+ */
+@Slf4j
+public class BatchingWebSocketSession extends WebSocketSessionDecorator {
+
+    // --- ATTRIBUTES ---
+    private static final String BATCH_PREFIX = "{\"from\":\"SERVER\",\"type\":\"BATCH\",\"payload\":{\"messages\":[";
+    private static final String BATCH_SUFFIX = "]}}";
+    private final ScheduledExecutorService scheduler;
+    private final long flushWindowMillis;
+    private final int maxMessages;
+    private final int maxBytes;
+    private final IntConsumer flushListener;
+    private final List<String> batch = new ArrayList<>();
+    private final Queue<WebSocketMessage<?>> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private int batchBytes;
+    private boolean flushScheduled;
+
+
+    /**
+     * Creates a batching decorator.
+     *
+     * @param delegate          the session to write frames to (must tolerate concurrent senders)
+     * @param scheduler         runs deferred flushes
+     * @param flushWindowMillis longest time a batched message waits
+     * @param maxMessages       messages that trigger an early flush
+     * @param maxBytes          UTF-8 encoded size that triggers an early flush
+     * @param flushListener     receives the number of messages in each flushed frame
+     */
+    public BatchingWebSocketSession(WebSocketSession delegate, ScheduledExecutorService scheduler,
+                                    long flushWindowMillis, int maxMessages, int maxBytes,
+                                    IntConsumer flushListener) {
+        super(delegate);
+        this.scheduler = scheduler;
+        this.flushWindowMillis = flushWindowMillis;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.flushListener = flushListener;
+    }
+
+
+    /**
+     * Queues an encoded message for the next batch.
+     *
+     * @param json the encoded message
+     */
+    public void sendBatched(String json) throws IOException {
+        synchronized (this) {
+            batch.add(json);
+            batchBytes += PendingDeliveryService.utf8Length(json);
+
+            if (batch.size() >= maxMessages || batchBytes >= maxBytes) {
+                enqueueBatch();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                try {
+                    scheduler.schedule(this::flushQuietly, flushWindowMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    enqueueBatch();
+                }
+            }
+        }
+        drainOutbox();
+    }
+
+
+    /**
+     * Sends any message right away, after any queued batch.
+     */
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        synchronized (this) {
+            enqueueBatch();
+            outbox.add(message);
+        }
+        drainOutbox();
+    }
+
+
+    /**
+     * Writes the queued batch as one frame.
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            enqueueBatch();
+        }
+        drainOutbox();
+    }
+
+
+    /**
+     * Moves the queued batch to the outbox as one frame (caller holds the lock).
+     */
+    private void enqueueBatch() {
+        flushScheduled = false;
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        String frame = batchFrame(batch, batchBytes);
+        int count = batch.size();
+        batch.clear();
+        batchBytes = 0;
+
+        outbox.add(new TextMessage(frame));
+        flushListener.accept(count);
+    }
+
+
+    /**
+     * Writes outbox frames in order; returns at once if another thread is already writing them.
+     */
+    private void drainOutbox() throws IOException {
+        while (!outbox.isEmpty() && writing.compareAndSet(false, true)) {
+            try {
+                WebSocketMessage<?> message;
+                while ((message = outbox.poll()) != null) {
+                    if (isOpen()) {
+                        getDelegate().sendMessage(message);
+                    }
+                }
+            } finally {
+                writing.set(false);
+            }
+        }
+    }
+
+
+    /**
+     * Builds the frame carrying encoded messages: a {@code BATCH} frame, or the message itself if alone.
+     *
+     * @param messages the encoded messages, in order
+     * @param bytes    their total encoded length (sizing hint)
+     * @return the frame text
+     */
+    public static String batchFrame(List<String> messages, int bytes) {
+        if (messages.size() == 1) {
+            return messages.get(0);
+        }
+        StringBuilder builder = new StringBuilder(bytes + messages.size() + BATCH_PREFIX.length() + BATCH_SUFFIX.length());
+        builder.append(BATCH_PREFIX);
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(messages.get(i));
+        }
+        return builder.append(BATCH_SUFFIX).toString();
+    }
+
+
+    /**
+     * Flushes pending messages before closing.
+     */
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+
+    /**
+     * Flushes pending messages before closing.
+     */
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        flushQuietly();
+        super.close(status);
+    }
+
+
+    /**
+     * Flushes from the scheduler pool, logging failures.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.debug("Batch flush failed: connectionId={}, error={}", getId(), e.getMessage());
+        }
+    }
+}
@@ -8,20 +8,35 @@ package com.opty.socket.websocket;
 /**
  * IMPORTS
  */
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opty.socket.config.AppConfig;
 import com.opty.socket.model.ConnectionInfo;
 import com.opty.socket.model.Message;
 import com.opty.socket.model.Session;
+import com.opty.socket.ratelimit.RateLimiterService;
+import com.opty.socket.service.AdmissionControlService;
+import com.opty.socket.service.AttachmentService;
+import com.opty.socket.service.DrainCoordinator;
+import com.opty.socket.service.EphemeralSignalService;
+import com.opty.socket.service.EventJournal;
+import com.opty.socket.service.HeartbeatService;
 import com.opty.socket.service.MessageRouter;
+import com.opty.socket.service.OverloadController;
 import com.opty.socket.service.SessionManager;
+import com.opty.socket.service.SessionSnapshotService;
 import com.opty.socket.service.SupervisorQueueService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
 
 
 /**
@@ -34,61 +49,86 @@ import org.springframework.web.socket.handler.TextWebSocketHandler;
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class ClientWebSocketHandler extends TextWebSocketHandler {
+public class ClientWebSocketHandler extends AbstractWebSocketHandler {
 
     // --- ATTRIBUTES ---
+    private final AppConfig appConfig;
     private final SessionManager sessionManager;
     private final MessageRouter messageRouter;
     private final SupervisorQueueService supervisorQueueService;
-    private final ObjectMapper objectMapper;
+    private final PartialMessageReader partialMessageReader;
+    private final AttachmentService attachmentService;
+    private final EphemeralSignalService ephemeralSignalService;
+    private final RateLimiterService rateLimiterService;
+    private final OverloadController overloadController;
+    private final DrainCoordinator drainCoordinator;
+    private final AdmissionControlService admissionControlService;
+    private final HeartbeatService heartbeatService;
+    private final EventJournal eventJournal;
+    private final SessionSnapshotService sessionSnapshotService;
 
 
     /**
      * Called when a new client WebSocket connection is established.
      *
      * Creates a new session and sends the sessionId back to the client.
+     * Optional handshake query parameters {@code tier} and {@code priority} set the queue position,
+     * {@code tags} (comma-separated, e.g. {@code lang:pt,product:billing}) the supervisors who see it.
+     * After a server restart, {@code resume} (the resume token of the CONNECT response) reclaims the
+     * client's previous session and queue position.
      */
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        String connectionId = session.getId();
-        log.info("Client connecting: connectionId={}, remoteAddress={}",
-                connectionId, session.getRemoteAddress());
+        String externalId = session.getId();
+        log.debug("Client connecting: externalId={}, remoteAddress={}",
+                externalId, session.getRemoteAddress());
 
         try {
-            // Check max connections limit
-            if (sessionManager.isMaxConnectionsReached()) {
-                log.warn("Max connections reached, rejecting client: connectionId={}", connectionId);
-                Message error = Message.error(null, "Server at maximum capacity");
-                messageRouter.sendMessage(session, error);
+            // Max connections is enforced at handshake (AdmissionHandshakeInterceptor)
+
+            // Attach inbound rate limiters
+            rateLimiterService.attach(session, "client");
+
+            // Register connection (assigns the internal connection ID)
+            WebSocketSession outbound = messageRouter.decorateForSending(session);
+            ConnectionInfo connectionInfo = sessionManager.registerConnection(outbound, "CLIENT").orElse(null);
+            if (connectionInfo == null) {
                 session.close(CloseStatus.SERVICE_OVERLOAD);
                 return;
             }
-
-            // Create session for client
-            Session newSession = sessionManager.createSession(connectionId);
-
-            // Register connection
-            ConnectionInfo connectionInfo = new ConnectionInfo(
+            long connectionId = connectionInfo.connectionId();
+            heartbeatService.register(connectionId);
+
+            // Reclaim the session saved by a previous server process, or create one for the client
+            // (queue tier and priority from the verified token with auth, else from the handshake query)
+            MultiValueMap<String, String> query = UriComponentsBuilder.fromUri(session.getUri())
+                    .build()
+                    .getQueryParams();
+            String tenant = TenantHandshakeInterceptor.tenantOf(session);
+            Session resumed = sessionSnapshotService.resume(connectionId, query.getFirst("resume"), tenant)
+                    .orElse(null);
+            Session newSession = resumed != null ? resumed : sessionManager.createSession(
                     connectionId,
-                    session,
-                    "CLIENT",
-                    newSession.sessionId()
+                    tenant,
+                    requestedTier(session, query),
+                    requestedPriority(session, query),
+                    supervisorQueueService.parseTags(query.getFirst("tags"))
             );
-            sessionManager.registerConnection(connectionInfo);
 
-            // Send CONNECT response with sessionId
-            Message connectResponse = Message.connectResponse(newSession.sessionId());
-            messageRouter.sendMessage(session, connectResponse);
+            // Send CONNECT response with sessionId and resume token
+            Message connectResponse = Message.connectResponse(newSession.sessionId(),
+                    Long.toHexString(newSession.resumeToken()), resumed != null);
+            messageRouter.sendMessage(outbound, connectResponse);
 
-            // Broadcast queue update to all supervisors (new session available)
-            supervisorQueueService.broadcastQueueUpdate();
+            // Broadcast queue update to subscribed supervisors (new session available)
+            supervisorQueueService.broadcastQueueUpdate(newSession);
 
-            log.info("Client connected successfully: connectionId={}, sessionId={}",
+            log.debug("Client connected successfully: connectionId={}, sessionId={}",
                     connectionId, newSession.sessionId());
 
         } catch (Exception e) {
-            log.error("Error establishing client connection: connectionId={}, error={}",
-                    connectionId, e.getMessage(), e);
+            log.error("Error establishing client connection: externalId={}, error={}",
+                    externalId, e.getMessage(), e);
             session.close(CloseStatus.SERVER_ERROR);
         }
     }
@@ -101,15 +141,28 @@ public class ClientWebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage textMessage) throws Exception {
-        String connectionId = session.getId();
-        String payload = textMessage.getPayload();
+        long connectionId = SessionManager.connectionIdOf(session);
 
-        log.debug("Message received from client: connectionId={}, length={}",
-                connectionId, payload.length());
+        // Rate limit before parsing (cheap rejection), once per message on its first chunk
+        RateLimiterService.Decision decision = RateLimiterService.Decision.ALLOWED;
+        if (partialMessageReader.isMessageStart(session)) {
+            decision = rateLimiterService.checkFrame(session);
+        }
+        if (decision != RateLimiterService.Decision.ALLOWED) {
+            partialMessageReader.discardRest(session, textMessage);
+            handleRateLimited(session, decision);
+            return;
+        }
+
+        log.debug("Message chunk received from client: connectionId={}, length={}, last={}",
+                connectionId, textMessage.getPayloadLength(), textMessage.isLast());
 
         try {
-            // Parse message
-            Message message = objectMapper.readValue(payload, Message.class);
+            // Parse message (incrementally when it arrives in several chunks)
+            Message message = partialMessageReader.read(session, textMessage);
+            if (message == null) {
+                return;
+            }
 
             // Validate message type
             if (message.type() == null) {
@@ -118,6 +171,21 @@ public class ClientWebSocketHandler extends TextWebSocketHandler {
                 return;
             }
 
+            // Rate limit per message type (signals also have their own bucket)
+            decision = message.type().isEphemeral()
+                    ? rateLimiterService.checkSignal(session)
+                    : rateLimiterService.checkType(session, message.type());
+            if (decision != RateLimiterService.Decision.ALLOWED) {
+                handleRateLimited(session, decision);
+                return;
+            }
+
+            // Drop non-essential frames while saturated
+            if (!overloadController.allowFrame(message.type())) {
+                log.debug("Frame shed under overload: connectionId={}, type={}", connectionId, message.type());
+                return;
+            }
+
             // Handle different message types
             switch (message.type()) {
                 case MESSAGE -> {
@@ -127,9 +195,21 @@ public class ClientWebSocketHandler extends TextWebSocketHandler {
                         log.debug("Failed to route message from client: connectionId={}", connectionId);
                     }
                 }
+                case ATTACHMENT -> {
+                    // Announce an upload; the file follows as binary frames
+                    attachmentService.begin(connectionId, message);
+                }
+                case TYPING, PRESENCE, READ -> {
+                    // UI signals: coalesced, never persisted
+                    ephemeralSignalService.signal(connectionId, message);
+                }
+                case ACK -> {
+                    // Recipient confirms messages up to seq; held copies are dropped
+                    messageRouter.acknowledge(connectionId, message);
+                }
                 case DISCONNECT -> {
                     // Graceful disconnect requested
-                    log.info("Client requested disconnect: connectionId={}", connectionId);
+                    log.debug("Client requested disconnect: connectionId={}", connectionId);
                     session.close(CloseStatus.NORMAL);
                 }
                 default -> {
@@ -140,6 +220,10 @@ public class ClientWebSocketHandler extends TextWebSocketHandler {
                 }
             }
 
+        } catch (PartialMessageReader.RejectedMessageException e) {
+            log.warn("Closing client for rejected message: connectionId={}, reason={}",
+                    connectionId, e.getMessage());
+            session.close(e.getCloseStatus());
         } catch (Exception e) {
             log.error("Error processing client message: connectionId={}, error={}",
                     connectionId, e.getMessage(), e);
@@ -149,6 +233,60 @@ public class ClientWebSocketHandler extends TextWebSocketHandler {
     }
 
 
+    /**
+     * Called when a binary message (attachment data) is received from the client.
+     *
+     * Each binary message starts with the upload ID returned for an ATTACHMENT announcement.
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        long connectionId = SessionManager.connectionIdOf(session);
+
+        // Rate limit once per message, on its first chunk
+        if (attachmentService.isMessageStart(session)) {
+            RateLimiterService.Decision decision = rateLimiterService.checkFrame(session);
+            if (decision != RateLimiterService.Decision.ALLOWED) {
+                attachmentService.discardRest(session, message);
+                handleRateLimited(session, decision);
+                return;
+            }
+        }
+
+        attachmentService.write(session, connectionId, message);
+    }
+
+
+    /**
+     * Receives text messages in chunks of at most the container's text buffer size (see {@link PartialMessageReader}).
+     */
+    @Override
+    public boolean supportsPartialMessages() {
+        return true;
+    }
+
+
+    /**
+     * Called when a pong answers a heartbeat ping.
+     */
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) throws Exception {
+        heartbeatService.onPong(SessionManager.connectionIdOf(session), message.getPayload());
+    }
+
+
+    /**
+     * Drops a rate-limited frame, closing the connection on sustained abuse.
+     */
+    private void handleRateLimited(WebSocketSession session, RateLimiterService.Decision decision) throws Exception {
+        if (decision == RateLimiterService.Decision.CLOSE) {
+            log.warn("Closing client for sustained rate limit violations: connectionId={}", session.getId());
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Rate limit exceeded"));
+            return;
+        }
+        log.debug("Frame rate limited from client: connectionId={}", session.getId());
+    }
+
+
     /**
      * Called when the client WebSocket connection is closed.
      *
@@ -156,27 +294,45 @@ public class ClientWebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        String connectionId = session.getId();
-        log.info("Client disconnecting: connectionId={}, status={}", connectionId, status);
+        long connectionId = SessionManager.connectionIdOf(session);
+        eventJournal.record(EventJournal.Event.CONNECTION_CLOSED, connectionId, null, status.getCode());
+        log.debug("Client disconnecting: connectionId={}, status={}", connectionId, status);
 
         try {
-            // Notify paired supervisor
-            messageRouter.notifyDisconnect(connectionId);
+            // Notify paired supervisor (not while draining: every peer is leaving too)
+            if (!drainCoordinator.isDraining()) {
+                messageRouter.notifyDisconnect(connectionId);
+            }
 
-            // Remove session
-            sessionManager.removeSessionByConnectionId(connectionId);
+            // Remove session and drop messages held for it
+            Session removed = sessionManager.removeSessionByConnectionId(connectionId).orElse(null);
+            if (removed != null) {
+                messageRouter.discardPending(removed);
+            }
 
             // Remove connection
             sessionManager.removeConnection(connectionId);
 
-            // Broadcast queue update to supervisors (session removed)
-            supervisorQueueService.broadcastQueueUpdate();
+            // Abort uploads and any message in progress
+            attachmentService.abortUploads(connectionId);
+            partialMessageReader.release(session);
+
+            // Broadcast queue update to subscribed supervisors (session removed)
+            if (removed != null) {
+                supervisorQueueService.broadcastQueueUpdate(removed);
+            }
 
-            log.info("Client disconnected and cleaned up: connectionId={}", connectionId);
+            log.debug("Client disconnected and cleaned up: connectionId={}", connectionId);
 
         } catch (Exception e) {
             log.error("Error during client disconnect cleanup: connectionId={}, error={}",
                     connectionId, e.getMessage(), e);
+        } finally {
+            // Stop heartbeat and return the connection permit acquired at handshake
+            if (connectionId != Session.NO_CONNECTION) {
+                heartbeatService.unregister(connectionId);
+            }
+            admissionControlService.release(session.getAttributes());
         }
     }
 
@@ -188,7 +344,7 @@ public class ClientWebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
-        String connectionId = session.getId();
+        long connectionId = SessionManager.connectionIdOf(session);
         log.error("Transport error for client: connectionId={}, error={}",
                 connectionId, exception.getMessage(), exception);
 
@@ -201,4 +357,55 @@ public class ClientWebSocketHandler extends TextWebSocketHandler {
             log.error("Failed to send error message to client: connectionId={}", connectionId);
         }
     }
+
+
+    /**
+     * Gets the queue tier of a new session: the token's tier claim with auth enabled, otherwise the
+     * {@code tier} query parameter if trusted ({@code queue.query-tier-enabled}), else none.
+     */
+    private String requestedTier(WebSocketSession session, MultiValueMap<String, String> query) {
+        if (appConfig.getAuth().isEnabled()) {
+            Object tier = claims(session).get(appConfig.getAuth().getTierClaim());
+            return tier != null ? tier.toString() : null;
+        }
+        return appConfig.getQueue().isQueryTierEnabled() ? query.getFirst("tier") : null;
+    }
+
+
+    /**
+     * Gets the requested priority of a new session: the token's priority claim with auth enabled,
+     * otherwise the {@code priority} query parameter (clamped to {@code max-client-priority} either way).
+     */
+    private int requestedPriority(WebSocketSession session, MultiValueMap<String, String> query) {
+        if (appConfig.getAuth().isEnabled()) {
+            Object priority = claims(session).get(appConfig.getAuth().getPriorityClaim());
+            return priority != null ? parsePriority(priority.toString()) : 0;
+        }
+        return parsePriority(query.getFirst("priority"));
+    }
+
+
+    /**
+     * Gets the verified token claims of a connection (empty without auth).
+     */
+    private static Map<?, ?> claims(WebSocketSession session) {
+        Object claims = session.getAttributes().get(JwtHandshakeInterceptor.CLAIMS_ATTRIBUTE);
+        return claims instanceof Map<?, ?> map ? map : Map.of();
+    }
+
+
+    /**
+     * Parses the priority handshake parameter (0 when missing or invalid).
+     */
+    private int parsePriority(String priority) {
+        if (priority == null || priority.isBlank()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(priority.trim());
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring invalid priority parameter: {}", priority);
+            return 0;
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/**
+ * JWT authentication handshake interceptor.
+ */
+
+package com.opty.socket.websocket;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.security.JwtVerifier;
+import com.opty.socket.security.RequestIdentityResolver;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Authenticates WebSocket handshakes with a JWT from the {@code token} query parameter
+ * or the {@code Authorization: Bearer} header.
+ *
+ * Invalid or missing tokens are refused with HTTP 401. On success the claims and the subject
+ * are stored in the session attributes.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+    // --- ATTRIBUTES ---
+    public static final String CLAIMS_ATTRIBUTE = "opty.jwtClaims";
+    public static final String USER_ID_ATTRIBUTE = "opty.userId";
+    private final AppConfig appConfig;
+    private final JwtVerifier jwtVerifier;
+    private final RequestIdentityResolver requestIdentityResolver;
+
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (!appConfig.getAuth().isEnabled()) {
+            return true;
+        }
+
+        String token = requestIdentityResolver.extractToken(request).orElse(null);
+        if (token == null) {
+            log.warn("Rejecting WebSocket upgrade without token: uri={}", request.getURI().getPath());
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        Map<String, Object> claims = jwtVerifier.verify(token).orElse(null);
+        if (claims == null) {
+            log.warn("Rejecting WebSocket upgrade with invalid token: uri={}", request.getURI().getPath());
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        attributes.put(CLAIMS_ATTRIBUTE, claims);
+        if (claims.get("sub") != null) {
+            attributes.put(USER_ID_ATTRIBUTE, claims.get("sub").toString());
+        }
+        return true;
+    }
+
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+        // Nothing to clean up
+    }
+}
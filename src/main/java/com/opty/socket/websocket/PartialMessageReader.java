@@ -0,0 +1,259 @@
+/**
+ * Incremental reader for partial WebSocket messages.
+ */
+
+package com.opty.socket.websocket;
+
+
+/**
+ * IMPORTS
+ */
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.Message;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Reads inbound messages delivered by the container in chunks (handlers support partial messages).
+ *
+ * The container hands over at most {@code opty.socket.container.text-buffer-size} characters at a time,
+ * so it never holds a large frame. A message arriving in one chunk is parsed directly. A longer one is
+ * fed chunk by chunk into a non-blocking JSON parser whose tokens are buffered; the raw text is never
+ * aggregated. A message is rejected as soon as it passes {@code opty.socket.message.max-size} characters
+ * (close status 1009) or is not complete within {@code message.partial-timeout-millis} (slow drip, 1008).
+ * The deadline is checked as chunks arrive and by a once-per-second sweep over the connections with a
+ * message in progress, so a peer that stops sending mid-message is closed too.
+ * Messages on one connection arrive one at a time, so the state kept per connection needs no locking.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PartialMessageReader {
+
+    // --- ATTRIBUTES ---
+    private static final String ASSEMBLY_ATTRIBUTE = "opty.partialMessage";
+    private static final Assembly DISCARDING = new Assembly(null, null, 0);
+    private static final CloseStatus TOO_SLOW = CloseStatus.POLICY_VIOLATION.withReason("Message too slow");
+    private final ObjectMapper objectMapper;
+    private final AppConfig appConfig;
+    private final Set<WebSocketSession> assembling = ConcurrentHashMap.newKeySet();
+
+
+    /**
+     * Rejection of an inbound message; the connection is closed with the given status.
+     */
+    @Getter
+    public static class RejectedMessageException extends IOException {
+
+        private final transient CloseStatus closeStatus;
+
+        public RejectedMessageException(CloseStatus closeStatus) {
+            super(closeStatus.getReason());
+            this.closeStatus = closeStatus;
+        }
+    }
+
+
+    /**
+     * Checks if the next chunk starts a new message (rate limits apply per message, on its first chunk).
+     */
+    public boolean isMessageStart(WebSocketSession session) {
+        return !session.getAttributes().containsKey(ASSEMBLY_ATTRIBUTE);
+    }
+
+
+    /**
+     * Reads a chunk of an inbound message.
+     *
+     * @param session the connection
+     * @param chunk   the text received, {@link TextMessage#isLast()} on the last chunk of the message
+     * @return the parsed message once complete, or null while more chunks are expected (or being discarded)
+     * @throws RejectedMessageException if the message is too big or too slow
+     * @throws IOException              if the message is not valid JSON
+     */
+    public Message read(WebSocketSession session, TextMessage chunk) throws IOException {
+        String text = chunk.getPayload();
+        int maxSize = appConfig.getMessage().getMaxSize();
+        Assembly assembly = (Assembly) session.getAttributes().get(ASSEMBLY_ATTRIBUTE);
+
+        // Whole message in one chunk: parse directly
+        if (assembly == null && chunk.isLast()) {
+            if (text.length() > maxSize) {
+                throw tooBig(maxSize);
+            }
+            return objectMapper.readValue(text, Message.class);
+        }
+
+        // Rest of a message already rejected or rate limited
+        if (assembly == DISCARDING) {
+            if (chunk.isLast()) {
+                session.getAttributes().remove(ASSEMBLY_ATTRIBUTE);
+            }
+            return null;
+        }
+
+        if (assembly == null) {
+            JsonParser parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+            assembly = new Assembly(parser, new TokenBuffer(parser), System.nanoTime());
+            session.getAttributes().put(ASSEMBLY_ATTRIBUTE, assembly);
+            assembling.add(session);
+        }
+
+        try {
+            assembly.size += text.length();
+            if (assembly.size > maxSize) {
+                throw tooBig(maxSize);
+            }
+            if (isOverdue(assembly, System.nanoTime())) {
+                throw new RejectedMessageException(TOO_SLOW);
+            }
+
+            assembly.feed(text, chunk.isLast());
+            if (!chunk.isLast()) {
+                return null;
+            }
+            session.getAttributes().remove(ASSEMBLY_ATTRIBUTE);
+            assembling.remove(session);
+            return objectMapper.readValue(assembly.tokens.asParser(objectMapper), Message.class);
+
+        } catch (IOException e) {
+            // Skip the remaining chunks of a message that cannot be read
+            discardRest(session, chunk);
+            throw e;
+        }
+    }
+
+
+    /**
+     * Drops a chunk and the remaining chunks of its message (e.g. a rate-limited message).
+     */
+    public void discardRest(WebSocketSession session, TextMessage chunk) {
+        assembling.remove(session);
+        if (chunk.isLast()) {
+            session.getAttributes().remove(ASSEMBLY_ATTRIBUTE);
+        } else {
+            session.getAttributes().put(ASSEMBLY_ATTRIBUTE, DISCARDING);
+        }
+    }
+
+
+    /**
+     * Forgets a closed connection's message in progress, if any.
+     */
+    public void release(WebSocketSession session) {
+        assembling.remove(session);
+    }
+
+
+    /**
+     * Closes connections whose message in progress passed its deadline (1008), even if no chunk arrives.
+     */
+    @Scheduled(fixedDelay = 1_000)
+    public void closeOverdue() {
+        long now = System.nanoTime();
+        Iterator<WebSocketSession> sessions = assembling.iterator();
+        while (sessions.hasNext()) {
+            WebSocketSession session = sessions.next();
+            if (!session.isOpen()) {
+                sessions.remove();
+                continue;
+            }
+            if (!(session.getAttributes().get(ASSEMBLY_ATTRIBUTE) instanceof Assembly assembly)
+                    || assembly == DISCARDING) {
+                sessions.remove();
+                continue;
+            }
+            if (isOverdue(assembly, now)) {
+                sessions.remove();
+                log.warn("Closing connection with an incomplete message past its deadline: connectionId={}", session.getId());
+                try {
+                    session.close(TOO_SLOW);
+                } catch (IOException e) {
+                    log.debug("Failed to close slow connection: connectionId={}, error={}", session.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+
+    private boolean isOverdue(Assembly assembly, long nowNanos) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(nowNanos - assembly.startedNanos);
+        return elapsedMillis > appConfig.getMessage().getPartialTimeoutMillis();
+    }
+
+
+    private static RejectedMessageException tooBig(int maxSize) {
+        return new RejectedMessageException(
+                CloseStatus.TOO_BIG_TO_PROCESS.withReason("Message exceeds " + maxSize + " characters"));
+    }
+
+
+    /**
+     * Parse state of a message arriving in chunks.
+     */
+    private static final class Assembly {
+
+        private final JsonParser parser;
+        private final TokenBuffer tokens;
+        private final long startedNanos;
+        private int size;
+        private char pendingHighSurrogate;
+
+        private Assembly(JsonParser parser, TokenBuffer tokens, long startedNanos) {
+            this.parser = parser;
+            this.tokens = tokens;
+            this.startedNanos = startedNanos;
+        }
+
+        /**
+         * Feeds a chunk as UTF-8 and buffers every token it completes.
+         *
+         * A chunk may end in the middle of a surrogate pair; the high surrogate is kept for the next chunk.
+         */
+        private void feed(String text, boolean last) throws IOException {
+            if (pendingHighSurrogate != 0) {
+                text = pendingHighSurrogate + text;
+                pendingHighSurrogate = 0;
+            }
+            if (!last && !text.isEmpty() && Character.isHighSurrogate(text.charAt(text.length() - 1))) {
+                pendingHighSurrogate = text.charAt(text.length() - 1);
+                text = text.substring(0, text.length() - 1);
+            }
+
+            ByteArrayFeeder feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            feeder.feedInput(bytes, 0, bytes.length);
+            if (last) {
+                feeder.endOfInput();
+            }
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                tokens.copyCurrentEvent(parser);
+            }
+        }
+    }
+}
@@ -8,23 +8,37 @@ package com.opty.socket.websocket;
 /**
  * IMPORTS
  */
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.opty.socket.model.ConnectionInfo;
 import com.opty.socket.model.Message;
 import com.opty.socket.model.MessageType;
 import com.opty.socket.model.Session;
+import com.opty.socket.ratelimit.RateLimiterService;
+import com.opty.socket.service.AdmissionControlService;
+import com.opty.socket.service.AttachmentService;
+import com.opty.socket.service.DrainCoordinator;
+import com.opty.socket.service.EphemeralSignalService;
+import com.opty.socket.service.EventJournal;
+import com.opty.socket.service.HeartbeatService;
 import com.opty.socket.service.MessageRouter;
+import com.opty.socket.service.OverloadController;
 import com.opty.socket.service.SessionManager;
 import com.opty.socket.service.SupervisorQueueService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 
 /**
@@ -37,13 +51,22 @@ import java.util.Map;
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class SupervisorWebSocketHandler extends TextWebSocketHandler {
+public class SupervisorWebSocketHandler extends AbstractWebSocketHandler {
 
     // --- ATTRIBUTES ---
+    private static final String ROLE_OBSERVER = "observer";
     private final SessionManager sessionManager;
     private final MessageRouter messageRouter;
     private final SupervisorQueueService supervisorQueueService;
-    private final ObjectMapper objectMapper;
+    private final PartialMessageReader partialMessageReader;
+    private final AttachmentService attachmentService;
+    private final EphemeralSignalService ephemeralSignalService;
+    private final RateLimiterService rateLimiterService;
+    private final OverloadController overloadController;
+    private final DrainCoordinator drainCoordinator;
+    private final AdmissionControlService admissionControlService;
+    private final HeartbeatService heartbeatService;
+    private final EventJournal eventJournal;
 
     /**
      * Called when a new supervisor WebSocket connection is established.
@@ -53,31 +76,30 @@ public class SupervisorWebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        String connectionId = session.getId();
-        log.info("Supervisor connecting: connectionId={}, remoteAddress={}",
-                connectionId, session.getRemoteAddress());
+        String externalId = session.getId();
+        log.debug("Supervisor connecting: externalId={}, remoteAddress={}",
+                externalId, session.getRemoteAddress());
 
         try {
-            // Check max connections limit
-            if (sessionManager.isMaxConnectionsReached()) {
-                log.warn("Max connections reached, rejecting supervisor: connectionId={}", connectionId);
-                Message error = Message.error(null, "Server at maximum capacity");
-                messageRouter.sendMessage(session, error);
+            // Max connections is enforced at handshake (AdmissionHandshakeInterceptor)
+
+            // Attach inbound rate limiters
+            rateLimiterService.attach(session, "supervisor");
+
+            // Register connection (without sessions yet; assigns the internal connection ID)
+            WebSocketSession outbound = messageRouter.decorateForSending(session);
+            ConnectionInfo connectionInfo = sessionManager.registerConnection(outbound, "SUPERVISOR").orElse(null);
+            if (connectionInfo == null) {
                 session.close(CloseStatus.SERVICE_OVERLOAD);
                 return;
             }
+            long connectionId = connectionInfo.connectionId();
+            heartbeatService.register(connectionId);
 
-            // Register connection (without sessionId yet)
-            ConnectionInfo connectionInfo = new ConnectionInfo(
-                    connectionId,
-                    session,
-                    "SUPERVISOR",
-                    null
-            );
-            sessionManager.registerConnection(connectionInfo);
-
-            // Register as queue listener (will receive session updates)
-            supervisorQueueService.registerQueueListener(connectionId);
+            // Register as queue listener (will receive updates for sessions matching its ?tags=)
+            String tags = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst("tags");
+            supervisorQueueService.registerQueueListener(connectionId, TenantHandshakeInterceptor.tenantOf(session),
+                    Set.of(supervisorQueueService.parseTags(tags)));
 
             // Send acknowledgment and initial queue state
             Message ackMessage = new Message(
@@ -86,16 +108,16 @@ public class SupervisorWebSocketHandler extends TextWebSocketHandler {
                     MessageType.CONNECT,
                     Map.of("message", "Connected, listening to session queue")
             );
-            messageRouter.sendMessage(session, ackMessage);
+            messageRouter.sendMessage(outbound, ackMessage);
 
             // Send initial queue state
-            supervisorQueueService.sendInitialQueue(session);
+            supervisorQueueService.sendInitialQueue(connectionId, outbound);
 
-            log.info("Supervisor connection registered as queue listener: connectionId={}", connectionId);
+            log.debug("Supervisor connection registered as queue listener: connectionId={}", connectionId);
 
         } catch (Exception e) {
-            log.error("Error establishing supervisor connection: connectionId={}, error={}",
-                    connectionId, e.getMessage(), e);
+            log.error("Error establishing supervisor connection: externalId={}, error={}",
+                    externalId, e.getMessage(), e);
             session.close(CloseStatus.SERVER_ERROR);
         }
     }
@@ -104,19 +126,33 @@ public class SupervisorWebSocketHandler extends TextWebSocketHandler {
     /**
      * Called when a text message is received from the supervisor.
      *
-     * Handles CONNECT message to join session, then routes subsequent messages to paired client.
+     * Handles CONNECT message to join sessions, then routes subsequent messages to the client
+     * of the session addressed by {@code sessionId}.
      */
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage textMessage) throws Exception {
-        String connectionId = session.getId();
-        String payload = textMessage.getPayload();
+        long connectionId = SessionManager.connectionIdOf(session);
+
+        // Rate limit before parsing (cheap rejection), once per message on its first chunk
+        RateLimiterService.Decision decision = RateLimiterService.Decision.ALLOWED;
+        if (partialMessageReader.isMessageStart(session)) {
+            decision = rateLimiterService.checkFrame(session);
+        }
+        if (decision != RateLimiterService.Decision.ALLOWED) {
+            partialMessageReader.discardRest(session, textMessage);
+            handleRateLimited(session, decision);
+            return;
+        }
 
-        log.debug("Message received from supervisor: connectionId={}, length={}",
-                connectionId, payload.length());
+        log.debug("Message chunk received from supervisor: connectionId={}, length={}, last={}",
+                connectionId, textMessage.getPayloadLength(), textMessage.isLast());
 
         try {
-            // Parse message
-            Message message = objectMapper.readValue(payload, Message.class);
+            // Parse message (incrementally when it arrives in several chunks)
+            Message message = partialMessageReader.read(session, textMessage);
+            if (message == null) {
+                return;
+            }
 
             // Validate message type
             if (message.type() == null) {
@@ -125,11 +161,33 @@ public class SupervisorWebSocketHandler extends TextWebSocketHandler {
                 return;
             }
 
+            // Rate limit per message type (signals also have their own bucket)
+            decision = message.type().isEphemeral()
+                    ? rateLimiterService.checkSignal(session)
+                    : rateLimiterService.checkType(session, message.type());
+            if (decision != RateLimiterService.Decision.ALLOWED) {
+                handleRateLimited(session, decision);
+                return;
+            }
+
+            // Drop non-essential frames while saturated
+            if (!overloadController.allowFrame(message.type())) {
+                log.debug("Frame shed under overload: connectionId={}, type={}", connectionId, message.type());
+                return;
+            }
+
             // Handle different message types
             switch (message.type()) {
                 case CONNECT -> {
                     // Supervisor is trying to join a session
-                    handleSupervisorJoinSession(connectionId, message, session);
+                    WebSocketSession outbound = sessionManager.getConnection(connectionId)
+                            .map(ConnectionInfo::webSocketSession)
+                            .orElse(session);
+                    if (isObserverJoin(message)) {
+                        handleObserverJoinSession(connectionId, message, outbound);
+                    } else {
+                        handleSupervisorJoinSession(connectionId, message, outbound);
+                    }
                 }
                 case MESSAGE -> {
                     // Route message to paired client
@@ -138,10 +196,27 @@ public class SupervisorWebSocketHandler extends TextWebSocketHandler {
                         log.debug("Failed to route message from supervisor: connectionId={}", connectionId);
                     }
                 }
+                case ATTACHMENT -> {
+                    // Announce an upload; the file follows as binary frames
+                    attachmentService.begin(connectionId, message);
+                }
+                case TYPING, PRESENCE, READ -> {
+                    // UI signals: coalesced, never persisted
+                    ephemeralSignalService.signal(connectionId, message);
+                }
+                case ACK -> {
+                    // Recipient confirms messages up to seq; held copies are dropped
+                    messageRouter.acknowledge(connectionId, message);
+                }
                 case DISCONNECT -> {
-                    // Graceful disconnect requested
-                    log.info("Supervisor requested disconnect: connectionId={}", connectionId);
-                    session.close(CloseStatus.NORMAL);
+                    if (message.hasValidSessionId()) {
+                        // Leave a single session, keep the connection for the others
+                        handleSupervisorLeaveSession(connectionId, message.sessionId());
+                    } else {
+                        // Graceful disconnect requested
+                        log.debug("Supervisor requested disconnect: connectionId={}", connectionId);
+                        session.close(CloseStatus.NORMAL);
+                    }
                 }
                 default -> {
                     log.warn("Unexpected message type from supervisor: connectionId={}, type={}",
@@ -151,6 +226,10 @@ public class SupervisorWebSocketHandler extends TextWebSocketHandler {
                 }
             }
 
+        } catch (PartialMessageReader.RejectedMessageException e) {
+            log.warn("Closing supervisor for rejected message: connectionId={}, reason={}",
+                    connectionId, e.getMessage());
+            session.close(e.getCloseStatus());
         } catch (Exception e) {
             log.error("Error processing supervisor message: connectionId={}, error={}",
                     connectionId, e.getMessage(), e);
@@ -162,106 +241,276 @@ public class SupervisorWebSocketHandler extends TextWebSocketHandler {
 
     /**
      * Handles supervisor joining an existing client session.
+     *
+     * Without a sessionId the supervisor is assigned the most urgent waiting session.
      */
-    private void handleSupervisorJoinSession(String connectionId, Message message, WebSocketSession session) {
+    private void handleSupervisorJoinSession(long connectionId, Message message, WebSocketSession session) {
         String sessionId = message.sessionId();
 
-        if (sessionId == null || sessionId.isBlank()) {
-            log.warn("Supervisor CONNECT without sessionId: connectionId={}", connectionId);
-            messageRouter.sendErrorToConnection(connectionId, "sessionId is required to join");
+        // Check supervisor capacity
+        if (!sessionManager.hasSupervisorCapacity(connectionId)) {
+            log.warn("Supervisor at capacity: connectionId={}, sessions={}",
+                    connectionId, sessionManager.getSupervisorSessionCount(connectionId));
+            Message error = Message.error(sessionId, "Supervisor session capacity reached");
+            messageRouter.sendMessage(session, error);
             return;
         }
 
-        // Check if session exists
-        Session existingSession = sessionManager.getSession(sessionId).orElse(null);
+        Session pairedSession;
+        if (sessionId == null || sessionId.isBlank()) {
+
+            // Auto-assign the most urgent waiting session matching the supervisor's tags
+            pairedSession = sessionManager.pairNextWaiting(connectionId, TenantHandshakeInterceptor.tenantOf(session),
+                    waiting -> supervisorQueueService.isSubscribed(connectionId, waiting)).orElse(null);
+            if (pairedSession == null) {
+                log.debug("Supervisor CONNECT without sessionId, queue empty: connectionId={}", connectionId);
+                messageRouter.sendErrorToConnection(connectionId, "No sessions waiting");
+                return;
+            }
+            sessionId = pairedSession.sessionId();
+
+        } else {
+
+            // Check if session exists (within the supervisor's tenant)
+            Session existingSession = findTenantSession(sessionId, session).orElse(null);
+            if (existingSession == null) {
+                log.warn("Supervisor trying to join non-existent session: connectionId={}, sessionId={}",
+                        connectionId, sessionId);
+                Message error = Message.error(sessionId, "Session not found");
+                messageRouter.sendMessage(session, error);
+                return;
+            }
+
+            // Pair supervisor with session
+            pairedSession = sessionManager.pairSupervisor(existingSession.id(), connectionId).orElse(null);
+            if (pairedSession == null || !pairedSession.isPaired()) {
+                log.warn("Failed to pair supervisor: connectionId={}, sessionId={}", connectionId, sessionId);
+                Message error = Message.error(sessionId, "Failed to join session (may already be paired)");
+                messageRouter.sendMessage(session, error);
+                return;
+            }
+        }
+
+        // Send success response to supervisor (on the session lane, ahead of any routed message)
+        Message successResponse = new Message(
+                sessionId,
+                "SERVER",
+                MessageType.CONNECT,
+                Map.of("message", "Successfully joined session", "paired", true,
+                        "activeSessions", sessionManager.getSupervisorSessionCount(connectionId))
+        );
+        messageRouter.sendInSession(pairedSession, connectionId, successResponse);
+
+        // Deliver what the client sent while waiting, or what the previous supervisor did not acknowledge
+        messageRouter.replayPending(pairedSession, connectionId);
+
+        // Notify client that supervisor has joined
+        Message notifyClient = new Message(
+                sessionId,
+                "SERVER",
+                MessageType.CONNECT,
+                Map.of("message", "Supervisor has joined the session")
+        );
+        messageRouter.sendInSession(pairedSession, pairedSession.clientConnectionId(), notifyClient);
+
+        // Broadcast queue update to other subscribed supervisors (session is no longer available)
+        supervisorQueueService.broadcastQueueUpdate(pairedSession);
+
+        log.debug("Supervisor joined session successfully: connectionId={}, sessionId={}", connectionId, sessionId);
+    }
+
+
+    /**
+     * Finds a session by external ID, only if it belongs to the supervisor's tenant.
+     */
+    private Optional<Session> findTenantSession(String sessionId, WebSocketSession supervisor) {
+        String tenant = TenantHandshakeInterceptor.tenantOf(supervisor);
+        return sessionManager.findSession(sessionId)
+                .filter(found -> found.tenant().equals(tenant));
+    }
+
+
+    /**
+     * Checks if a CONNECT asks to observe a session ({@code payload.role = "observer"}).
+     */
+    private boolean isObserverJoin(Message message) {
+        return message.payload() != null && ROLE_OBSERVER.equalsIgnoreCase(String.valueOf(message.payload().get("role")));
+    }
+
+
+    /**
+     * Handles supervisor joining a session as an observer (lead, additional agent or bot).
+     *
+     * The session keeps its paired supervisor; the observer receives the session's messages from now on.
+     */
+    private void handleObserverJoinSession(long connectionId, Message message, WebSocketSession session) {
+        String sessionId = message.sessionId();
+        Session existingSession = findTenantSession(sessionId, session).orElse(null);
         if (existingSession == null) {
-            log.warn("Supervisor trying to join non-existent session: connectionId={}, sessionId={}",
-                    connectionId, sessionId);
-            Message error = Message.error(sessionId, "Session not found");
-            messageRouter.sendMessage(session, error);
+            messageRouter.sendMessage(session, Message.error(sessionId, "Session not found"));
             return;
         }
 
-        // Pair supervisor with session
-        Session pairedSession = sessionManager.pairSupervisor(sessionId, connectionId).orElse(null);
-        if (pairedSession == null || !pairedSession.isPaired()) {
-            log.warn("Failed to pair supervisor: connectionId={}, sessionId={}", connectionId, sessionId);
-            Message error = Message.error(sessionId, "Failed to join session (may already be paired)");
-            messageRouter.sendMessage(session, error);
+        Session observedSession = sessionManager.addObserver(existingSession.id(), connectionId).orElse(null);
+        if (observedSession == null) {
+            log.warn("Failed to observe session: connectionId={}, sessionId={}", connectionId, sessionId);
+            messageRouter.sendMessage(session, Message.error(sessionId,
+                    "Failed to observe session (already a member, observers full or at capacity)"));
             return;
         }
 
-        // Update connection with sessionId
-        sessionManager.updateSessionId(connectionId, sessionId);
-
-        // Remove from queue listeners (supervisor is now paired with a session)
-        supervisorQueueService.removeQueueListener(connectionId);
-
-        // Send success response to supervisor
+        // Confirm on the session lane, so the observer's first routed message follows it
         Message successResponse = new Message(
                 sessionId,
                 "SERVER",
                 MessageType.CONNECT,
-                Map.of("message", "Successfully joined session", "paired", true)
+                Map.of("message", "Observing session", "role", ROLE_OBSERVER,
+                        "members", observedSession.memberConnectionIds().length)
         );
-        messageRouter.sendMessage(session, successResponse);
+        messageRouter.sendInSession(observedSession, connectionId, successResponse);
 
-        // Notify client that supervisor has joined
-        sessionManager.getConnection(existingSession.clientConnectionId()).ifPresent(clientConn -> {
-            Message notifyClient = new Message(
-                    sessionId,
-                    "SERVER",
-                    MessageType.CONNECT,
-                    Map.of("message", "Supervisor has joined the session")
-            );
-            messageRouter.sendMessage(clientConn.webSocketSession(), notifyClient);
-        });
+        log.debug("Supervisor observing session: connectionId={}, sessionId={}", connectionId, sessionId);
+    }
+
+
+    /**
+     * Handles supervisor leaving one of its sessions; the session returns to the queue.
+     *
+     * Observers simply stop observing; the session is unaffected.
+     */
+    private void handleSupervisorLeaveSession(long connectionId, String sessionId) {
+        Session existingSession = sessionManager.getSessionForConnection(connectionId, sessionId).orElse(null);
+        if (existingSession != null && existingSession.isObserver(connectionId)) {
+            messageRouter.notifyDisconnect(connectionId, existingSession);
+            sessionManager.removeObserver(existingSession.id(), connectionId);
+            log.debug("Observer left session: connectionId={}, sessionId={}", connectionId, sessionId);
+            return;
+        }
+        if (existingSession == null || !existingSession.isPaired()) {
+            log.warn("Supervisor leaving unknown session: connectionId={}, sessionId={}", connectionId, sessionId);
+            messageRouter.sendErrorToConnection(connectionId, sessionId, "Not in this session");
+            return;
+        }
+
+        // Notify client and return session to the queue
+        messageRouter.notifyDisconnect(connectionId, existingSession);
+        sessionManager.unpairSupervisor(existingSession.id());
+        supervisorQueueService.broadcastQueueUpdate(existingSession);
+
+        log.debug("Supervisor left session: connectionId={}, sessionId={}", connectionId, sessionId);
+    }
+
+
+    /**
+     * Called when a binary message (attachment data) is received from the supervisor.
+     *
+     * Each binary message starts with the upload ID returned for an ATTACHMENT announcement.
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        long connectionId = SessionManager.connectionIdOf(session);
+
+        // Rate limit once per message, on its first chunk
+        if (attachmentService.isMessageStart(session)) {
+            RateLimiterService.Decision decision = rateLimiterService.checkFrame(session);
+            if (decision != RateLimiterService.Decision.ALLOWED) {
+                attachmentService.discardRest(session, message);
+                handleRateLimited(session, decision);
+                return;
+            }
+        }
+
+        attachmentService.write(session, connectionId, message);
+    }
+
+
+    /**
+     * Receives text messages in chunks of at most the container's text buffer size (see {@link PartialMessageReader}).
+     */
+    @Override
+    public boolean supportsPartialMessages() {
+        return true;
+    }
+
+
+    /**
+     * Called when a pong answers a heartbeat ping.
+     */
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) throws Exception {
+        heartbeatService.onPong(SessionManager.connectionIdOf(session), message.getPayload());
+    }
 
-        // Broadcast queue update to other supervisors (session is no longer available)
-        supervisorQueueService.broadcastQueueUpdate();
 
-        log.info("Supervisor joined session successfully: connectionId={}, sessionId={}", connectionId, sessionId);
+    /**
+     * Drops a rate-limited frame, closing the connection on sustained abuse.
+     */
+    private void handleRateLimited(WebSocketSession session, RateLimiterService.Decision decision) throws Exception {
+        if (decision == RateLimiterService.Decision.CLOSE) {
+            log.warn("Closing supervisor for sustained rate limit violations: connectionId={}", session.getId());
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Rate limit exceeded"));
+            return;
+        }
+        log.debug("Frame rate limited from supervisor: connectionId={}", session.getId());
     }
 
 
     /**
      * Called when the supervisor WebSocket connection is closed.
      *
-     * Notifies the paired client and cleans up resources.
+     * Notifies the clients of all held sessions and cleans up resources.
      */
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        String connectionId = session.getId();
-        log.info("Supervisor disconnecting: connectionId={}, status={}", connectionId, status);
+        long connectionId = SessionManager.connectionIdOf(session);
+        eventJournal.record(EventJournal.Event.CONNECTION_CLOSED, connectionId, null, status.getCode());
+        log.debug("Supervisor disconnecting: connectionId={}, status={}", connectionId, status);
 
         try {
-            // Notify paired client
-            messageRouter.notifyDisconnect(connectionId);
+            // Notify clients of every session held by this supervisor (not while draining: every peer is leaving too)
+            if (!drainCoordinator.isDraining()) {
+                messageRouter.notifyDisconnect(connectionId);
+            }
 
-            // Get session before removing connection
-            Session existingSession = sessionManager.getSessionByConnectionId(connectionId).orElse(null);
+            // Unpair supervisor from its sessions (but keep sessions active for clients), stop observing others
+            List<Session> heldSessions = new ArrayList<>();
+            for (Session member : sessionManager.getSessionsByConnectionId(connectionId)) {
+                if (member.isObserver(connectionId)) {
+                    sessionManager.removeObserver(member.id(), connectionId);
+                } else {
+                    sessionManager.unpairSupervisor(member.id());
+                    heldSessions.add(member);
+                }
+            }
 
             // Remove connection from SessionManager
             sessionManager.removeConnection(connectionId);
 
-            // Unpair supervisor from session (but keep session active for client)
-            if (existingSession != null && existingSession.isPaired()) {
-                sessionManager.unpairSupervisor(existingSession.sessionId());
-                log.info("Supervisor unpaired from session: sessionId={}, session remains active for client",
-                        existingSession.sessionId());
+            // Abort uploads and any message in progress
+            attachmentService.abortUploads(connectionId);
+            partialMessageReader.release(session);
+
+            // Remove from queue listeners
+            supervisorQueueService.removeQueueListener(connectionId);
 
-                // Broadcast queue update (session is now available again)
+            // Broadcast queue update (sessions are now available again)
+            if (!heldSessions.isEmpty()) {
+                log.debug("Supervisor unpaired from {} sessions, sessions remain active for clients",
+                        heldSessions.size());
                 supervisorQueueService.broadcastQueueUpdate();
             }
 
-            // Remove from queue listeners (if was listening)
-            supervisorQueueService.removeQueueListener(connectionId);
-
-            log.info("Supervisor disconnected: connectionId={}", connectionId);
+            log.debug("Supervisor disconnected: connectionId={}", connectionId);
 
         } catch (Exception e) {
             log.error("Error during supervisor disconnect cleanup: connectionId={}, error={}",
                     connectionId, e.getMessage(), e);
+        } finally {
+            // Stop heartbeat and return the connection permit acquired at handshake
+            if (connectionId != Session.NO_CONNECTION) {
+                heartbeatService.unregister(connectionId);
+            }
+            admissionControlService.release(session.getAttributes());
         }
     }
 
@@ -273,7 +522,7 @@ public class SupervisorWebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
-        String connectionId = session.getId();
+        long connectionId = SessionManager.connectionIdOf(session);
         log.error("Transport error for supervisor: connectionId={}, error={}",
                 connectionId, exception.getMessage(), exception);
 
@@ -0,0 +1,97 @@
+/**
+ * Tenant resolution handshake interceptor.
+ */
+
+package com.opty.socket.websocket;
+
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.security.RequestIdentityResolver;
+import com.opty.socket.service.AdmissionControlService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Resolves the tenant of a WebSocket handshake and admits it against the tenant's connection quota.
+ *
+ * With auth enabled the tenant comes from the token claim only (clients cannot pick another tenant);
+ * otherwise from the {@code tenant} query parameter. Connections naming no tenant belong to the default
+ * tenant. Unknown tenants are refused with HTTP 403, exhausted quotas with HTTP 503 and {@code Retry-After}.
+ * The tenant permit is released with the connection permit.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TenantHandshakeInterceptor implements HandshakeInterceptor {
+
+    // --- ATTRIBUTES ---
+    public static final String TENANT_ATTRIBUTE = "opty.tenant";
+    private final AppConfig appConfig;
+    private final AdmissionControlService admissionControlService;
+    private final RequestIdentityResolver requestIdentityResolver;
+
+
+    /**
+     * Gets the tenant of a WebSocket session.
+     *
+     * @param session the WebSocket session (raw or decorated)
+     * @return the tenant, or null if the handshake did not resolve one
+     */
+    public static String tenantOf(WebSocketSession session) {
+        return session.getAttributes().get(TENANT_ATTRIBUTE) instanceof String tenant ? tenant : null;
+    }
+
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        AppConfig.TenantConfig config = appConfig.getTenant();
+        if (!config.isEnabled()) {
+            attributes.put(TENANT_ATTRIBUTE, config.getDefaultTenant());
+            return true;
+        }
+
+        Map<?, ?> claims = attributes.get(JwtHandshakeInterceptor.CLAIMS_ATTRIBUTE) instanceof Map<?, ?> map ? map : null;
+        String tenant = requestIdentityResolver.resolveTenant(request, claims);
+        AdmissionControlService.Admission admission = admissionControlService.tryAdmitTenant(tenant, attributes);
+        if (!admission.admitted()) {
+            log.warn("Rejecting WebSocket upgrade: uri={}, tenant={}, reason={}",
+                    request.getURI().getPath(), tenant, admission.reason());
+            if (admissionControlService.isKnownTenant(tenant)) {
+                response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(admission.retryAfterSeconds()));
+            } else {
+                response.setStatusCode(HttpStatus.FORBIDDEN);
+            }
+            return false;
+        }
+
+        attributes.put(TENANT_ATTRIBUTE, tenant);
+        return true;
+    }
+
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+        // Tenant permit is released with the connection permit (AdmissionHandshakeInterceptor)
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Test class for inbound frame rate limiting.
+ */
+
+package com.opty.socket.ratelimit;
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.MessageType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Checks the connection, IP, type and signal buckets of {@link RateLimiterService} and the violation budget
+ * that turns repeated rejections into a close, on a clock the test advances by hand.
+ */
+class RateLimiterServiceTest {
+
+    private final AppConfig appConfig = new AppConfig();
+    private final ManualClock clock = new ManualClock();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RateLimiterService rateLimiterService;
+
+
+    @BeforeEach
+    void setUp() {
+        AppConfig.EndpointLimit limit = new AppConfig.EndpointLimit();
+        limit.setFrames(new AppConfig.BucketLimit(10, 3));
+        appConfig.getRateLimit().getEndpoints().put("client", limit);
+        appConfig.getRateLimit().setPerIp(new AppConfig.BucketLimit(100, 100));
+        rateLimiterService = new RateLimiterService(appConfig, clock, meterRegistry);
+    }
+
+
+    @Test
+    void allowsBurstThenRejectsUntilRefilled() {
+        WebSocketSession session = attach("10.0.0.1", HttpHeaders.EMPTY);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkFrame(session));
+        }
+        assertEquals(RateLimiterService.Decision.REJECTED, rateLimiterService.checkFrame(session));
+        assertEquals(1.0, rejected("connection"));
+
+        // 10 permits per second: one permit back every 100 ms
+        clock.advanceMillis(100);
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkFrame(session));
+        assertEquals(RateLimiterService.Decision.REJECTED, rateLimiterService.checkFrame(session));
+    }
+
+
+    @Test
+    void sharesIpBucketAcrossConnections() {
+        appConfig.getRateLimit().setPerIp(new AppConfig.BucketLimit(1, 2));
+        WebSocketSession first = attach("10.0.0.1", HttpHeaders.EMPTY);
+        WebSocketSession second = attach("10.0.0.1", HttpHeaders.EMPTY);
+        WebSocketSession other = attach("10.0.0.2", HttpHeaders.EMPTY);
+
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkFrame(first));
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkFrame(second));
+        assertEquals(RateLimiterService.Decision.REJECTED, rateLimiterService.checkFrame(first));
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkFrame(other));
+        assertEquals(1.0, rejected("ip"));
+    }
+
+
+    @Test
+    void keysIpOnForwardedClientOnlyBehindTrustedProxy() {
+        appConfig.getRateLimit().setPerIp(new AppConfig.BucketLimit(1, 1));
+        appConfig.getRateLimit().setTrustedProxies(List.of("10.0.0.9"));
+        HttpHeaders forwarded = new HttpHeaders();
+        forwarded.add("X-Forwarded-For", "203.0.113.7, 10.0.0.9");
+        HttpHeaders spoofed = new HttpHeaders();
+        spoofed.add("X-Forwarded-For", "203.0.113.8");
+
+        // Two clients behind the trusted proxy get a bucket each
+        assertEquals(RateLimiterService.Decision.ALLOWED,
+                rateLimiterService.checkFrame(attach("10.0.0.9", forwarded)));
+        assertEquals(RateLimiterService.Decision.ALLOWED,
+                rateLimiterService.checkFrame(attach("10.0.0.9", spoofed)));
+
+        // A peer that is not a trusted proxy cannot pick its bucket with the header
+        assertEquals(RateLimiterService.Decision.ALLOWED,
+                rateLimiterService.checkFrame(attach("10.0.0.3", spoofed)));
+        assertEquals(RateLimiterService.Decision.REJECTED,
+                rateLimiterService.checkFrame(attach("10.0.0.3", forwarded)));
+    }
+
+
+    @Test
+    void limitsConfiguredTypesOnly() {
+        appConfig.getRateLimit().getEndpoints().get("client").getTypes()
+                .put(MessageType.MESSAGE, new AppConfig.BucketLimit(1, 1));
+        WebSocketSession session = attach("10.0.0.1", HttpHeaders.EMPTY);
+
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkType(session, MessageType.MESSAGE));
+        assertEquals(RateLimiterService.Decision.REJECTED, rateLimiterService.checkType(session, MessageType.MESSAGE));
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkType(session, MessageType.ACK));
+        assertEquals(1.0, rejected("type"));
+    }
+
+
+    @Test
+    void limitsSignalsOnTheirOwnBucket() {
+        appConfig.getRateLimit().getEndpoints().get("client").setSignals(new AppConfig.BucketLimit(1, 2));
+        WebSocketSession session = attach("10.0.0.1", HttpHeaders.EMPTY);
+
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkSignal(session));
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkSignal(session));
+        assertEquals(RateLimiterService.Decision.REJECTED, rateLimiterService.checkSignal(session));
+        assertEquals(1.0, rejected("signal"));
+
+        // Excess signals leave the frame budget alone
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkFrame(session));
+    }
+
+
+    @Test
+    void countsExcessSignalsAsViolations() {
+        appConfig.getRateLimit().setCloseAfterViolations(1);
+        appConfig.getRateLimit().getEndpoints().get("client").setSignals(new AppConfig.BucketLimit(1, 1));
+        WebSocketSession session = attach("10.0.0.1", HttpHeaders.EMPTY);
+
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkSignal(session));
+        assertEquals(RateLimiterService.Decision.REJECTED, rateLimiterService.checkSignal(session));
+        assertEquals(RateLimiterService.Decision.CLOSE, rateLimiterService.checkSignal(session));
+    }
+
+
+    @Test
+    void closesOnceViolationsRunOut() {
+        appConfig.getRateLimit().setCloseAfterViolations(2);
+        WebSocketSession session = attach("10.0.0.1", HttpHeaders.EMPTY);
+        for (int i = 0; i < 3; i++) {
+            rateLimiterService.checkFrame(session);
+        }
+
+        assertEquals(RateLimiterService.Decision.REJECTED, rateLimiterService.checkFrame(session));
+        assertEquals(RateLimiterService.Decision.REJECTED, rateLimiterService.checkFrame(session));
+        assertEquals(RateLimiterService.Decision.CLOSE, rateLimiterService.checkFrame(session));
+
+        // Violations decay at one per second
+        clock.advanceMillis(1000);
+        assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkFrame(session));
+    }
+
+
+    @Test
+    void allowsEverythingWhenDisabled() {
+        appConfig.getRateLimit().setEnabled(false);
+        WebSocketSession session = attach("10.0.0.1", HttpHeaders.EMPTY);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(RateLimiterService.Decision.ALLOWED, rateLimiterService.checkFrame(session));
+        }
+    }
+
+
+    /**
+     * Attaches the client limiters to a session from the given peer.
+     */
+    private WebSocketSession attach(String ip, HttpHeaders headers) {
+        Map<String, Object> attributes = new HashMap<>();
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getRemoteAddress()).thenReturn(new InetSocketAddress(ip, 40_000));
+        when(session.getHandshakeHeaders()).thenReturn(headers);
+        rateLimiterService.attach(session, "client");
+        return session;
+    }
+
+
+    private double rejected(String reason) {
+        return meterRegistry.counter("opty.ratelimit.rejected", "endpoint", "client", "reason", reason).count();
+    }
+
+
+    /**
+     * Clock that only moves when the test advances it.
+     */
+    private static final class ManualClock extends CoarseClock {
+
+        private long nowNanos = TimeUnit.SECONDS.toNanos(1);
+
+        @Override
+        public long nanoTime() {
+            return nowNanos;
+        }
+
+        void advanceMillis(long millis) {
+            nowNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+}
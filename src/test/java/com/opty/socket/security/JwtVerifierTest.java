@@ -0,0 +1,143 @@
+/**
+ * Test class for JWT verification and the verified token cache.
+ */
+
+package com.opty.socket.security;
+
+/**
+ * IMPORTS
+ */
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opty.socket.config.AppConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Verifies HS256 tokens end to end and the cache behaviour behind {@link JwtVerifier#verify(String)}.
+ */
+class JwtVerifierTest {
+
+    private static final String SECRET = "test-secret-with-enough-bytes-for-hs256";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private JwtVerifier verifier;
+
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AppConfig appConfig = new AppConfig();
+        appConfig.getAuth().setEnabled(true);
+        appConfig.getAuth().setHmacSecret(SECRET);
+        verifier = new JwtVerifier(appConfig, objectMapper, new SimpleMeterRegistry());
+        verifier.init();
+    }
+
+
+    @Test
+    void acceptsValidTokenAndReturnsSameReadOnlyClaimsFromCache() throws Exception {
+        String token = sign(Map.of("sub", "user-1", "exp", nowSeconds() + 300));
+
+        Map<String, Object> first = verifier.verify(token).orElseThrow();
+        Map<String, Object> second = verifier.verify(token).orElseThrow();
+
+        assertEquals("user-1", first.get("sub"));
+        assertSame(first, second, "a cache hit must return the claims returned on the miss");
+        assertThrows(UnsupportedOperationException.class, () -> first.put("sub", "other"));
+        assertEquals(1, verifier.getCachedTokenCount());
+    }
+
+
+    @Test
+    void acceptsTokenWithNullClaim() throws Exception {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", "user-2");
+        claims.put("tenant", null);
+        claims.put("exp", nowSeconds() + 300);
+
+        Map<String, Object> verified = verifier.verify(sign(claims)).orElseThrow();
+
+        assertTrue(verified.containsKey("tenant"));
+        assertNull(verified.get("tenant"));
+        assertSame(verified, verifier.verify(sign(claims)).orElseThrow());
+    }
+
+
+    @Test
+    void rejectsTokenWithoutExp() throws Exception {
+        assertTrue(verifier.verify(sign(Map.of("sub", "user-3"))).isEmpty());
+        assertEquals(0, verifier.getCachedTokenCount());
+    }
+
+
+    @Test
+    void rejectsExpiredToken() throws Exception {
+        assertTrue(verifier.verify(sign(Map.of("sub", "user-4", "exp", nowSeconds() - 3600))).isEmpty());
+    }
+
+
+    @Test
+    void rejectsTamperedSignature() throws Exception {
+        String token = sign(Map.of("sub", "user-5", "exp", nowSeconds() + 300));
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        assertTrue(verifier.verify(tampered).isEmpty());
+    }
+
+
+    @Test
+    void cacheDropsExpiredEntriesAndEvictsAtCapacity() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2);
+        Map<String, Object> claims = Map.of("sub", "user-6");
+
+        cache.put("expired", claims, 1_000, 2_000);
+        assertNull(cache.get("expired", 2_000));
+
+        cache.put("a", claims, 10_000, 2_000);
+        assertSame(claims, cache.get("a", 9_999));
+        assertNull(cache.get("a", 10_000), "an entry is not served at its expiry");
+
+        cache.put("b", claims, 10_000, 2_000);
+        cache.put("c", claims, 10_000, 2_000);
+        cache.put("d", claims, 10_000, 2_000);
+        assertTrue(cache.size() <= 2);
+    }
+
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+
+    /**
+     * Builds an HS256 token signed with the test secret.
+     */
+    private String sign(Map<String, Object> claims) throws Exception {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = encoder.encodeToString(objectMapper.writeValueAsBytes(claims));
+        String signingInput = header + "." + payload;
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return signingInput + "." + encoder.encodeToString(mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
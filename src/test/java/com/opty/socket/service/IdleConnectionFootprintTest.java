@@ -0,0 +1,151 @@
+/**
+ * Test class for the per-connection memory footprint of idle clients.
+ */
+
+package com.opty.socket.service;
+
+/**
+ * IMPORTS
+ */
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.ConnectionInfo;
+import com.opty.socket.ratelimit.CoarseClock;
+import com.opty.socket.ratelimit.RateLimiterService;
+import com.opty.socket.websocket.BatchingWebSocketSession;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Measures retained heap per idle client connection held by the server's registries
+ * (connection, session, waiting queue entry, send decorators as built by {@link MessageRouter#decorateForSending},
+ * heartbeat and rate limiter state).
+ *
+ * Container buffers (Tomcat) are not included; they are set by {@code opty.socket.container}.
+ */
+class IdleConnectionFootprintTest {
+
+    private static final int CONNECTIONS = 20_000;
+
+    @Test
+    void reportsRetainedHeapPerIdleConnection() throws Exception {
+        AppConfig appConfig = new AppConfig();
+        appConfig.setMaxConnections(CONNECTIONS);
+        appConfig.getHeartbeat().setEnabled(false);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SessionManager sessionManager = new SessionManager(appConfig, new EventJournal(appConfig));
+        HeartbeatService heartbeatService = new HeartbeatService(appConfig, sessionManager, meterRegistry);
+        heartbeatService.start();
+        RateLimiterService rateLimiterService = new RateLimiterService(appConfig, new CoarseClock(), meterRegistry);
+        MessageRouter messageRouter = messageRouter(appConfig, sessionManager, meterRegistry);
+        assertInstanceOf(BatchingWebSocketSession.class, messageRouter.decorateForSending(new IdleSession()));
+
+        long before = usedHeapAfterGc();
+
+        for (int i = 0; i < CONNECTIONS; i++) {
+            WebSocketSession raw = new IdleSession();
+            rateLimiterService.attach(raw, "client");
+            WebSocketSession outbound = messageRouter.decorateForSending(raw);
+
+            ConnectionInfo connection = sessionManager.registerConnection(outbound, "CLIENT").orElseThrow();
+            sessionManager.createSession(connection.connectionId(), null, 0);
+            heartbeatService.register(connection.connectionId());
+        }
+
+        long after = usedHeapAfterGc();
+        long perConnection = (after - before) / CONNECTIONS;
+
+        assertEquals(CONNECTIONS, sessionManager.getActiveConnectionCount());
+        assertTrue(perConnection < 4096, "Retained heap per idle connection: " + perConnection + " bytes (limit 4096)");
+    }
+
+
+    /**
+     * Builds the router that decorates connections for sending, as in production.
+     */
+    private static MessageRouter messageRouter(AppConfig appConfig, SessionManager sessionManager,
+                                               SimpleMeterRegistry meterRegistry) {
+        SessionLanes sessionLanes = new SessionLanes(appConfig, sessionManager, meterRegistry);
+        MessageStorageService messageStorageService = new MessageStorageService(null, appConfig, meterRegistry);
+        OutboundBatchingService outboundBatchingService = new OutboundBatchingService(appConfig, meterRegistry);
+        outboundBatchingService.start();
+        return new MessageRouter(
+                sessionManager,
+                new ObjectMapper(),
+                messageStorageService,
+                appConfig,
+                sessionLanes,
+                new PendingDeliveryService(appConfig, sessionManager, meterRegistry),
+                outboundBatchingService,
+                new OverloadController(appConfig, sessionLanes, messageStorageService, event -> { },
+                        new DefaultListableBeanFactory().getBeanProvider(DrainCoordinator.class), meterRegistry),
+                meterRegistry);
+    }
+
+
+    /**
+     * Gets used heap after repeated full GCs.
+     */
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+
+    /**
+     * Idle WebSocket session holding what a container session holds in the registries' view: id and attributes.
+     * It connected as a batching, acknowledging client.
+     */
+    private static final class IdleSession implements WebSocketSession {
+
+        private static final URI HANDSHAKE_URI = URI.create("ws://localhost:8080/ws/client?batch=true&ack=true");
+        private final String id = UUID.randomUUID().toString();
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        @Override public String getId() { return id; }
+        @Override public URI getUri() { return HANDSHAKE_URI; }
+        @Override public HttpHeaders getHandshakeHeaders() { return HttpHeaders.EMPTY; }
+        @Override public Map<String, Object> getAttributes() { return attributes; }
+        @Override public Principal getPrincipal() { return null; }
+        @Override public InetSocketAddress getLocalAddress() { return null; }
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public String getAcceptedProtocol() { return null; }
+        @Override public void setTextMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getTextMessageSizeLimit() { return 0; }
+        @Override public void setBinaryMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getBinaryMessageSizeLimit() { return 0; }
+        @Override public List<WebSocketExtension> getExtensions() { return List.of(); }
+        @Override public void sendMessage(WebSocketMessage<?> message) { }
+        @Override public boolean isOpen() { return true; }
+        @Override public void close() { }
+        @Override public void close(CloseStatus status) { }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Test class for the store-and-forward delivery buffer.
+ */
+
+package com.opty.socket.service;
+
+/**
+ * IMPORTS
+ */
+import com.opty.socket.config.AppConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Checks what {@link PendingDeliveryService} holds per session side, how acknowledgements trim it,
+ * and the per-session, global byte and TTL bounds.
+ */
+class PendingDeliveryServiceTest {
+
+    private final AppConfig appConfig = new AppConfig();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SessionManager sessionManager;
+    private PendingDeliveryService pendingDeliveryService;
+    private long sessionId;
+
+
+    @BeforeEach
+    void setUp() {
+        appConfig.setMaxConnections(16);
+        sessionManager = new SessionManager(appConfig, new EventJournal(appConfig));
+        pendingDeliveryService = new PendingDeliveryService(appConfig, sessionManager, meterRegistry);
+        pendingDeliveryService.start();
+        sessionId = newSession();
+    }
+
+
+    @AfterEach
+    void tearDown() {
+        sessionManager.stop();
+    }
+
+
+    @Test
+    void holdsPerSideUntilAcknowledged() {
+        pendingDeliveryService.retain(sessionId, true, 1, "m1");
+        pendingDeliveryService.retain(sessionId, false, 2, "m2");
+        pendingDeliveryService.retain(sessionId, true, 3, "m3");
+
+        assertEquals(List.of("m1", "m3"), pendingDeliveryService.unacknowledged(sessionId, true));
+        assertEquals(List.of("m2"), pendingDeliveryService.unacknowledged(sessionId, false));
+
+        pendingDeliveryService.acknowledge(sessionId, true, 1);
+        assertEquals(List.of("m3"), pendingDeliveryService.unacknowledged(sessionId, true));
+        assertEquals(List.of("m2"), pendingDeliveryService.unacknowledged(sessionId, false));
+        assertEquals(4.0, heldBytes());
+
+        pendingDeliveryService.discard(sessionId);
+        assertEquals(List.of(), pendingDeliveryService.unacknowledged(sessionId, true));
+        assertEquals(0.0, heldBytes());
+    }
+
+
+    @Test
+    void retainsNothingWhenDisabledOrSessionGone() {
+        long removed = newSession();
+        sessionManager.removeSession(removed);
+
+        assertFalse(pendingDeliveryService.retain(removed, true, 1, "m1"));
+        appConfig.getPending().setEnabled(false);
+        assertFalse(pendingDeliveryService.retain(sessionId, true, 1, "m1"));
+        assertEquals(0.0, heldBytes());
+    }
+
+
+    @Test
+    void dropsOldestBeyondSessionBound() {
+        appConfig.getPending().setMaxMessagesPerSession(2);
+        for (int seq = 1; seq <= 3; seq++) {
+            pendingDeliveryService.retain(sessionId, true, seq, "m" + seq);
+        }
+
+        assertEquals(List.of("m2", "m3"), pendingDeliveryService.unacknowledged(sessionId, true));
+        assertEquals(1.0, dropped("overflow"));
+    }
+
+
+    @Test
+    void evictsOldestOfAnySessionOverByteBudget() {
+        appConfig.getPending().setMaxBytes(4);
+        long other = newSession();
+
+        pendingDeliveryService.retain(sessionId, true, 1, "m1");
+        pendingDeliveryService.retain(other, true, 1, "n1");
+        pendingDeliveryService.retain(other, true, 2, "n2");
+
+        assertEquals(List.of(), pendingDeliveryService.unacknowledged(sessionId, true));
+        assertEquals(List.of("n1", "n2"), pendingDeliveryService.unacknowledged(other, true));
+        assertEquals(1.0, dropped("budget"));
+        assertEquals(4.0, heldBytes());
+    }
+
+
+    @Test
+    void dropsExpiredMessages() {
+        appConfig.getPending().setTtlSeconds(0);
+        pendingDeliveryService.retain(sessionId, true, 1, "m1");
+        pendingDeliveryService.retain(sessionId, true, 2, "m2");
+
+        pendingDeliveryService.sweepExpired();
+
+        assertEquals(List.of(), pendingDeliveryService.unacknowledged(sessionId, true));
+        assertEquals(2.0, dropped("ttl"));
+        assertEquals(0.0, heldBytes());
+    }
+
+
+    @Test
+    void registersAckSupportFromHandshakeParameter() {
+        WebSocketSession declared = connection(URI.create("ws://localhost/ws/client?ack=true"));
+        WebSocketSession legacy = connection(URI.create("ws://localhost/ws/client"));
+
+        pendingDeliveryService.registerAckSupport(declared);
+        pendingDeliveryService.registerAckSupport(legacy);
+
+        assertTrue(PendingDeliveryService.acknowledges(declared));
+        assertFalse(PendingDeliveryService.acknowledges(legacy));
+    }
+
+
+    @Test
+    void countsUtf8Bytes() {
+        for (String json : List.of("plain", "olá", "€uro", "emoji 😀")) {
+            assertEquals(json.getBytes(StandardCharsets.UTF_8).length, PendingDeliveryService.utf8Length(json), json);
+        }
+    }
+
+
+    /**
+     * Creates a waiting session on a new client connection.
+     */
+    private long newSession() {
+        WebSocketSession connection = connection(URI.create("ws://localhost/ws/client"));
+        long connectionId = sessionManager.registerConnection(connection, "CLIENT").orElseThrow().connectionId();
+        return sessionManager.createSession(connectionId, null, 0).id();
+    }
+
+
+    private static WebSocketSession connection(URI uri) {
+        Map<String, Object> attributes = new HashMap<>();
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getUri()).thenReturn(uri);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+
+
+    private double heldBytes() {
+        return meterRegistry.get("opty.pending.bytes").gauge().value();
+    }
+
+
+    private double dropped(String reason) {
+        return meterRegistry.counter("opty.pending.dropped", "reason", reason).count();
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Test class for the waiting session queue.
+ */
+
+package com.opty.socket.service;
+
+/**
+ * IMPORTS
+ */
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Checks the serving order of {@link WaitingQueue} (rank, then session ID) and removal by rank.
+ */
+class WaitingQueueTest {
+
+    private final WaitingQueue queue = new WaitingQueue();
+
+
+    @Test
+    void servesLowestRankFirstThenOldestSession() {
+        queue.enqueue(1, 5_000);
+        queue.enqueue(2, 1_000);
+        queue.enqueue(4, 3_000);
+        queue.enqueue(3, 3_000);
+
+        assertArrayEquals(new long[] {2, 3, 4, 1}, queue.sessionIds());
+    }
+
+
+    @Test
+    void ignoresDuplicateEnqueue() {
+        assertTrue(queue.enqueue(1, 1_000));
+        assertFalse(queue.enqueue(1, 1_000));
+
+        assertArrayEquals(new long[] {1}, queue.sessionIds());
+    }
+
+
+    @Test
+    void removesOnlyWithTheEnqueuedRank() {
+        queue.enqueue(1, 1_000);
+        queue.enqueue(2, 2_000);
+
+        assertFalse(queue.remove(1, 2_000));
+        assertTrue(queue.remove(1, 1_000));
+        assertFalse(queue.remove(1, 1_000));
+
+        assertArrayEquals(new long[] {2}, queue.sessionIds());
+    }
+
+
+    @Test
+    void keepsOrderUnderConcurrentEnqueue() {
+        int threads = 4;
+        int perThread = 1_000;
+        List<CompletableFuture<Void>> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long first = (long) t * perThread;
+            writers.add(CompletableFuture.runAsync(() -> LongStream.range(first, first + perThread)
+                    .forEach(id -> queue.enqueue(id, id % 10))));
+        }
+        writers.forEach(CompletableFuture::join);
+
+        long[] ids = queue.sessionIds();
+        assertEquals(threads * perThread, ids.length);
+        for (int i = 1; i < ids.length; i++) {
+            long previous = ids[i - 1];
+            long current = ids[i];
+            assertTrue(previous % 10 < current % 10 || (previous % 10 == current % 10 && previous < current),
+                    "out of order at " + i);
+        }
+    }
+}
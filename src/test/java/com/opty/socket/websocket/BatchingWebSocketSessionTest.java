@@ -0,0 +1,219 @@
+/**
+ * Test class for the batching WebSocket session decorator.
+ */
+
+package com.opty.socket.websocket;
+
+/**
+ * IMPORTS
+ */
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Checks the frames {@link BatchingWebSocketSession} writes: the {@code BATCH} format, the flush window
+ * and early flushes, and that frames keep their order, also with concurrent senders.
+ *
+ * The flush scheduler is a mock, so a window only ends when the test runs the scheduled flush.
+ */
+class BatchingWebSocketSessionTest {
+
+    private static final String BATCH_PREFIX = "{\"from\":\"SERVER\",\"type\":\"BATCH\",\"payload\":{\"messages\":[";
+    private static final String BATCH_SUFFIX = "]}}";
+
+    private final List<WebSocketMessage<?>> sent = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> flushed = Collections.synchronizedList(new ArrayList<>());
+    private WebSocketSession delegate;
+    private ScheduledExecutorService scheduler;
+
+
+    @BeforeEach
+    void setUp() throws Exception {
+        delegate = mock(WebSocketSession.class);
+        when(delegate.isOpen()).thenReturn(true);
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(delegate).sendMessage(any());
+        scheduler = mock(ScheduledExecutorService.class);
+    }
+
+
+    @Test
+    void buildsBatchFrameOrSendsLoneMessageAsIs() {
+        assertEquals("{\"a\":1}", BatchingWebSocketSession.batchFrame(List.of("{\"a\":1}"), 7));
+        assertEquals(BATCH_PREFIX + "{\"a\":1},{\"b\":2}" + BATCH_SUFFIX,
+                BatchingWebSocketSession.batchFrame(List.of("{\"a\":1}", "{\"b\":2}"), 14));
+    }
+
+
+    @Test
+    void holdsMessagesForOneFlushWindow() throws Exception {
+        BatchingWebSocketSession session = session(10, 1024);
+
+        session.sendBatched("\"a\"");
+        session.sendBatched("\"b\"");
+        assertEquals(List.of(), sent);
+
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(1)).schedule(flush.capture(), eq(5L), eq(TimeUnit.MILLISECONDS));
+        flush.getValue().run();
+
+        assertEquals(List.of(BATCH_PREFIX + "\"a\",\"b\"" + BATCH_SUFFIX), texts());
+        assertEquals(List.of(2), flushed);
+    }
+
+
+    @Test
+    void flushesEarlyAtMessageLimit() throws Exception {
+        BatchingWebSocketSession session = session(2, 1024);
+
+        session.sendBatched("\"a\"");
+        session.sendBatched("\"b\"");
+        session.sendBatched("\"c\"");
+
+        assertEquals(List.of(BATCH_PREFIX + "\"a\",\"b\"" + BATCH_SUFFIX), texts());
+        session.flush();
+        assertEquals("\"c\"", texts().get(1));
+    }
+
+
+    @Test
+    void flushesEarlyAtUtf8ByteLimit() throws Exception {
+        BatchingWebSocketSession session = session(10, 6);
+
+        // 4 characters, 6 bytes
+        session.sendBatched("\"éé\"");
+
+        assertEquals(List.of("\"éé\""), texts());
+    }
+
+
+    @Test
+    void flushesBatchBeforeImmediateMessage() throws Exception {
+        BatchingWebSocketSession session = session(10, 1024);
+        PingMessage ping = new PingMessage();
+
+        session.sendBatched("\"a\"");
+        session.sendMessage(ping);
+
+        assertEquals(2, sent.size());
+        assertEquals("\"a\"", ((TextMessage) sent.get(0)).getPayload());
+        assertInstanceOf(PingMessage.class, sent.get(1));
+    }
+
+
+    @Test
+    void flushesRightAwayWhenSchedulerRejects() throws Exception {
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenThrow(new RejectedExecutionException());
+        BatchingWebSocketSession session = session(10, 1024);
+
+        session.sendBatched("\"a\"");
+
+        assertEquals(List.of("\"a\""), texts());
+    }
+
+
+    @Test
+    void flushesBeforeClosing() throws Exception {
+        BatchingWebSocketSession session = session(10, 1024);
+
+        session.sendBatched("\"a\"");
+        session.close();
+
+        assertEquals(List.of("\"a\""), texts());
+        verify(delegate).close(any());
+    }
+
+
+    @Test
+    void keepsEachSenderInOrderUnderConcurrency() throws Exception {
+        int senders = 4;
+        int perSender = 500;
+        BatchingWebSocketSession session = session(7, 1024);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int s = 0; s < senders; s++) {
+            int sender = s;
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    for (int i = 0; i < perSender; i++) {
+                        session.sendBatched("\"" + sender + "-" + i + "\"");
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        futures.forEach(CompletableFuture::join);
+        session.flush();
+
+        int[] next = new int[senders];
+        for (String message : messages()) {
+            String[] parts = message.replace("\"", "").split("-");
+            int sender = Integer.parseInt(parts[0]);
+            assertEquals(next[sender]++, Integer.parseInt(parts[1]), "sender " + sender + " out of order");
+        }
+        for (int count : next) {
+            assertEquals(perSender, count);
+        }
+        assertTrue(flushed.stream().allMatch(count -> count <= 7));
+    }
+
+
+    private BatchingWebSocketSession session(int maxMessages, int maxBytes) {
+        return new BatchingWebSocketSession(delegate, scheduler, 5, maxMessages, maxBytes, flushed::add);
+    }
+
+
+    private List<String> texts() {
+        synchronized (sent) {
+            return sent.stream().map(message -> ((TextMessage) message).getPayload()).toList();
+        }
+    }
+
+
+    /**
+     * Gets every message written, unpacking {@code BATCH} frames.
+     */
+    private List<String> messages() {
+        List<String> messages = new ArrayList<>();
+        for (String text : texts()) {
+            if (text.startsWith(BATCH_PREFIX)) {
+                String body = text.substring(BATCH_PREFIX.length(), text.length() - BATCH_SUFFIX.length());
+                messages.addAll(Arrays.asList(body.split(",")));
+            } else {
+                messages.add(text);
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Test class for the incremental reader of partial WebSocket messages.
+ */
+
+package com.opty.socket.websocket;
+
+/**
+ * IMPORTS
+ */
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opty.socket.config.AppConfig;
+import com.opty.socket.model.Message;
+import com.opty.socket.model.MessageType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * CODE
+ */
+
+/**
+ * Checks that {@link PartialMessageReader} parses messages arriving whole or in chunks (also split inside
+ * a character), and rejects messages that are too big or too slow, skipping the rest of their chunks.
+ */
+class PartialMessageReaderTest {
+
+    private static final String FRAME = "{\"sessionId\":\"s-1\",\"from\":\"CLIENT\",\"type\":\"MESSAGE\","
+            + "\"payload\":{\"text\":\"olá 😀\"}}";
+
+    private final AppConfig appConfig = new AppConfig();
+    private PartialMessageReader reader;
+    private WebSocketSession session;
+
+
+    @BeforeEach
+    void setUp() {
+        reader = new PartialMessageReader(new ObjectMapper().findAndRegisterModules(), appConfig);
+        session = session();
+    }
+
+
+    @Test
+    void parsesWholeMessageDirectly() throws Exception {
+        Message message = reader.read(session, new TextMessage(FRAME, true));
+
+        assertEquals("s-1", message.sessionId());
+        assertEquals(MessageType.MESSAGE, message.type());
+        assertEquals("olá 😀", message.payload().get("text"));
+        assertTrue(reader.isMessageStart(session));
+    }
+
+
+    @Test
+    void assemblesChunksSplitInsideCharacters() throws Exception {
+        // Split between the two halves of the emoji's surrogate pair, then right after "ol"
+        int inEmoji = FRAME.indexOf('😀') + 1;
+        int inWord = FRAME.indexOf("olá") + 2;
+
+        assertNull(reader.read(session, new TextMessage(FRAME.substring(0, inWord), false)));
+        assertFalse(reader.isMessageStart(session));
+        assertNull(reader.read(session, new TextMessage(FRAME.substring(inWord, inEmoji), false)));
+        Message message = reader.read(session, new TextMessage(FRAME.substring(inEmoji), true));
+
+        assertEquals("olá 😀", message.payload().get("text"));
+        assertTrue(reader.isMessageStart(session));
+    }
+
+
+    @Test
+    void rejectsWholeMessageOverMaxSize() {
+        appConfig.getMessage().setMaxSize(FRAME.length() - 1);
+
+        PartialMessageReader.RejectedMessageException rejected = assertThrows(
+                PartialMessageReader.RejectedMessageException.class,
+                () -> reader.read(session, new TextMessage(FRAME, true)));
+
+        assertEquals(CloseStatus.TOO_BIG_TO_PROCESS.getCode(), rejected.getCloseStatus().getCode());
+    }
+
+
+    @Test
+    void rejectsChunkedMessageOverMaxSizeAndSkipsTheRest() throws Exception {
+        appConfig.getMessage().setMaxSize(20);
+
+        assertNull(reader.read(session, new TextMessage(FRAME.substring(0, 15), false)));
+        PartialMessageReader.RejectedMessageException rejected = assertThrows(
+                PartialMessageReader.RejectedMessageException.class,
+                () -> reader.read(session, new TextMessage(FRAME.substring(15, 30), false)));
+        assertEquals(CloseStatus.TOO_BIG_TO_PROCESS.getCode(), rejected.getCloseStatus().getCode());
+
+        assertNull(reader.read(session, new TextMessage(FRAME.substring(30), true)));
+        assertTrue(reader.isMessageStart(session));
+    }
+
+
+    @Test
+    void rejectsMessageNotCompleteInTime() throws Exception {
+        appConfig.getMessage().setPartialTimeoutMillis(0);
+
+        reader.read(session, new TextMessage(FRAME.substring(0, 10), false));
+        Thread.sleep(5);
+        PartialMessageReader.RejectedMessageException rejected = assertThrows(
+                PartialMessageReader.RejectedMessageException.class,
+                () -> reader.read(session, new TextMessage(FRAME.substring(10), true)));
+
+        assertEquals(CloseStatus.POLICY_VIOLATION.getCode(), rejected.getCloseStatus().getCode());
+        assertTrue(reader.isMessageStart(session));
+    }
+
+
+    @Test
+    void closesConnectionThatStopsMidMessage() throws Exception {
+        WebSocketSession completing = session();
+        reader.read(session, new TextMessage(FRAME.substring(0, 10), false));
+        reader.read(completing, new TextMessage(FRAME.substring(0, 10), false));
+        reader.read(completing, new TextMessage(FRAME.substring(10), true));
+
+        appConfig.getMessage().setPartialTimeoutMillis(0);
+        Thread.sleep(5);
+        reader.closeOverdue();
+
+        ArgumentCaptor<CloseStatus> status = ArgumentCaptor.forClass(CloseStatus.class);
+        verify(session).close(status.capture());
+        assertEquals(CloseStatus.POLICY_VIOLATION.getCode(), status.getValue().getCode());
+        verify(completing, never()).close(any(CloseStatus.class));
+    }
+
+
+    @Test
+    void skipsRestOfInvalidMessage() throws Exception {
+        assertThrows(IOException.class, () -> reader.read(session, new TextMessage("{\"type\":}", false)));
+        assertFalse(reader.isMessageStart(session));
+
+        assertNull(reader.read(session, new TextMessage("ignored", true)));
+        assertInstanceOf(Message.class, reader.read(session, new TextMessage(FRAME, true)));
+    }
+
+
+    private static WebSocketSession session() {
+        Map<String, Object> attributes = new HashMap<>();
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("connection");
+        return session;
+    }
+}